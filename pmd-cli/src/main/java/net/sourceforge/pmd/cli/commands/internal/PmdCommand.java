@@ -25,14 +25,18 @@ import net.sourceforge.pmd.benchmark.TextTimingReportRenderer;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimingReport;
 import net.sourceforge.pmd.benchmark.TimingReportRenderer;
+import net.sourceforge.pmd.cache.DirectoryCacheStore;
+import net.sourceforge.pmd.cache.SharedAnalysisCache;
 import net.sourceforge.pmd.cli.commands.typesupport.internal.PmdLanguageTypeSupport;
 import net.sourceforge.pmd.cli.commands.typesupport.internal.PmdLanguageVersionTypeSupport;
 import net.sourceforge.pmd.cli.commands.typesupport.internal.RulePriorityTypeSupport;
 import net.sourceforge.pmd.cli.internal.CliExitCode;
 import net.sourceforge.pmd.cli.internal.ProgressBarListener;
 import net.sourceforge.pmd.internal.LogMessages;
+import net.sourceforge.pmd.lang.FileScheduling;
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.rule.RuleDispatch;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.renderers.Renderer;
 import net.sourceforge.pmd.renderers.RendererFactory;
@@ -84,8 +88,14 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
 
     private int threads;
 
+    private FileScheduling fileScheduling;
+
+    private RuleDispatch ruleDispatch;
+
     private boolean benchmark;
 
+    private boolean profileXPath;
+
     private boolean showSuppressed;
 
     private String suppressMarker;
@@ -106,6 +116,10 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
 
     private Path cacheLocation;
 
+    private Path sharedCacheLocation;
+
+    private long sharedCacheSize;
+
     private boolean noCache;
 
     private boolean showProgressBar;
@@ -140,6 +154,13 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
         this.benchmark = benchmark;
     }
 
+    @Option(names = "--profile-xpath",
+            description = "Adds the time spent in each subexpression and extension function of the XPath rules "
+                          + "to the benchmark report. This slows down the XPath rules. Only effective with --benchmark.")
+    public void setProfileXPath(final boolean profileXPath) {
+        this.profileXPath = profileXPath;
+    }
+
     @Option(names = "--show-suppressed", description = "Report should show suppressed rule violations.")
     public void setShowSuppressed(final boolean showSuppressed) {
         this.showSuppressed = showSuppressed;
@@ -228,6 +249,25 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
         this.cacheLocation = cacheLocation;
     }
 
+    @Option(names = "--shared-cache",
+            description = "Specify a directory in which analysis results are shared between several checkouts of the same sources. "
+                    + "Results are stored by file contents, so they can be reused on another branch or by another PMD process, "
+                    + "which may run concurrently. Cannot be used together with --cache.")
+    public void setSharedCacheLocation(final Path sharedCacheLocation) {
+        this.sharedCacheLocation = sharedCacheLocation;
+    }
+
+    @Option(names = "--shared-cache-size",
+            description = "Maximum size in MiB of the --shared-cache directory. The least recently used results are evicted "
+                    + "when it grows larger.",
+            defaultValue = "1024")
+    public void setSharedCacheSize(final long sharedCacheSize) {
+        if (sharedCacheSize <= 0) {
+            throw new ParameterException(spec.commandLine(), "Shared cache size should be a positive number, found " + sharedCacheSize + " instead.");
+        }
+        this.sharedCacheSize = sharedCacheSize;
+    }
+
     @Option(names = "--no-cache", description = "Explicitly disable incremental analysis. The '-cache' option is ignored if this switch is present in the command line.")
     public void setNoCache(final boolean noCache) {
         this.noCache = noCache;
@@ -243,6 +283,24 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
         this.threads = threads;
     }
 
+    @Option(names = "--file-scheduling",
+            description = "Sets the strategy used to distribute files over the analysis threads. "
+                    + "WORK_STEALING processes the largest files first on a work-stealing pool. "
+                    + "PIPELINED reads files ahead on a separate thread, while the other threads analyse them. "
+                    + "Has no effect if --threads is 0.%nValid values: ${COMPLETION-CANDIDATES}",
+            defaultValue = "FIXED")
+    public void setFileScheduling(final FileScheduling fileScheduling) {
+        this.fileScheduling = fileScheduling;
+    }
+
+    @Option(names = "--rule-dispatch",
+            description = "Sets the strategy used to apply the rules to the nodes of each file. "
+                    + "FUSED walks the nodes of each file once and gives each node to all the rules that visit it.%nValid values: ${COMPLETION-CANDIDATES}",
+            defaultValue = "PER_RULE")
+    public void setRuleDispatch(final RuleDispatch ruleDispatch) {
+        this.ruleDispatch = ruleDispatch;
+    }
+
     @Option(names = "--no-progress", negatable = true, defaultValue = "true",
             description = "Enables / disables progress bar indicator of live analysis progress.")
     public void setShowProgressBar(final boolean showProgressBar) {
@@ -278,8 +336,19 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
         configuration.setShowSuppressedViolations(showSuppressed);
         configuration.setSuppressMarker(suppressMarker);
         configuration.setThreads(threads);
+        configuration.setFileScheduling(fileScheduling);
+        configuration.setRuleDispatch(ruleDispatch);
+        // the measurements are only reported in the benchmark report
+        configuration.setXPathProfiling(profileXPath && benchmark);
         configuration.setFailOnViolation(failOnViolation);
         configuration.setAnalysisCacheLocation(cacheLocation != null ? cacheLocation.toString() : null);
+        if (sharedCacheLocation != null) {
+            if (cacheLocation != null) {
+                throw new ParameterException(spec.commandLine(), "Cannot use both --cache and --shared-cache");
+            }
+            configuration.setAnalysisCache(
+                new SharedAnalysisCache(new DirectoryCacheStore(sharedCacheLocation, sharedCacheSize * 1024 * 1024)));
+        }
         configuration.setIgnoreIncrementalAnalysis(noCache);
 
         if (languageVersion != null) {
@@ -313,6 +382,11 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
 
         final MessageReporter pmdReporter = configuration.getReporter();
 
+        if (profileXPath && !benchmark) {
+            pmdReporter.warn("XPath profiling is only reported in the benchmark report. "
+                    + "The option '--profile-xpath' is ignored, use it together with '--benchmark'.");
+        }
+
         try {
             PmdAnalysis pmd = null;
             try {
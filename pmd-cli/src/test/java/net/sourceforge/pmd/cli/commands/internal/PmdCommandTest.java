@@ -6,6 +6,8 @@ package net.sourceforge.pmd.cli.commands.internal;
 
 import static net.sourceforge.pmd.util.CollectionUtil.listOf;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.file.Path;
 import java.util.List;
@@ -70,6 +72,12 @@ class PmdCommandTest extends BaseCommandTest<PmdCommand> {
         assertError("-R", "-d", "something");
     }
 
+    @Test
+    void testXPathProfilingNeedsBenchmark() {
+        assertFalse(setupAndParse("--profile-xpath", "-d", "a", "-R", "x.xml").toConfiguration().isXPathProfiling());
+        assertTrue(setupAndParse("--profile-xpath", "--benchmark", "-d", "a", "-R", "x.xml").toConfiguration().isXPathProfiling());
+    }
+
     private void assertMultipleDirsAndRulesets(final PmdCommand result) {
         final PMDConfiguration config = result.toConfiguration();
         assertEquals(listOf("a", "b"), CollectionUtil.map(config.getInputPathList(), Path::toString));
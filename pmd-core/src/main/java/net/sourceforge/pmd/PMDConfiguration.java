@@ -25,8 +25,10 @@ import net.sourceforge.pmd.cache.AnalysisCache;
 import net.sourceforge.pmd.cache.FileAnalysisCache;
 import net.sourceforge.pmd.cache.NoopAnalysisCache;
 import net.sourceforge.pmd.internal.util.ClasspathClassLoader;
+import net.sourceforge.pmd.lang.FileScheduling;
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.rule.RuleDispatch;
 import net.sourceforge.pmd.renderers.Renderer;
 import net.sourceforge.pmd.renderers.RendererFactory;
 import net.sourceforge.pmd.util.AssertionUtil;
@@ -89,6 +91,12 @@ import net.sourceforge.pmd.util.log.internal.SimpleMessageReporter;
  * <ul>
  * <li>Use {@link #setThreads(int)} to control the parallelism of the analysis. Defaults
  * one thread per available processor. {@link #getThreads()}</li>
+ * <li>Use {@link #setFileScheduling(FileScheduling)} to control how files are
+ * distributed over the threads. Defaults to {@link FileScheduling#FIXED}.</li>
+ * <li>Use {@link #setRuleDispatch(RuleDispatch)} to control how the rules are
+ * applied to the nodes of each file. Defaults to {@link RuleDispatch#PER_RULE}.</li>
+ * <li>Use {@link #setXPathProfiling(boolean)} to time the subexpressions of
+ * the XPath rules in the benchmark report. Disabled by default.</li>
  * </ul>
  */
 public class PMDConfiguration extends AbstractConfiguration {
@@ -101,6 +109,9 @@ public class PMDConfiguration extends AbstractConfiguration {
     // General behavior options
     private String suppressMarker = DEFAULT_SUPPRESS_MARKER;
     private int threads = Runtime.getRuntime().availableProcessors();
+    private FileScheduling fileScheduling = FileScheduling.FIXED;
+    private RuleDispatch ruleDispatch = RuleDispatch.PER_RULE;
+    private boolean xpathProfiling;
     private ClassLoader classLoader = getClass().getClassLoader();
 
     // Rule and source file options
@@ -165,6 +176,68 @@ public class PMDConfiguration extends AbstractConfiguration {
         this.threads = threads;
     }
 
+    /**
+     * Get the strategy used to distribute files over the analysis threads.
+     *
+     * @return The file scheduling strategy.
+     */
+    public FileScheduling getFileScheduling() {
+        return fileScheduling;
+    }
+
+    /**
+     * Set the strategy used to distribute files over the analysis threads.
+     * This has no effect if the number of threads is zero.
+     *
+     * @param fileScheduling
+     *            The file scheduling strategy.
+     */
+    public void setFileScheduling(FileScheduling fileScheduling) {
+        this.fileScheduling = Objects.requireNonNull(fileScheduling, "File scheduling was null");
+    }
+
+    /**
+     * Get the strategy used to apply the rules to the nodes of each file.
+     *
+     * @return The rule dispatch strategy.
+     */
+    public RuleDispatch getRuleDispatch() {
+        return ruleDispatch;
+    }
+
+    /**
+     * Set the strategy used to apply the rules to the nodes of each file.
+     *
+     * @param ruleDispatch
+     *            The rule dispatch strategy.
+     */
+    public void setRuleDispatch(RuleDispatch ruleDispatch) {
+        this.ruleDispatch = Objects.requireNonNull(ruleDispatch, "Rule dispatch was null");
+    }
+
+    /**
+     * Returns whether the XPath rules are profiled.
+     *
+     * @return True if the XPath rules are profiled
+     */
+    public boolean isXPathProfiling() {
+        return xpathProfiling;
+    }
+
+    /**
+     * Set whether the XPath rules time their subexpressions and their
+     * extension function calls with the {@link net.sourceforge.pmd.benchmark.TimeTracker}.
+     * The measurements appear as sections of the benchmark report, so this
+     * has no effect unless benchmarking is enabled. Profiled rules are
+     * slower, so only the relative times are meaningful.
+     *
+     * @param xpathProfiling
+     *            Whether to profile the XPath rules
+     */
+    public void setXPathProfiling(boolean xpathProfiling) {
+        this.xpathProfiling = xpathProfiling;
+    }
+
     /**
      * Get the ClassLoader being used by PMD when processing Rules.
      *
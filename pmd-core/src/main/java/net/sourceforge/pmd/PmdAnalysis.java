@@ -373,6 +373,9 @@ public final class PmdAnalysis implements AutoCloseable {
 
     void performAnalysisImpl(List<? extends GlobalReportBuilderListener> extraListeners, List<TextFile> textFiles) {
         RuleSets rulesets = new RuleSets(this.ruleSets);
+        rulesets.setRuleDispatch(configuration.getRuleDispatch());
+        // profiled rules are slower, and nobody would see the measurements
+        rulesets.setXPathProfiling(configuration.isXPathProfiling() && TimeTracker.isTracking());
 
         GlobalAnalysisListener listener;
         try {
@@ -421,6 +424,7 @@ public final class PmdAnalysis implements AutoCloseable {
                     textFiles,
                     listener,
                     configuration.getThreads(),
+                    configuration.getFileScheduling(),
                     configuration.getAnalysisCache(),
                     reporter,
                     lpRegistry
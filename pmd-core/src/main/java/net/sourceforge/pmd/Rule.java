@@ -276,6 +276,26 @@ public interface Rule extends PropertySource {
          // by default do nothing
     }
 
+    /**
+     * Returns true if a single instance of this rule may be applied to
+     * several files concurrently, once it has been {@linkplain #initialize(LanguageProcessor) initialized}.
+     * Such a rule must not keep per-file state in its fields. Rules that
+     * are not thread-safe are copied for each analysis thread.
+     *
+     * <p>This does not allow several rules to visit the same tree at the
+     * same time: the rules are applied to a file one after the other, by
+     * the thread that parsed it. The tree has lazily computed state that
+     * is not thread-safe, eg its XPath view and the caches kept in the
+     * {@linkplain Node#getUserMap() user map} of its nodes.
+     *
+     * @return False by default
+     *
+     * @since 7.0.0
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
+
     /**
      * Start processing. Called once per file, before apply() is first called.
      *
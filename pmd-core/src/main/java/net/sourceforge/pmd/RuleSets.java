@@ -7,10 +7,21 @@ package net.sourceforge.pmd;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.annotation.InternalApi;
 import net.sourceforge.pmd.benchmark.TimeTracker;
@@ -19,7 +30,12 @@ import net.sourceforge.pmd.benchmark.TimedOperationCategory;
 import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
 import net.sourceforge.pmd.lang.ast.RootNode;
 import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.AbstractDelegateRule;
+import net.sourceforge.pmd.lang.rule.RuleDispatch;
+import net.sourceforge.pmd.lang.rule.XPathRule;
 import net.sourceforge.pmd.lang.rule.internal.RuleApplicator;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SharedSubexpressions;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.util.log.MessageReporter;
 
@@ -36,7 +52,14 @@ public class RuleSets {
 
     private final List<RuleSet> ruleSets;
 
-    private RuleApplicator ruleApplicator;
+    private volatile RuleApplicator ruleApplicator;
+
+    // replaced for each analysis, so that the copies of a previous analysis are not reused
+    private volatile RulesPerThread rulesPerThread =
+        new RulesPerThread(null, MessageReporter.quiet(), Collections.emptyMap(), Collections.emptyMap());
+    private LanguageProcessorRegistry lpRegistry;
+    private RuleDispatch ruleDispatch = RuleDispatch.PER_RULE;
+    private boolean xpathProfiling;
 
     /**
      * Copy constructor. Deep copies RuleSets.
@@ -49,6 +72,8 @@ public class RuleSets {
             rsets.add(new RuleSet(rs));
         }
         this.ruleSets = Collections.unmodifiableList(rsets);
+        this.ruleDispatch = ruleSets.ruleDispatch;
+        this.xpathProfiling = ruleSets.xpathProfiling;
     }
 
     public RuleSets(Collection<? extends RuleSet> ruleSets) {
@@ -65,19 +90,74 @@ public class RuleSets {
     }
 
     public void initializeRules(LanguageProcessorRegistry lpReg, MessageReporter reporter) {
+        if (this.lpRegistry == lpReg) {
+            // Already initialized, eg by the processor of another language.
+            // The rules may already be in use by other threads.
+            return;
+        }
+        this.lpRegistry = lpReg;
+        // the XPath rules of this analysis share their subexpressions
+        SharedSubexpressions xpathSubexpressions = new SharedSubexpressions();
+        Map<Rule, Rule> preparedCopies = new ConcurrentHashMap<>();
+        Map<Rule, GuardedRule> guardedRules = new HashMap<>();
         // this is abusing the mutability of RuleSet, will go away eventually.
         for (RuleSet rset : ruleSets) {
             for (Iterator<Rule> iterator = rset.getRules().iterator(); iterator.hasNext();) {
                 Rule rule = iterator.next();
+                XPathRule xpathRule = asXPathRule(rule);
+                if (xpathRule != null) {
+                    if (xpathProfiling) {
+                        xpathRule.setProfiling(true);
+                    }
+                    xpathRule.setSharedSubexpressions(xpathSubexpressions);
+                }
                 try {
                     rule.initialize(lpReg.getProcessor(rule.getLanguage()));
                 } catch (Exception e) {
                     reporter.errorEx(
                         "Exception while initializing rule " + rule.getName() + ", the rule will not be run", e);
                     iterator.remove();
+                    continue;
+                }
+                if (!rule.isThreadSafe()) {
+                    // Check that the rule can be copied for other threads before
+                    // any thread uses it. The copy is used by the first thread
+                    // that needs one.
+                    try {
+                        preparedCopies.put(rule, copyRule(rule, lpReg));
+                    } catch (Exception e) {
+                        // eg a rule implemented by an anonymous class
+                        guardedRules.put(rule, new GuardedRule(rule, e));
+                    }
                 }
             }
         }
+        this.rulesPerThread = new RulesPerThread(lpReg, reporter, preparedCopies, guardedRules);
+    }
+
+    /**
+     * Sets the strategy used to apply the rules to the nodes of each file.
+     * Defaults to {@link RuleDispatch#PER_RULE}.
+     */
+    public void setRuleDispatch(RuleDispatch ruleDispatch) {
+        this.ruleDispatch = Objects.requireNonNull(ruleDispatch, "Rule dispatch was null");
+    }
+
+    /**
+     * Sets whether the XPath rules time their subexpressions and extension
+     * function calls. This has an effect only when the {@link TimeTracker}
+     * is enabled, and slows down the XPath rules. Defaults to false.
+     */
+    public void setXPathProfiling(boolean xpathProfiling) {
+        this.xpathProfiling = xpathProfiling;
+    }
+
+    private static @Nullable XPathRule asXPathRule(Rule rule) {
+        Rule actual = rule;
+        while (actual instanceof AbstractDelegateRule) {
+            actual = ((AbstractDelegateRule) actual).getRule();
+        }
+        return actual instanceof XPathRule ? (XPathRule) actual : null;
     }
 
     private RuleApplicator prepareApplicator() {
@@ -137,29 +217,214 @@ public class RuleSets {
      * language of the rules must match the language of the source (@see
      * applies).
      *
+     * <p>This method may be called by several threads concurrently. Rules
+     * that are not {@linkplain Rule#isThreadSafe() thread-safe} are copied
+     * for each thread, others are shared.
+     *
      * @param root     the List of compilation units; the type these must have,
      *                 depends on the source language
      * @param listener Listener that will handle events while analysing.
      */
     public void apply(RootNode root, FileAnalysisListener listener) {
-        if (ruleApplicator == null) {
-            // initialize here instead of ctor, because some rules properties
-            // are set after creating the ruleset, and jaxen xpath queries
-            // initialize their XPath expressions when calling getRuleChainVisits()... fixme
-            this.ruleApplicator = prepareApplicator();
-        }
+        apply(root, listener, rule -> true);
+    }
+
+    /**
+     * Apply the applicable rules that match the given filter to the
+     * compilation unit. This is used by incremental analysis to run only
+     * the rules whose cached results are out of date.
+     *
+     * @param root       the root of the compilation unit
+     * @param listener   Listener that will handle events while analysing.
+     * @param ruleFilter Filter selecting the rules to apply
+     *
+     * @see #apply(RootNode, FileAnalysisListener)
+     */
+    public void apply(RootNode root, FileAnalysisListener listener, Predicate<? super Rule> ruleFilter) {
+        RuleApplicator applicator = getApplicator();
 
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.RULE_AST_INDEXATION)) {
-            ruleApplicator.index(root);
+            applicator.index(root);
+        }
+
+        if (ruleDispatch == RuleDispatch.FUSED) {
+            List<Rule> rules = new ArrayList<>();
+            for (RuleSet ruleSet : ruleSets) {
+                if (ruleSet.applies(root.getTextDocument().getFileId())) {
+                    rules.addAll(getRulesForCurrentThread(ruleSet));
+                }
+            }
+            applicator.applyFused(rules, ruleFilter, listener);
+            return;
         }
 
         for (RuleSet ruleSet : ruleSets) {
             if (ruleSet.applies(root.getTextDocument().getFileId())) {
-                ruleApplicator.apply(ruleSet.getRules(), listener);
+                applicator.apply(getRulesForCurrentThread(ruleSet), ruleFilter, listener);
+            }
+        }
+    }
+
+    private RuleApplicator getApplicator() {
+        RuleApplicator applicator = ruleApplicator;
+        if (applicator == null) {
+            synchronized (this) {
+                applicator = ruleApplicator;
+                if (applicator == null) {
+                    // initialize here instead of ctor, because some rules properties
+                    // are set after creating the ruleset, and jaxen xpath queries
+                    // initialize their XPath expressions when calling getRuleChainVisits()... fixme
+                    applicator = prepareApplicator();
+                    ruleApplicator = applicator;
+                }
+            }
+        }
+        return applicator;
+    }
+
+    private Collection<Rule> getRulesForCurrentThread(RuleSet ruleSet) {
+        return rulesPerThread.getRules(ruleSet);
+    }
+
+    private static Rule copyRule(Rule rule, @Nullable LanguageProcessorRegistry lpRegistry) {
+        Rule copy = rule.deepCopy();
+        if (lpRegistry != null) {
+            copy.initialize(lpRegistry.getProcessor(copy.getLanguage()));
+        }
+        return copy;
+    }
+
+    /**
+     * The rule instances used by each thread during an analysis. The
+     * first thread that applies the rulesets uses the rule instances
+     * directly, other threads use copies of the rules that are not
+     * thread-safe. Rules that cannot be copied are shared by all threads,
+     * and applied to one file at a time.
+     */
+    private static final class RulesPerThread {
+
+        private final @Nullable LanguageProcessorRegistry lpRegistry;
+        private final MessageReporter reporter;
+        private final Map<Rule, Rule> preparedCopies;
+        private final Map<Rule, GuardedRule> guardedRules;
+        private final Map<RuleSet, Collection<Rule>> ownerRules = new ConcurrentHashMap<>();
+        private final AtomicBoolean rulesClaimed = new AtomicBoolean();
+        private final ThreadLocal<Map<RuleSet, Collection<Rule>>> rulesForThread =
+            ThreadLocal.withInitial(() -> rulesClaimed.compareAndSet(false, true) ? null : new HashMap<>());
+
+        RulesPerThread(@Nullable LanguageProcessorRegistry lpRegistry,
+                       MessageReporter reporter,
+                       Map<Rule, Rule> preparedCopies,
+                       Map<Rule, GuardedRule> guardedRules) {
+            this.lpRegistry = lpRegistry;
+            this.reporter = reporter;
+            this.preparedCopies = preparedCopies;
+            this.guardedRules = guardedRules;
+        }
+
+        Collection<Rule> getRules(RuleSet ruleSet) {
+            Map<RuleSet, Collection<Rule>> copies = rulesForThread.get();
+            if (copies == null) {
+                // this thread owns the original rules
+                return guardedRules.isEmpty() ? ruleSet.getRules()
+                                              : ownerRules.computeIfAbsent(ruleSet, rs -> getRules(rs, true));
+            }
+            return copies.computeIfAbsent(ruleSet, rs -> getRules(rs, false));
+        }
+
+        private Collection<Rule> getRules(RuleSet ruleSet, boolean owner) {
+            List<Rule> result = new ArrayList<>(ruleSet.getRules().size());
+            for (Rule rule : ruleSet.getRules()) {
+                GuardedRule guarded = guardedRules.get(rule);
+                if (guarded != null) {
+                    if (!owner && guarded.reported.compareAndSet(false, true)) {
+                        reporter.warnEx("Rule " + rule.getName() + " cannot be copied for each analysis thread,"
+                                            + " it will be applied to one file at a time", guarded.copyError);
+                    }
+                    result.add(guarded);
+                } else if (owner || rule.isThreadSafe()) {
+                    result.add(rule);
+                } else {
+                    result.add(getCopy(rule));
+                }
+            }
+            return Collections.unmodifiableList(result);
+        }
+
+        private Rule getCopy(Rule rule) {
+            Rule copy = preparedCopies.remove(rule);
+            if (copy != null) {
+                return copy;
+            }
+            try {
+                return copyRule(rule, lpRegistry);
+            } catch (Exception e) {
+                // The rule could be copied when the analysis started.
+                // Don't silently skip it on the files of this thread.
+                reporter.errorEx("Exception while copying rule " + rule.getName() + " for an analysis thread", e);
+                throw new IllegalStateException("Could not copy rule " + rule.getName(), e);
             }
         }
     }
 
+    /**
+     * Wraps a rule that is not thread-safe and cannot be copied. The rule
+     * is applied to one file at a time: the lock is held from the start
+     * to the end of each file.
+     */
+    private static final class GuardedRule extends AbstractDelegateRule {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Exception copyError;
+        private final AtomicBoolean reported = new AtomicBoolean();
+
+        GuardedRule(Rule rule, Exception copyError) {
+            setRule(rule);
+            this.copyError = copyError;
+        }
+
+        @Override
+        public void start(RuleContext ctx) {
+            lock.lock();
+            try {
+                super.start(ctx);
+            } catch (RuntimeException | Error e) {
+                // end won't be called
+                lock.unlock();
+                throw e;
+            }
+        }
+
+        @Override
+        public void end(RuleContext ctx) {
+            try {
+                super.end(ctx);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isThreadSafe() {
+            return true;
+        }
+
+        @Override
+        public List<PropertyDescriptor<?>> getOverriddenPropertyDescriptors() {
+            return getRule().getOverriddenPropertyDescriptors();
+        }
+
+        @Override
+        public Map<PropertyDescriptor<?>, Object> getOverriddenPropertiesByPropertyDescriptor() {
+            return getRule().getOverriddenPropertiesByPropertyDescriptor();
+        }
+
+        @Override
+        public Rule deepCopy() {
+            return getRule().deepCopy();
+        }
+    }
+
     /**
      * Returns the first Rule found with the given name.
      *
@@ -217,4 +482,47 @@ public class RuleSets {
         }
         return checksum;
     }
+
+    /**
+     * Retrieves a checksum of the configuration of each rule. The checksum
+     * of a rule changes when any of its properties, its message, or the file
+     * inclusion and exclusion patterns of its ruleset change.
+     *
+     * @return A map of each rule to its checksum
+     */
+    public Map<Rule, Long> getRuleChecksums() {
+        Map<Rule, Long> result = new LinkedHashMap<>();
+        for (final RuleSet ruleSet : ruleSets) {
+            long ruleSetChecksum = 1;
+            for (Pattern pattern : ruleSet.getFileInclusions()) {
+                ruleSetChecksum = ruleSetChecksum * 31 + pattern.pattern().hashCode();
+            }
+            for (Pattern pattern : ruleSet.getFileExclusions()) {
+                ruleSetChecksum = ruleSetChecksum * 37 + pattern.pattern().hashCode();
+            }
+            for (Rule rule : ruleSet.getRules()) {
+                result.put(rule, ruleSetChecksum * 31 + getRuleChecksum(rule));
+            }
+        }
+        return result;
+    }
+
+    private static long getRuleChecksum(Rule rule) {
+        long checksum = Objects.hash(rule.getRuleClass(),
+                                     rule.getName(),
+                                     rule.getLanguage().getId(),
+                                     Objects.toString(rule.getMinimumLanguageVersion()),
+                                     Objects.toString(rule.getMaximumLanguageVersion()),
+                                     rule.getMessage());
+        for (PropertyDescriptor<?> descriptor : rule.getPropertyDescriptors()) {
+            checksum = checksum * 31 + descriptor.name().hashCode();
+            checksum = checksum * 31 + serializedValue(rule, descriptor).hashCode();
+        }
+        return checksum;
+    }
+
+    private static <T> String serializedValue(Rule rule, PropertyDescriptor<T> descriptor) {
+        // use the string form, some values (eg regexes) don't implement hashCode
+        return descriptor.serializer().toString(rule.getProperty(descriptor));
+    }
 }
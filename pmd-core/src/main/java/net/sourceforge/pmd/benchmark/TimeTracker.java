@@ -106,6 +106,14 @@ public final class TimeTracker {
         }
     }
 
+    /**
+     * Returns true if operations are being tracked, ie between
+     * {@link #startGlobalTracking()} and {@link #stopGlobalTracking()}.
+     */
+    public static boolean isTracking() {
+        return trackTime;
+    }
+
     /**
      * Starts tracking an operation.
      * @param category The category under which to track the operation.
@@ -158,6 +166,74 @@ public final class TimeTracker {
         }
     }
 
+    /**
+     * Returns the time spent so far in the operations nested in the
+     * current operation of this thread. This is meant to compute the
+     * self time of operations that are measured by the caller, see
+     * {@link #recordOperation(TimedOperationCategory, String, long, long, long)}.
+     * Returns zero if not tracking.
+     */
+    public static long getNestedOperationsNanos() {
+        if (!trackTime) {
+            return 0;
+        }
+        final TimerEntry current = TIMER_ENTRIES.get().peek();
+        return current == null ? 0 : current.inNestedOperationsNanos;
+    }
+
+    /**
+     * Records an operation whose time was measured by the caller, as if
+     * it had been tracked with {@link #startOperation(TimedOperationCategory, String)}
+     * within the current operation of this thread. This is meant for
+     * operations that are interleaved with others, eg rules that are
+     * applied node by node in a single walk, and whose time is summed
+     * up before it is recorded once.
+     *
+     * @param category         The category under which to track the operation.
+     * @param label            A label to differentiate measures within a single category.
+     * @param totalTimeNanos   The time spent in the operation
+     * @param selfTimeNanos    The time spent in the operation, minus the time spent in
+     *                         the operations nested in it
+     * @param extraDataCounter An optional additional data counter
+     */
+    public static void recordOperation(final TimedOperationCategory category, final String label,
+                                       final long totalTimeNanos, final long selfTimeNanos, final long extraDataCounter) {
+        if (!trackTime) {
+            return;
+        }
+
+        final TimedResult result = ACCUMULATED_RESULTS.computeIfAbsent(new TimedOperationKey(category, label), k -> new TimedResult());
+        result.totalTimeNanos.getAndAdd(totalTimeNanos);
+        result.selfTimeNanos.getAndAdd(selfTimeNanos);
+        result.callCount.getAndIncrement();
+        result.extraDataCounter.getAndAdd(extraDataCounter);
+
+        // the nested operations were already accounted in the current operation
+        final TimerEntry current = TIMER_ENTRIES.get().peek();
+        if (current != null) {
+            current.inNestedOperationsNanos += selfTimeNanos;
+        }
+    }
+
+    /**
+     * Adds to a counter, without measuring any time. The count is shown
+     * in the counter column of the report. This is meant for statistics
+     * that are collected during the analysis, eg the hits of a cache.
+     *
+     * @param category The category under which to track the counter.
+     * @param label    A label to differentiate counters within a single category.
+     * @param count    The amount to add to the counter
+     */
+    public static void count(final TimedOperationCategory category, final String label, final long count) {
+        if (!trackTime) {
+            return;
+        }
+
+        final TimedResult result = ACCUMULATED_RESULTS.computeIfAbsent(new TimedOperationKey(category, label), k -> new TimedResult());
+        result.callCount.getAndIncrement();
+        result.extraDataCounter.getAndAdd(count);
+    }
+
     public static void bench(String label, Runnable runnable) {
         try (TimedOperation ignored = startOperation(TimedOperationCategory.LANGUAGE_SPECIFIC_PROCESSING, label)) {
             runnable.run();
@@ -18,6 +18,10 @@ import org.apache.commons.lang3.StringUtils;
 public enum TimedOperationCategory {
     /** Rule execution proper. */
     RULE,
+    /** Subdivided into one label for each subexpression of profiled XPath rules. */
+    XPATH_EXPRESSION,
+    /** Subdivided into one label for each extension function called by profiled XPath rules. */
+    XPATH_FUNCTION,
     COLLECT_FILES,
     LOAD_RULES,
     PARSER,
@@ -26,7 +30,11 @@ public enum TimedOperationCategory {
     RULE_AST_INDEXATION,
     REPORTING,
     FILE_PROCESSING,
+    /** Subdivided into one label for each stage of the pipelined file scheduling. */
+    FILE_PIPELINE,
     ANALYSIS_CACHE,
+    /** Subdivided into one label for each counter, eg the hits or misses of a cache. No time is measured. */
+    CACHE_COUNTERS,
     UNACCOUNTED;
 
     public String displayName() {
@@ -18,21 +18,28 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.sourceforge.pmd.PMDVersion;
 import net.sourceforge.pmd.Report.ProcessingError;
+import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.annotation.InternalApi;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.cache.internal.ClasspathDependencies;
 import net.sourceforge.pmd.cache.internal.ClasspathFingerprinter;
 import net.sourceforge.pmd.internal.util.IOUtil;
 import net.sourceforge.pmd.lang.document.FileId;
@@ -51,13 +58,34 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
 
     protected static final Logger LOG = LoggerFactory.getLogger(AbstractAnalysisCache.class);
     protected static final ClasspathFingerprinter FINGERPRINTER = new ClasspathFingerprinter();
+    /** Checksum of resources that are provided by the parent of the auxclasspath classloader. */
+    private static final long PROVIDED_BY_PARENT = -1L;
     protected final String pmdVersion;
     protected final ConcurrentMap<FileId, AnalysisResult> fileResultsCache = new ConcurrentHashMap<>();
     protected final ConcurrentMap<FileId, AnalysisResult> updatedResultsCache = new ConcurrentHashMap<>();
     protected final CachedRuleMapper ruleMapper = new CachedRuleMapper();
+    /**
+     * Checksum of the configuration of each rule, by rule key. When loading
+     * the cache, these are the rules the cached results were computed with.
+     * After {@link #checkValidity(RuleSets, ClassLoader, Collection)}, these are
+     * the rules of the current analysis.
+     */
+    protected final Map<String, Long> ruleChecksums = new HashMap<>();
+    /**
+     * Checksum of the auxclasspath resources the cached results depend on,
+     * by resource path.
+     */
+    protected final Map<String, Long> dependencyChecksums = new HashMap<>();
     protected long rulesetChecksum;
     protected long auxClassPathChecksum;
     protected long executionClassPathChecksum;
+    private Set<String> upToDateRules = Collections.emptySet();
+    /** Whether no rule of the analysis changed, ie unchanged files need not be analysed again. */
+    private boolean allRulesUpToDate = true;
+    /** Whether the cached violations were all produced by rules of the analysis. */
+    private boolean cachedRulesUpToDate = true;
+    private final ConcurrentMap<String, Long> currentDependencyChecksums = new ConcurrentHashMap<>();
+    private URLClassLoader auxClassLoader;
 
     /**
      * Creates a new empty cache
@@ -73,14 +101,24 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
             final AnalysisResult updatedResult;
 
             // is this a known file? has it changed?
-            final boolean upToDate = cachedResult != null
-                && cachedResult.getFileChecksum() == document.getCheckSum();
+            final boolean contentUpToDate = isContentUpToDate(document);
+            final boolean upToDate = contentUpToDate && allRulesUpToDate;
 
-            if (upToDate) {
+            if (upToDate && cachedRulesUpToDate) {
                 LOG.trace("Incremental Analysis cache HIT");
                 
                 // copy results over
                 updatedResult = cachedResult;
+            } else if (upToDate) {
+                LOG.trace("Incremental Analysis cache HIT - rules removed");
+
+                // drop the results of the removed rules
+                updatedResult = new AnalysisResult(document.getCheckSum(), new ArrayList<>(getCachedViolations(document)));
+            } else if (contentUpToDate) {
+                LOG.trace("Incremental Analysis cache PARTIAL HIT - rules changed");
+
+                // keep the results of unchanged rules, the other rules will add theirs
+                updatedResult = new AnalysisResult(document.getCheckSum(), new ArrayList<>(getCachedViolations(document)));
             } else {
                 LOG.trace("Incremental Analysis cache MISS - {}",
                           cachedResult != null ? "file changed" : "no previous result found");
@@ -95,6 +133,17 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
         }
     }
 
+    @Override
+    public boolean isContentUpToDate(final TextDocument document) {
+        final AnalysisResult cachedResult = fileResultsCache.get(document.getFileId());
+        return cachedResult != null && cachedResult.getFileChecksum() == document.getCheckSum();
+    }
+
+    @Override
+    public boolean isRuleUpToDate(final Rule rule) {
+        return upToDateRules.contains(CachedRuleMapper.getRuleKey(rule));
+    }
+
     @Override
     public List<RuleViolation> getCachedViolations(final TextDocument sourceFile) {
         final AnalysisResult analysisResult = fileResultsCache.get(sourceFile.getFileId());
@@ -104,7 +153,25 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
             return Collections.emptyList();
         }
 
-        return analysisResult.getViolations();
+        if (cachedRulesUpToDate) {
+            return analysisResult.getViolations();
+        }
+
+        // drop the violations of rules that were changed or removed
+        final List<RuleViolation> result = new ArrayList<>();
+        for (final RuleViolation violation : analysisResult.getViolations()) {
+            if (upToDateRules.contains(getRuleKey(violation))) {
+                result.add(violation);
+            }
+        }
+        return result;
+    }
+
+    private static String getRuleKey(RuleViolation violation) {
+        if (violation instanceof CachedRuleViolation) {
+            return ((CachedRuleViolation) violation).getRuleKey();
+        }
+        return CachedRuleMapper.getRuleKey(violation.getRule());
     }
 
     @Override
@@ -125,9 +192,30 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "validity check")) {
             boolean cacheIsValid = cacheExists();
 
-            if (cacheIsValid && ruleSets.getChecksum() != rulesetChecksum) {
-                LOG.debug("Analysis cache invalidated, rulesets changed.");
-                cacheIsValid = false;
+            final Map<String, Long> currentRuleChecksums = new HashMap<>();
+            ruleSets.getRuleChecksums().forEach((rule, checksum) -> currentRuleChecksums.put(CachedRuleMapper.getRuleKey(rule), checksum));
+
+            final Set<String> unchangedRules = new HashSet<>();
+            currentRuleChecksums.forEach((key, checksum) -> {
+                if (checksum.equals(ruleChecksums.get(key))) {
+                    unchangedRules.add(key);
+                }
+            });
+            final boolean currentRulesUnchanged = unchangedRules.size() == currentRuleChecksums.size();
+            final boolean cachedRulesUnchanged = unchangedRules.size() == ruleChecksums.size();
+
+            if (cacheIsValid && (ruleSets.getChecksum() != rulesetChecksum || !currentRulesUnchanged || !cachedRulesUnchanged)) {
+                if (unchangedRules.isEmpty()) {
+                    LOG.debug("Analysis cache invalidated, rulesets changed.");
+                    cacheIsValid = false;
+                } else if (currentRulesUnchanged) {
+                    // the cached violations of the removed rules are dropped, no rule needs to be executed
+                    LOG.debug("Analysis cache still valid, {} rules removed.", ruleChecksums.size() - unchangedRules.size());
+                } else {
+                    // only the changed rules will be executed on unchanged files
+                    LOG.debug("Analysis cache partially invalidated, {} of {} rules changed.",
+                              currentRuleChecksums.size() - unchangedRules.size(), currentRuleChecksums.size());
+                }
             }
 
             final long currentAuxClassPathChecksum;
@@ -135,11 +223,13 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
                 // we don't want to close our aux classpath loader - we still need it...
                 @SuppressWarnings("PMD.CloseResource") final URLClassLoader urlClassLoader = (URLClassLoader) auxclassPathClassLoader;
                 currentAuxClassPathChecksum = FINGERPRINTER.fingerprint(urlClassLoader.getURLs());
+                auxClassLoader = urlClassLoader;
 
-                if (cacheIsValid && currentAuxClassPathChecksum != auxClassPathChecksum) {
-                    // TODO some rules don't need that (in fact, some languages)
-                    LOG.debug("Analysis cache invalidated, auxclasspath changed.");
-                    cacheIsValid = false;
+                if (currentAuxClassPathChecksum == auxClassPathChecksum) {
+                    // the recorded checksums are still current
+                    currentDependencyChecksums.putAll(dependencyChecksums);
+                } else if (cacheIsValid) {
+                    invalidateClasspathDependents();
                 }
             } else {
                 currentAuxClassPathChecksum = 0;
@@ -154,9 +244,15 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
             if (!cacheIsValid) {
                 // Clear the cache
                 fileResultsCache.clear();
+                dependencyChecksums.clear();
             }
+            upToDateRules = cacheIsValid ? unchangedRules : Collections.emptySet();
+            allRulesUpToDate = cacheIsValid && currentRulesUnchanged;
+            cachedRulesUpToDate = cacheIsValid && cachedRulesUnchanged;
 
             // Update the local checksums
+            ruleChecksums.clear();
+            ruleChecksums.putAll(currentRuleChecksums);
             rulesetChecksum = ruleSets.getChecksum();
             auxClassPathChecksum = currentAuxClassPathChecksum;
             executionClassPathChecksum = currentExecutionClassPathChecksum;
@@ -164,6 +260,48 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
         }
     }
 
+    /**
+     * Removes the results that depend on auxclasspath resources that
+     * changed, or whose dependencies are unknown.
+     */
+    private void invalidateClasspathDependents() {
+        final Set<String> changedDependencies = new HashSet<>();
+        for (final Map.Entry<String, Long> dependency : dependencyChecksums.entrySet()) {
+            final long currentChecksum = getDependencyChecksum(dependency.getKey());
+            if (currentChecksum != dependency.getValue()) {
+                changedDependencies.add(dependency.getKey());
+                dependency.setValue(currentChecksum);
+            }
+        }
+
+        final int countResults = fileResultsCache.size();
+        fileResultsCache.values().removeIf(result -> {
+            final Set<String> dependencies = result.getClasspathDependencies();
+            return dependencies == null || !Collections.disjoint(dependencies, changedDependencies);
+        });
+        LOG.debug("Analysis cache partially invalidated, auxclasspath changed. {} of {} files depend on the {} changed classpath resources.",
+                  countResults - fileResultsCache.size(), countResults, changedDependencies.size());
+    }
+
+    /**
+     * Returns the checksum of the given resource of the auxclasspath, as
+     * it is during this analysis. Resources that are not on the auxclasspath
+     * have a checksum of zero, and resources that are provided by the parent
+     * classloader (eg the JDK) have a checksum of {@value #PROVIDED_BY_PARENT}.
+     */
+    protected long getDependencyChecksum(final String resourcePath) {
+        return currentDependencyChecksums.computeIfAbsent(resourcePath, path -> {
+            if (auxClassLoader == null) {
+                return 0L;
+            }
+            final URL url = auxClassLoader.findResource(path);
+            if (url != null) {
+                return FINGERPRINTER.fingerprint(url);
+            }
+            return auxClassLoader.getResource(path) != null ? PROVIDED_BY_PARENT : 0L;
+        });
+    }
+
     private static boolean isClassPathWildcard(String entry) {
         return entry.endsWith("/*") || entry.endsWith("\\*");
     }
@@ -219,6 +357,7 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
     @Override
     public FileAnalysisListener startFileAnalysis(TextDocument file) {
         final FileId fileName = file.getFileId();
+        final ClasspathDependencies dependencies = ClasspathDependencies.startRecording();
 
         return new FileAnalysisListener() {
             @Override
@@ -230,6 +369,53 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
             public void onError(ProcessingError error) {
                 analysisFailed(file);
             }
+
+            @Override
+            public void close() {
+                dependencies.stopRecording();
+                final AnalysisResult result = updatedResultsCache.get(fileName);
+                final AnalysisResult cachedResult = fileResultsCache.get(fileName);
+                if (result == null || result == cachedResult) { // NOPMD CompareObjectsWithEquals
+                    return;
+                }
+                if (cachedResult == null || cachedResult.getFileChecksum() != result.getFileChecksum()) {
+                    // the file was analysed again
+                    result.setClasspathDependencies(getClasspathDependencies(dependencies));
+                } else if (allRulesUpToDate) {
+                    // no rule was executed, only the violations of removed rules were dropped
+                    result.setClasspathDependencies(cachedResult.getClasspathDependencies());
+                } else {
+                    // the cached violations of the rules that were not executed again still
+                    // depend on the dependencies of the cached result
+                    result.setClasspathDependencies(union(cachedResult.getClasspathDependencies(),
+                                                          getClasspathDependencies(dependencies)));
+                }
+            }
         };
     }
+
+    /** Returns the union of the dependencies, or null if any of them is unknown. */
+    private static @Nullable Set<String> union(final @Nullable Set<String> dependencies,
+                                               final @Nullable Set<String> otherDependencies) {
+        if (dependencies == null || otherDependencies == null) {
+            return null;
+        }
+        final Set<String> result = new HashSet<>(dependencies);
+        result.addAll(otherDependencies);
+        return result;
+    }
+
+    private @Nullable Set<String> getClasspathDependencies(final ClasspathDependencies dependencies) {
+        if (!dependencies.isTracked()) {
+            return null;
+        }
+        final Set<String> result = new HashSet<>();
+        for (final String resource : dependencies.getResources()) {
+            // the parent classloader is not fingerprinted
+            if (getDependencyChecksum(resource) != PROVIDED_BY_PARENT) {
+                result.add(resource);
+            }
+        }
+        return result;
+    }
 }
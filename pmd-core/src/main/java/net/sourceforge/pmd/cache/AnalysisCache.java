@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 
+import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.annotation.InternalApi;
@@ -43,6 +44,34 @@ public interface AnalysisCache {
      */
     boolean isUpToDate(TextDocument document);
 
+    /**
+     * Checks if the contents of the given file are unchanged since they were
+     * cached. When this returns true but {@link #isUpToDate(TextDocument)} returns
+     * false, some rules were added or changed since the cache was written. In
+     * that case, {@link #getCachedViolations(TextDocument)} returns the violations
+     * of the rules that are still {@linkplain #isRuleUpToDate(Rule) up to date},
+     * and only the other rules need to be executed on the file.
+     *
+     * @param document The file to check in the cache
+     * @return True if the file contents are unchanged
+     */
+    default boolean isContentUpToDate(TextDocument document) {
+        return false;
+    }
+
+    /**
+     * Checks if the cached violations of the given rule are still valid, ie
+     * the rule was executed with the same configuration when the cache was
+     * written. This needs {@link #checkValidity(RuleSets, ClassLoader, Collection)}
+     * to have been called.
+     *
+     * @param rule The rule to check
+     * @return True if the cached violations of the rule can be reused
+     */
+    default boolean isRuleUpToDate(Rule rule) {
+        return false;
+    }
+
     /**
      * Retrieves cached violations for the given file. Make sure to call {@link #isUpToDate(TextDocument)} first.
      * @param sourceFile The file to check in the cache
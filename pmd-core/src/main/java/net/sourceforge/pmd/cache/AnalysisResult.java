@@ -6,6 +6,9 @@ package net.sourceforge.pmd.cache;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.annotation.InternalApi;
@@ -21,6 +24,7 @@ public class AnalysisResult {
 
     private final long fileChecksum;
     private final List<RuleViolation> violations;
+    private Set<String> classpathDependencies;
 
     public AnalysisResult(final long fileChecksum, final List<RuleViolation> violations) {
         this.fileChecksum = fileChecksum;
@@ -39,6 +43,19 @@ public class AnalysisResult {
         return violations;
     }
 
+    /**
+     * Returns the auxclasspath resources the analysis of the file depended
+     * on, or null if they are not known. In that case the result depends
+     * on the whole auxclasspath.
+     */
+    public @Nullable Set<String> getClasspathDependencies() {
+        return classpathDependencies;
+    }
+
+    public void setClasspathDependencies(final @Nullable Set<String> classpathDependencies) {
+        this.classpathDependencies = classpathDependencies;
+    }
+
     public void addViolations(final List<RuleViolation> violations) {
         this.violations.addAll(violations);
     }
@@ -0,0 +1,50 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.io.IOException;
+
+import net.sourceforge.pmd.annotation.InternalApi;
+
+/**
+ * A content-addressed store of cache entries, used by {@link SharedAnalysisCache}.
+ * Keys are derived from everything an entry depends on, so an entry never
+ * changes once it is stored. This lets several PMD processes, eg on different
+ * branches or CI agents, share the same store.
+ *
+ * <p>Implementations must be safe for concurrent use by several threads
+ * and processes. A reader must never see a partially written entry.
+ *
+ * @see DirectoryCacheStore
+ * @deprecated This is internal API, will be hidden with 7.0.0
+ */
+@Deprecated
+@InternalApi
+public interface CacheStore {
+
+    /**
+     * Returns the entry stored under the given key, or null if there is none.
+     *
+     * @param key A key made of lowercase hexadecimal digits
+     */
+    byte[] load(String key) throws IOException;
+
+    /**
+     * Stores an entry under the given key. If there already is an entry
+     * for the key, it has the same content and may be kept.
+     *
+     * @param key   A key made of lowercase hexadecimal digits
+     * @param entry The content of the entry
+     */
+    void store(String key, byte[] entry) throws IOException;
+
+    /**
+     * Called once all the results of an analysis were stored. Stores may
+     * use it to evict old entries.
+     */
+    default void flush() throws IOException {
+        // do nothing
+    }
+}
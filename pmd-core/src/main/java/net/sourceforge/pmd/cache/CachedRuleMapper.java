@@ -10,6 +10,7 @@ import java.util.Map;
 import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
 
 /**
  * A mapper from rule class names to rule instances for cached rules.
@@ -27,10 +28,12 @@ public class CachedRuleMapper {
      * @param className The name of the rule class that generated the cache entry
      * @param ruleName The name of the rule that generated the cache entry
      * @param languageName The terse name of the language for which the rule applies
+     * @param propertiesChecksum The checksum of the property values of the rule, see {@link #getPropertiesChecksum(Rule)}
      * @return The requested rule
      */
-    public Rule getRuleForClass(final String className, final String ruleName, final String languageName) {
-        return cachedRulesInstances.get(getRuleKey(className, ruleName, languageName));
+    public Rule getRuleForClass(final String className, final String ruleName, final String languageName,
+                                final long propertiesChecksum) {
+        return cachedRulesInstances.get(getRuleKey(className, ruleName, languageName, propertiesChecksum));
     }
 
     /**
@@ -39,11 +42,35 @@ public class CachedRuleMapper {
      */
     public void initialize(final RuleSets rs) {
         for (final Rule r : rs.getAllRules()) {
-            cachedRulesInstances.put(getRuleKey(r.getRuleClass(), r.getName(), r.getLanguage().getTerseName()), r);
+            cachedRulesInstances.put(getRuleKey(r), r);
         }
     }
 
-    private String getRuleKey(final String className, final String ruleName, final String languageName) {
-        return className + "$$" + ruleName + "$$" + languageName;
+    static String getRuleKey(final Rule rule) {
+        return getRuleKey(rule.getRuleClass(), rule.getName(), rule.getLanguage().getTerseName(),
+                          getPropertiesChecksum(rule));
+    }
+
+    static String getRuleKey(final String className, final String ruleName, final String languageName,
+                             final long propertiesChecksum) {
+        return className + "$$" + ruleName + "$$" + languageName + "$$" + Long.toHexString(propertiesChecksum);
+    }
+
+    /**
+     * Returns a checksum of the property values of the rule. This tells
+     * apart the references to the same rule with different properties.
+     */
+    static long getPropertiesChecksum(final Rule rule) {
+        long checksum = 1;
+        for (final PropertyDescriptor<?> descriptor : rule.getPropertyDescriptors()) {
+            checksum = checksum * 31 + descriptor.name().hashCode();
+            checksum = checksum * 31 + serializedValue(rule, descriptor).hashCode();
+        }
+        return checksum;
+    }
+
+    private static <T> String serializedValue(final Rule rule, final PropertyDescriptor<T> descriptor) {
+        // use the string form, some values (eg regexes) don't implement hashCode
+        return descriptor.serializer().toString(rule.getProperty(descriptor));
     }
 }
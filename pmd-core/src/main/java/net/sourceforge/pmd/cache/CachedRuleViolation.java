@@ -37,14 +37,15 @@ public final class CachedRuleViolation implements RuleViolation {
     private final String ruleClassName;
     private final String ruleName;
     private final String ruleTargetLanguage;
+    private final long rulePropertiesChecksum;
     private final Map<String, String> additionalInfo;
 
     private final FileLocation location;
 
     private CachedRuleViolation(final CachedRuleMapper mapper, final String description,
                                 final FileId fileFileId, final String ruleClassName, final String ruleName,
-                                final String ruleTargetLanguage, final int beginLine, final int beginColumn,
-                                final int endLine, final int endColumn,
+                                final String ruleTargetLanguage, final long rulePropertiesChecksum,
+                                final int beginLine, final int beginColumn, final int endLine, final int endColumn,
                                 final Map<String, String> additionalInfo) {
         this.mapper = mapper;
         this.description = description;
@@ -52,13 +53,19 @@ public final class CachedRuleViolation implements RuleViolation {
         this.ruleClassName = ruleClassName;
         this.ruleName = ruleName;
         this.ruleTargetLanguage = ruleTargetLanguage;
+        this.rulePropertiesChecksum = rulePropertiesChecksum;
         this.additionalInfo = additionalInfo;
     }
     
     @Override
     public Rule getRule() {
         // The mapper may be initialized after cache is loaded, so use it lazily
-        return mapper.getRuleForClass(ruleClassName, ruleName, ruleTargetLanguage);
+        return mapper.getRuleForClass(ruleClassName, ruleName, ruleTargetLanguage, rulePropertiesChecksum);
+    }
+
+    /** Returns the key of the rule that produced this violation. */
+    String getRuleKey() {
+        return CachedRuleMapper.getRuleKey(ruleClassName, ruleName, ruleTargetLanguage, rulePropertiesChecksum);
     }
 
     @Override
@@ -94,13 +101,14 @@ public final class CachedRuleViolation implements RuleViolation {
         String ruleClassName = stream.readUTF();
         String ruleName = stream.readUTF();
         String ruleTargetLanguage = stream.readUTF();
+        long rulePropertiesChecksum = stream.readLong();
         int beginLine = stream.readInt();
         int beginColumn = stream.readInt();
         int endLine = stream.readInt();
         int endColumn = stream.readInt();
         Map<String, String> additionalInfo = readAdditionalInfo(stream);
         return new CachedRuleViolation(mapper, description, fileFileId, ruleClassName, ruleName, ruleTargetLanguage,
-                                       beginLine, beginColumn, endLine, endColumn, additionalInfo);
+                                       rulePropertiesChecksum, beginLine, beginColumn, endLine, endColumn, additionalInfo);
     }
 
     private static @NonNull Map<String, String> readAdditionalInfo(DataInputStream stream) throws IOException {
@@ -128,9 +136,19 @@ public final class CachedRuleViolation implements RuleViolation {
     /* package */ static void storeToStream(final DataOutputStream stream,
             final RuleViolation violation) throws IOException {
         stream.writeUTF(StringUtil.nullToEmpty(violation.getDescription()));
-        stream.writeUTF(StringUtil.nullToEmpty(violation.getRule().getRuleClass()));
-        stream.writeUTF(StringUtil.nullToEmpty(violation.getRule().getName()));
-        stream.writeUTF(StringUtil.nullToEmpty(violation.getRule().getLanguage().getTerseName()));
+        if (violation instanceof CachedRuleViolation) {
+            // the rule may not be in the current rulesets
+            final CachedRuleViolation cached = (CachedRuleViolation) violation;
+            stream.writeUTF(cached.ruleClassName);
+            stream.writeUTF(cached.ruleName);
+            stream.writeUTF(cached.ruleTargetLanguage);
+            stream.writeLong(cached.rulePropertiesChecksum);
+        } else {
+            stream.writeUTF(StringUtil.nullToEmpty(violation.getRule().getRuleClass()));
+            stream.writeUTF(StringUtil.nullToEmpty(violation.getRule().getName()));
+            stream.writeUTF(StringUtil.nullToEmpty(violation.getRule().getLanguage().getTerseName()));
+            stream.writeLong(CachedRuleMapper.getPropertiesChecksum(violation.getRule()));
+        }
         FileLocation location = violation.getLocation();
         stream.writeInt(location.getStartPos().getLine());
         stream.writeInt(location.getStartPos().getColumn());
@@ -0,0 +1,173 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.annotation.InternalApi;
+
+/**
+ * A {@link CacheStore} backed by a directory, which can be shared by several
+ * PMD processes. Each entry is a file, named after its key, in a subdirectory
+ * named after the first two characters of the key.
+ *
+ * <p>Entries are written to a temporary file which is then atomically moved
+ * to its final name, so readers never see partial entries. Reading an entry
+ * updates its modification time. When the directory gets bigger than the
+ * configured size, the least recently used entries are deleted until it
+ * uses three quarters of that size.
+ *
+ * @deprecated This is internal API, will be hidden with 7.0.0
+ */
+@Deprecated
+@InternalApi
+public class DirectoryCacheStore implements CacheStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DirectoryCacheStore.class);
+    private static final String TEMP_SUFFIX = ".tmp";
+    /** Temporary files older than this were left by a process that died. */
+    private static final long STALE_TEMP_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final Path directory;
+    private final long maxSize;
+
+    /**
+     * Creates a store in the given directory, which is created if needed.
+     *
+     * @param directory The directory of the store
+     * @param maxSize   The size in bytes above which old entries are evicted
+     */
+    public DirectoryCacheStore(final Path directory, final long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive, got " + maxSize);
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    private Path entryPath(final String key) {
+        if (key.length() < 3) {
+            throw new IllegalArgumentException("Key too short: " + key);
+        }
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    @Override
+    public byte[] load(final String key) throws IOException {
+        final Path entry = entryPath(key);
+        try {
+            final byte[] content = Files.readAllBytes(entry);
+            touch(entry);
+            return content;
+        } catch (final NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static void touch(final Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (final IOException e) {
+            // the entry may have been evicted concurrently, or the store is read-only
+            LOG.trace("Could not update the access time of {}: {}", entry, e.getMessage());
+        }
+    }
+
+    @Override
+    public void store(final String key, final byte[] entry) throws IOException {
+        final Path target = entryPath(key);
+        Files.createDirectories(target.getParent());
+        final Path temp = Files.createTempFile(target.getParent(), key, TEMP_SUFFIX);
+        try {
+            Files.write(temp, entry);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final List<StoredEntry> entries = new ArrayList<>();
+        final long[] totalSize = {0};
+
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    if (now - attrs.lastModifiedTime().toMillis() > STALE_TEMP_MILLIS) {
+                        Files.deleteIfExists(file);
+                    }
+                } else {
+                    entries.add(new StoredEntry(file, attrs.lastModifiedTime(), attrs.size()));
+                    totalSize[0] += attrs.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                // deleted concurrently
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        if (totalSize[0] <= maxSize) {
+            return;
+        }
+
+        entries.sort(Comparator.comparing(entry -> entry.lastAccess));
+        long size = totalSize[0];
+        int evicted = 0;
+        final long targetSize = maxSize / 4 * 3;
+        for (final StoredEntry entry : entries) {
+            if (size <= targetSize) {
+                break;
+            }
+            // another process may be evicting the same entry
+            Files.deleteIfExists(entry.path);
+            size -= entry.size;
+            evicted++;
+        }
+        LOG.debug("Evicted {} entries from the analysis cache store {}", evicted, directory);
+    }
+
+    private static final class StoredEntry {
+        final Path path;
+        final FileTime lastAccess;
+        final long size;
+
+        StoredEntry(final Path path, final FileTime lastAccess, final long size) {
+            this.path = path;
+            this.lastAccess = lastAccess;
+            this.size = size;
+        }
+    }
+}
@@ -4,18 +4,27 @@
 
 package net.sourceforge.pmd.cache;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 import net.sourceforge.pmd.PMDVersion;
@@ -29,7 +38,18 @@ import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.document.TextFile;
 
 /**
- * An analysis cache backed by a regular file.
+ * An analysis cache backed by a regular file. The file is an {@link IndexedCacheFile},
+ * so that loading the cache only reads the results of the analysed files,
+ * and their violations only when they are replayed.
+ *
+ * <p>When the rules and classpaths did not change, persisting the cache
+ * only appends the results of the files that were analysed again to a log
+ * next to the cache file, together with the auxclasspath dependencies
+ * that are not in the cache file yet. The log is read when loading the
+ * cache, and is merged into the cache file when it gets too big. The cache
+ * file is also rewritten when too many of the results it stores, with those
+ * of the log, are not part of the analysis anymore, because a rewrite only
+ * keeps the results of the analysed files.
  *
  * @deprecated This is internal API, will be hidden with 7.0.0
  */
@@ -37,7 +57,43 @@ import net.sourceforge.pmd.lang.document.TextFile;
 @InternalApi
 public class FileAnalysisCache extends AbstractAnalysisCache {
 
+    private static final int LOG_MAGIC = 0x504D444C; // "PMDL"
+    /** Tags of the records of the log. */
+    private static final byte LOG_DEPENDENCY = 0;
+    private static final byte LOG_RESULT = 1;
+
+    private static final IndexedCacheFile.PayloadEncoder PAYLOAD_ENCODER = (cachedResult, out) -> {
+        // don't keep the decoded results of the cache in memory
+        final AnalysisResult result = cachedResult instanceof LazyAnalysisResult
+                                      ? ((LazyAnalysisResult) cachedResult).loadTransient()
+                                      : cachedResult;
+        final List<RuleViolation> violations = result.getViolations();
+        out.writeInt(violations.size());
+        for (final RuleViolation rv : violations) {
+            CachedRuleViolation.storeToStream(out, rv);
+        }
+    };
+    /** The log is merged into the cache file when it is bigger than this and half the cache file. */
+    private static final long MIN_COMPACTION_SIZE = 64 * 1024;
+    /**
+     * The cache file is rewritten when the results it would keep for files that
+     * were not analysed, or that were analysed again, are more than this and
+     * half the results of the analysis.
+     */
+    private static final int MIN_COMPACTION_DEAD_ENTRIES = 32;
+
     private final File cacheFile;
+    private final File logFile;
+
+    /** The loaded cache file, null if there is none or if it is outdated. */
+    private IndexedCacheFile indexedFile;
+    /** Names of the dependencies of the loaded cache file and log, by index. */
+    private final List<String> loadedDependencies = new ArrayList<>();
+    private final Map<String, Integer> loadedDependencyIndices = new HashMap<>();
+    /** Size of the loaded log, -1 if it is unusable. */
+    private long logLength;
+    /** Number of results stored in the loaded cache file and log, including superseded ones. */
+    private long storedEntries;
 
     /**
      * Creates a new cache backed by the given file.
@@ -46,6 +102,7 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
     public FileAnalysisCache(final File cache) {
         super();
         this.cacheFile = cache;
+        this.logFile = new File(cache.getPath() + ".log");
     }
 
     @Override
@@ -61,48 +118,29 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
      * @param cacheFile The file which backs the file analysis cache.
      */
     private void loadFromFile(final File cacheFile, Collection<? extends TextFile> files) {
-        Map<String, FileId> idMap =
-            files.stream().map(TextFile::getFileId)
-                 .collect(Collectors.toMap(FileId::getUriString, id -> id));
-
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "load")) {
             if (cacheExists()) {
-                try (
-                    DataInputStream inputStream = new DataInputStream(
-                        new BufferedInputStream(Files.newInputStream(cacheFile.toPath())));
-                ) {
-                    final String cacheVersion = inputStream.readUTF();
-
-                    if (PMDVersion.VERSION.equals(cacheVersion)) {
-                        // Cache seems valid, load the rest
-
-                        // Get checksums
-                        rulesetChecksum = inputStream.readLong();
-                        auxClassPathChecksum = inputStream.readLong();
-                        executionClassPathChecksum = inputStream.readLong();
-
-                        // Cached results
-                        while (inputStream.available() > 0) {
-                            final String filePathId = inputStream.readUTF();
-                            FileId fileId = idMap.get(filePathId);
-                            if (fileId == null) {
-                                LOG.debug("File {} is in the cache but is not part of the analysis",
-                                          filePathId);
-                                fileId = FileId.fromURI(filePathId);
-                            }
-                            final long checksum = inputStream.readLong();
-
-                            final int countViolations = inputStream.readInt();
-                            final List<RuleViolation> violations = new ArrayList<>(countViolations);
-                            for (int i = 0; i < countViolations; i++) {
-                                violations.add(CachedRuleViolation.loadFromStream(inputStream, fileId, ruleMapper));
+                try {
+                    final IndexedCacheFile file = IndexedCacheFile.open(cacheFile.toPath());
+                    if (file == null) {
+                        LOG.debug("Analysis cache invalidated, cache format changed.");
+                    } else if (readHeader(file.getHeader())) {
+                        // Cache seems valid, load the results of the analysed files
+                        indexedFile = file;
+                        storedEntries = file.getEntryCount();
+                        file.getDependencies().forEach(this::addLoadedDependency);
+                        for (final TextFile textFile : files) {
+                            final FileId fileId = textFile.getFileId();
+                            final AnalysisResult result = file.find(fileId.getUriString(), payloadDecoder(fileId));
+                            if (result != null) {
+                                fileResultsCache.put(fileId, result);
                             }
-
-                            fileResultsCache.put(fileId, new AnalysisResult(checksum, violations));
                         }
+                        loadLog(file.getGeneration(), files);
 
                         LOG.debug("Analysis cache loaded from {}", cacheFile);
                     } else {
+                        file.close();
                         LOG.debug("Analysis cache invalidated, PMD version changed.");
                     }
                 } catch (final EOFException e) {
@@ -116,6 +154,155 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
         }
     }
 
+    /**
+     * Reads the header of the cache file. Returns false if the cache
+     * was written by another version of PMD.
+     */
+    private boolean readHeader(final byte[] header) throws IOException {
+        final DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(header));
+        final String cacheVersion = inputStream.readUTF();
+        if (!PMDVersion.VERSION.equals(cacheVersion)) {
+            return false;
+        }
+
+        // Get checksums
+        rulesetChecksum = inputStream.readLong();
+        auxClassPathChecksum = inputStream.readLong();
+        executionClassPathChecksum = inputStream.readLong();
+
+        // Checksums of the rules used to compute the results
+        final int countRules = inputStream.readInt();
+        for (int i = 0; i < countRules; i++) {
+            final String ruleKey = inputStream.readUTF();
+            ruleChecksums.put(ruleKey, inputStream.readLong());
+        }
+        return true;
+    }
+
+    /**
+     * Adds a dependency of the loaded cache file or log, with the index
+     * that follows the ones already loaded.
+     */
+    private void addLoadedDependency(final String name, final long checksum) {
+        loadedDependencyIndices.put(name, loadedDependencies.size());
+        loadedDependencies.add(name);
+        dependencyChecksums.put(name, checksum);
+    }
+
+    /**
+     * Writes the header of the cache file.
+     */
+    private byte[] writeHeader() throws IOException {
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        final DataOutputStream outputStream = new DataOutputStream(header);
+        outputStream.writeUTF(pmdVersion);
+
+        outputStream.writeLong(rulesetChecksum);
+        outputStream.writeLong(auxClassPathChecksum);
+        outputStream.writeLong(executionClassPathChecksum);
+
+        // sorted, so that the same rules always produce the same header
+        final Map<String, Long> sortedRules = new TreeMap<>(ruleChecksums);
+        outputStream.writeInt(sortedRules.size());
+        for (final Map.Entry<String, Long> ruleEntry : sortedRules.entrySet()) {
+            outputStream.writeUTF(ruleEntry.getKey());
+            outputStream.writeLong(ruleEntry.getValue());
+        }
+        outputStream.flush();
+        return header.toByteArray();
+    }
+
+    /**
+     * Returns a decoder for the payload of the results written by
+     * {@link #PAYLOAD_ENCODER}, which contains the violations.
+     */
+    private IndexedCacheFile.PayloadDecoder payloadDecoder(final FileId fileId) {
+        return (checksum, in) -> {
+            final int countViolations = in.readInt();
+            final List<RuleViolation> violations = new ArrayList<>(countViolations);
+            for (int i = 0; i < countViolations; i++) {
+                violations.add(CachedRuleViolation.loadFromStream(in, fileId, ruleMapper));
+            }
+            return new AnalysisResult(checksum, violations);
+        };
+    }
+
+    /**
+     * Returns the checksums of the auxclasspath resources the given results
+     * depend on, sorted by name.
+     */
+    private SortedMap<String, Long> getDependencies(final Collection<AnalysisResult> results) {
+        final SortedMap<String, Long> dependencies = new TreeMap<>();
+        for (final AnalysisResult result : results) {
+            final Set<String> resultDependencies = result.getClasspathDependencies();
+            if (resultDependencies != null) {
+                for (final String dependency : resultDependencies) {
+                    dependencies.put(dependency, getDependencyChecksum(dependency));
+                }
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * Loads the results appended to the log since the cache file was
+     * written. They replace the results of the cache file. The log also
+     * adds the dependencies of its results to those of the cache file. A log that
+     * belongs to another cache file is ignored. If the log is truncated,
+     * the complete records are used, and the cache file will be rewritten.
+     */
+    private void loadLog(final long generation, Collection<? extends TextFile> files) throws IOException {
+        logLength = -1;
+        if (!logFile.isFile()) {
+            logLength = 0;
+            return;
+        }
+
+        final Map<String, FileId> idMap =
+            files.stream().map(TextFile::getFileId)
+                 .collect(Collectors.toMap(FileId::getUriString, id -> id, (a, b) -> a));
+        final byte[] log = Files.readAllBytes(logFile.toPath());
+        final DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(log));
+        try {
+            if (inputStream.readInt() != LOG_MAGIC || inputStream.readLong() != generation) {
+                LOG.debug("Ignoring analysis cache log {}, it does not match the cache file", logFile);
+                return;
+            }
+            while (inputStream.available() > 0) {
+                final byte tag = inputStream.readByte();
+                if (tag == LOG_DEPENDENCY) {
+                    final String name = inputStream.readUTF();
+                    addLoadedDependency(name, inputStream.readLong());
+                    continue;
+                } else if (tag != LOG_RESULT) {
+                    throw new EOFException("Invalid log record " + tag);
+                }
+
+                final String filePathId = inputStream.readUTF();
+                final long checksum = inputStream.readLong();
+                final Set<String> dependencies = IndexedCacheFile.readDependencies(inputStream, loadedDependencies);
+                final int length = inputStream.readInt();
+                final int offset = log.length - inputStream.available();
+                if (inputStream.skipBytes(length) != length) {
+                    throw new EOFException();
+                }
+                storedEntries++;
+
+                final FileId fileId = idMap.get(filePathId);
+                if (fileId != null) {
+                    final IndexedCacheFile.PayloadDecoder decoder = payloadDecoder(fileId);
+                    fileResultsCache.put(fileId, new LazyAnalysisResult(checksum, dependencies, () -> {
+                        final DataInputStream payload = new DataInputStream(new ByteArrayInputStream(log, offset, length));
+                        return decoder.decode(checksum, payload);
+                    }));
+                }
+            }
+            logLength = log.length;
+        } catch (final EOFException e) {
+            LOG.warn("Cache log {} is truncated, the cache file will be rewritten", logFile.getPath());
+        }
+    }
+
     @Override
     public void persist() {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "persist")) {
@@ -134,35 +321,133 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
                 }
             }
 
-            try (
-                DataOutputStream outputStream = new DataOutputStream(
-                    new BufferedOutputStream(Files.newOutputStream(cacheFile.toPath())))
-            ) {
-                outputStream.writeUTF(pmdVersion);
+            try {
+                if (appendToLog(writeHeader())) {
+                    LOG.debug("Analysis cache log updated");
+                } else {
+                    rewriteCacheFile();
+                    if (cacheFileShouldBeCreated) {
+                        LOG.debug("Analysis cache created");
+                    } else {
+                        LOG.debug("Analysis cache updated");
+                    }
+                }
+            } catch (final IOException | UncheckedIOException e) {
+                LOG.error("Could not persist analysis cache to file: {}", e.getMessage());
+            } finally {
+                closeIndexedFile();
+            }
+        }
+    }
 
-                outputStream.writeLong(rulesetChecksum);
-                outputStream.writeLong(auxClassPathChecksum);
-                outputStream.writeLong(executionClassPathChecksum);
+    /**
+     * Appends the results that changed to the log, if the loaded cache
+     * file is still valid, the log is not too big, and the cache file and
+     * log would not keep too many results that a rewrite drops. Results that were
+     * loaded from the cache are not written again. The dependencies of
+     * the results that are not in the cache file or log yet are appended
+     * before the results.
+     *
+     * @return False if the cache file must be rewritten instead
+     */
+    private boolean appendToLog(final byte[] header) throws IOException {
+        if (indexedFile == null || logLength < 0 || !Arrays.equals(header, indexedFile.getHeader())) {
+            return false;
+        }
 
-                for (final Map.Entry<FileId, AnalysisResult> resultEntry : updatedResultsCache.entrySet()) {
-                    final List<RuleViolation> violations = resultEntry.getValue().getViolations();
+        final List<AnalysisResult> changedResults = getChangedResults();
+        // a rewrite only keeps the results of this analysis, all the others are dead
+        final long liveEntries = updatedResultsCache.size();
+        final long deadEntries = storedEntries + changedResults.size() - liveEntries;
+        if (deadEntries > MIN_COMPACTION_DEAD_ENTRIES && deadEntries > liveEntries / 2) {
+            return false;
+        }
 
-                    outputStream.writeUTF(resultEntry.getKey().getUriString()); // the path id
-                    outputStream.writeLong(resultEntry.getValue().getFileChecksum());
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        final DataOutputStream outputStream = new DataOutputStream(records);
+        final Map<String, Integer> dependencyIndices = new HashMap<>(loadedDependencyIndices);
+        for (final Map.Entry<String, Long> dependency : getDependencies(changedResults).entrySet()) {
+            if (!dependencyIndices.containsKey(dependency.getKey())) {
+                dependencyIndices.put(dependency.getKey(), dependencyIndices.size());
+                outputStream.writeByte(LOG_DEPENDENCY);
+                outputStream.writeUTF(dependency.getKey());
+                outputStream.writeLong(dependency.getValue());
+            }
+        }
 
-                    outputStream.writeInt(violations.size());
-                    for (final RuleViolation rv : violations) {
-                        CachedRuleViolation.storeToStream(outputStream, rv);
-                    }
-                }
-                if (cacheFileShouldBeCreated) {
-                    LOG.debug("Analysis cache created");
-                } else {
-                    LOG.debug("Analysis cache updated");
-                }
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        for (final Map.Entry<FileId, AnalysisResult> resultEntry : updatedResultsCache.entrySet()) {
+            if (resultEntry.getValue() instanceof LazyAnalysisResult) {
+                continue; // unchanged
+            }
+            payload.reset();
+            PAYLOAD_ENCODER.encode(resultEntry.getValue(), new DataOutputStream(payload));
+
+            outputStream.writeByte(LOG_RESULT);
+            outputStream.writeUTF(resultEntry.getKey().getUriString()); // the path id
+            outputStream.writeLong(resultEntry.getValue().getFileChecksum());
+            IndexedCacheFile.writeDependencies(outputStream, resultEntry.getValue().getClasspathDependencies(), dependencyIndices);
+            outputStream.writeInt(payload.size());
+            payload.writeTo(outputStream);
+        }
+
+        if (records.size() == 0) {
+            return true;
+        }
+        final long newLogLength = logLength + records.size();
+        if (newLogLength > MIN_COMPACTION_SIZE && newLogLength > indexedFile.size() / 2) {
+            return false;
+        }
+        try (DataOutputStream log = new DataOutputStream(
+            Files.newOutputStream(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (logLength == 0) {
+                log.writeInt(LOG_MAGIC);
+                log.writeLong(indexedFile.getGeneration());
+            }
+            records.writeTo(log);
+            logLength += log.size();
+        }
+        storedEntries += changedResults.size();
+        return true;
+    }
+
+    /**
+     * Writes a new cache file with all the results. The results loaded
+     * from the current cache file are read from it while the new file is
+     * written, the new file replaces it only once it is complete.
+     */
+    private void rewriteCacheFile() throws IOException {
+        final Map<String, AnalysisResult> results = new LinkedHashMap<>();
+        for (final Map.Entry<FileId, AnalysisResult> resultEntry : updatedResultsCache.entrySet()) {
+            results.put(resultEntry.getKey().getUriString(), resultEntry.getValue());
+        }
+
+        IndexedCacheFile.write(cacheFile.toPath(), ThreadLocalRandom.current().nextLong(), writeHeader(),
+                               getDependencies(results.values()), results, PAYLOAD_ENCODER);
+        closeIndexedFile();
+        Files.deleteIfExists(logFile.toPath());
+        logLength = 0;
+        storedEntries = results.size();
+    }
+
+    private List<AnalysisResult> getChangedResults() {
+        final List<AnalysisResult> changed = new ArrayList<>();
+        for (final AnalysisResult result : updatedResultsCache.values()) {
+            if (!(result instanceof LazyAnalysisResult)) {
+                changed.add(result);
+            }
+        }
+        return changed;
+    }
+
+    private void closeIndexedFile() {
+        if (indexedFile != null) {
+            try {
+                indexedFile.close();
             } catch (final IOException e) {
-                LOG.error("Could not persist analysis cache to file: {}", e.getMessage());
+                LOG.debug("Could not close analysis cache file: {}", e.getMessage());
             }
+            indexedFile = null;
         }
     }
 
@@ -0,0 +1,412 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A cache file with an index of its entries, so that the result of a
+ * single file can be looked up without reading the whole cache. The
+ * file is laid out as follows:
+ * <pre>
+ *   int     magic number
+ *   long    generation, changes every time the file is rewritten
+ *   int     length of the header, followed by the header bytes
+ *   int     number of dependencies, followed by (UTF name, long checksum)
+ *           for each dependency
+ *   int     number of slots of the index, a power of two
+ *   slots   (long hash of the file id, long offset of the entry),
+ *           an offset of zero marks an empty slot
+ *   entries (UTF file id, long file checksum, dependencies of the result,
+ *           int length of the payload, payload)
+ * </pre>
+ * The content of the header and of the payloads is owned by the cache.
+ * The dependencies are the auxclasspath resources the results depend on.
+ * They are kept out of the header, so that the cache can add dependencies
+ * without rewriting the file. Each entry refers to its dependencies by
+ * index, see {@link #writeDependencies(DataOutputStream, Set, Map)}.
+ * When the file is opened, only the header, the dependencies and the
+ * index are read. Entries are read with positional reads when they are
+ * looked up, and their payload only when the content of the result is
+ * requested. The dependencies of an entry are read with the entry, so
+ * that the cache can check them without decoding the payload.
+ *
+ * <p>The file is written to a temporary file, which then replaces the
+ * previous file, so that an interrupted write does not corrupt it.
+ */
+final class IndexedCacheFile implements Closeable {
+
+    private static final int MAGIC = 0x504D4443; // "PMDC"
+    private static final int SLOT_SIZE = 16;
+    private static final int MIN_SLOTS = 16;
+
+    private final FileChannel channel;
+    private final long generation;
+    private final byte[] header;
+    private final Map<String, Long> dependencies;
+    private final List<String> dependencyNames;
+    private final int slotCount;
+    private final ByteBuffer slots;
+    private final int entryCount;
+
+    private IndexedCacheFile(FileChannel channel, long generation, byte[] header, Map<String, Long> dependencies,
+                             int slotCount, ByteBuffer slots) {
+        this.channel = channel;
+        this.generation = generation;
+        this.header = header;
+        this.dependencies = dependencies;
+        this.dependencyNames = new ArrayList<>(dependencies.keySet());
+        this.slotCount = slotCount;
+        this.slots = slots;
+        int entries = 0;
+        for (int i = 0; i < slotCount; i++) {
+            if (slots.getLong(i * SLOT_SIZE + 8) != 0) {
+                entries++;
+            }
+        }
+        this.entryCount = entries;
+    }
+
+    /**
+     * Opens the given cache file. Returns null if the file is not in
+     * this format, eg because it was written by an older version of PMD.
+     *
+     * @throws EOFException If the file is truncated
+     * @throws IOException  If the file cannot be read
+     */
+    static @Nullable IndexedCacheFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer start = readFully(channel, 0, 16);
+            if (start.getInt() != MAGIC) {
+                channel.close();
+                return null;
+            }
+            long generation = start.getLong();
+            int headerLength = start.getInt();
+            if (headerLength < 0 || headerLength > channel.size()) {
+                throw new EOFException("Invalid header length " + headerLength);
+            }
+            byte[] header = new byte[headerLength];
+            readFully(channel, 16, headerLength).get(header);
+
+            ChannelInputStream dependencyStream = new ChannelInputStream(channel, 16L + headerLength);
+            DataInputStream dependencyIn = new DataInputStream(new BufferedInputStream(dependencyStream));
+            int dependencyCount = dependencyIn.readInt();
+            if (dependencyCount < 0 || dependencyCount > channel.size()) {
+                throw new EOFException("Invalid dependency count " + dependencyCount);
+            }
+            Map<String, Long> dependencies = new LinkedHashMap<>();
+            for (int i = 0; i < dependencyCount; i++) {
+                dependencies.put(dependencyIn.readUTF(), dependencyIn.readLong());
+            }
+
+            // the buffered stream may have read ahead
+            long slotsPosition = dependencyStream.position - dependencyIn.available();
+            int slotCount = readFully(channel, slotsPosition, 4).getInt();
+            if (slotCount <= 0 || Integer.bitCount(slotCount) != 1 || (long) slotCount * SLOT_SIZE > channel.size()) {
+                throw new EOFException("Invalid index size " + slotCount);
+            }
+            ByteBuffer slots = readFully(channel, slotsPosition + 4, slotCount * SLOT_SIZE);
+            return new IndexedCacheFile(channel, generation, header, dependencies, slotCount, slots);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    byte[] getHeader() {
+        return header;
+    }
+
+    /**
+     * Returns the checksum of each dependency, by name, in the order of
+     * their index.
+     */
+    Map<String, Long> getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * Returns the number of results stored in the file.
+     */
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Looks up the result of the file with the given id. The payload of
+     * the result is decoded lazily by the given decoder, its dependencies
+     * are read right away.
+     *
+     * @return The cached result, or null if the file is not in the cache
+     */
+    @Nullable AnalysisResult find(String pathId, PayloadDecoder decoder) throws IOException {
+        final long hash = hash(pathId);
+        final int mask = slotCount - 1;
+        for (int i = (int) hash & mask, probes = 0; probes < slotCount; i = (i + 1) & mask, probes++) {
+            final long offset = slots.getLong(i * SLOT_SIZE + 8);
+            if (offset == 0) {
+                return null;
+            }
+            if (slots.getLong(i * SLOT_SIZE) == hash) {
+                final DataInputStream entry = streamAt(offset);
+                if (pathId.equals(entry.readUTF())) {
+                    final long checksum = entry.readLong();
+                    final Set<String> resultDependencies = readDependencies(entry, dependencyNames);
+                    return new LazyAnalysisResult(checksum, resultDependencies, () -> {
+                        final DataInputStream in = streamAt(offset);
+                        in.readUTF();
+                        in.readLong();
+                        readDependencies(in, dependencyNames);
+                        in.readInt();
+                        return decoder.decode(checksum, in);
+                    });
+                }
+            }
+        }
+        return null;
+    }
+
+    private DataInputStream streamAt(long position) {
+        return new DataInputStream(new BufferedInputStream(new ChannelInputStream(channel, position), 512));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Writes a new cache file, replacing any existing file. The existing
+     * file may still be open, and the results may be read from it.
+     *
+     * @param path         The path of the file
+     * @param generation   The generation of the new file
+     * @param header       The header, which is returned as is by {@link #getHeader()}
+     * @param dependencies The checksum of each dependency by name, in the order of their index
+     * @param results      The results to store, by path id
+     * @param encoder      Writes the payload of a result
+     */
+    static void write(Path path, long generation, byte[] header, Map<String, Long> dependencies,
+                      Map<String, AnalysisResult> results, PayloadEncoder encoder) throws IOException {
+        int slotCount = MIN_SLOTS;
+        while (slotCount < results.size() * 2) {
+            slotCount <<= 1;
+        }
+
+        final ByteArrayOutputStream start = new ByteArrayOutputStream();
+        final DataOutputStream startOut = new DataOutputStream(start);
+        startOut.writeInt(MAGIC);
+        startOut.writeLong(generation);
+        startOut.writeInt(header.length);
+        startOut.write(header);
+        startOut.writeInt(dependencies.size());
+        for (final Map.Entry<String, Long> dependency : dependencies.entrySet()) {
+            startOut.writeUTF(dependency.getKey());
+            startOut.writeLong(dependency.getValue());
+        }
+        startOut.writeInt(slotCount);
+        final long dataStart = start.size() + (long) slotCount * SLOT_SIZE;
+
+        final Path tempFile = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                // the entries are written first, the index is only known after that
+                final Map<String, Integer> dependencyIndices = new HashMap<>();
+                for (final String dependency : dependencies.keySet()) {
+                    dependencyIndices.put(dependency, dependencyIndices.size());
+                }
+                final long[] slotTable = new long[slotCount * 2];
+                channel.position(dataStart);
+                final DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                final ByteArrayOutputStream entry = new ByteArrayOutputStream();
+                final DataOutputStream entryOut = new DataOutputStream(entry);
+                final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+                long position = dataStart;
+                for (final Map.Entry<String, AnalysisResult> result : results.entrySet()) {
+                    final long hash = hash(result.getKey());
+                    int slot = (int) hash & slotCount - 1;
+                    while (slotTable[slot * 2 + 1] != 0) {
+                        slot = (slot + 1) & slotCount - 1;
+                    }
+                    slotTable[slot * 2] = hash;
+                    slotTable[slot * 2 + 1] = position;
+
+                    payload.reset();
+                    encoder.encode(result.getValue(), new DataOutputStream(payload));
+
+                    entry.reset();
+                    entryOut.writeUTF(result.getKey());
+                    entryOut.writeLong(result.getValue().getFileChecksum());
+                    writeDependencies(entryOut, result.getValue().getClasspathDependencies(), dependencyIndices);
+                    entryOut.writeInt(payload.size());
+                    payload.writeTo(entryOut);
+                    entry.writeTo(dataOut);
+                    position += entry.size();
+                }
+                dataOut.flush();
+
+                channel.position(0);
+                final DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                start.writeTo(indexOut);
+                for (long value : slotTable) {
+                    indexOut.writeLong(value);
+                }
+                indexOut.flush();
+                channel.force(true);
+            }
+            replace(tempFile, path);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    private static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Writes the dependencies of a result, as an int count followed by
+     * the int index of each dependency. A count of -1 means that the
+     * dependencies are unknown.
+     */
+    static void writeDependencies(DataOutputStream out, @Nullable Set<String> resultDependencies,
+                                  Map<String, Integer> dependencyIndices) throws IOException {
+        if (resultDependencies == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(resultDependencies.size());
+            for (final String dependency : resultDependencies) {
+                out.writeInt(dependencyIndices.get(dependency));
+            }
+        }
+    }
+
+    /**
+     * Reads the dependencies written by {@link #writeDependencies(DataOutputStream, Set, Map)}.
+     *
+     * @param dependencyNames The name of each dependency by index
+     */
+    static @Nullable Set<String> readDependencies(DataInputStream in, List<String> dependencyNames) throws IOException {
+        final int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        final Set<String> resultDependencies = new HashSet<>(count);
+        for (int i = 0; i < count; i++) {
+            final int index = in.readInt();
+            if (index < 0 || index >= dependencyNames.size()) {
+                throw new EOFException("Invalid dependency index " + index);
+            }
+            resultDependencies.add(dependencyNames.get(index));
+        }
+        return resultDependencies;
+    }
+
+    /** FNV-1a hash of the chars of the string. */
+    private static long hash(String pathId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < pathId.length(); i++) {
+            hash ^= pathId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /** Writes the payload of a result. */
+    @FunctionalInterface
+    interface PayloadEncoder {
+        void encode(AnalysisResult result, DataOutputStream out) throws IOException;
+    }
+
+    /** Reads the payload of a result. */
+    @FunctionalInterface
+    interface PayloadDecoder {
+        AnalysisResult decode(long checksum, DataInputStream in) throws IOException;
+    }
+
+    /**
+     * An input stream reading a channel from a position, without changing
+     * the position of the channel. Several of these can be used concurrently.
+     */
+    private static final class ChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+
+        ChannelInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+    }
+}
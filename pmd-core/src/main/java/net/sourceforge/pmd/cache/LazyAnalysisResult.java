@@ -0,0 +1,72 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Set;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.RuleViolation;
+
+/**
+ * An analysis result loaded from a cache file, whose violations are only
+ * decoded the first time they are requested. Its auxclasspath dependencies
+ * are known right away.
+ */
+final class LazyAnalysisResult extends AnalysisResult {
+
+    private final ResultLoader loader;
+    private AnalysisResult loaded;
+
+    LazyAnalysisResult(final long fileChecksum, final @Nullable Set<String> classpathDependencies,
+                       final ResultLoader loader) {
+        super(fileChecksum, null);
+        setClasspathDependencies(classpathDependencies);
+        this.loader = loader;
+    }
+
+    private synchronized AnalysisResult getLoaded() {
+        if (loaded == null) {
+            try {
+                loaded = loader.load();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read cached result", e);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns the decoded result. If it was not decoded yet, it is decoded
+     * again the next time it is requested, instead of being kept in memory.
+     */
+    synchronized AnalysisResult loadTransient() throws IOException {
+        return loaded != null ? loaded : loader.load();
+    }
+
+    @Override
+    public List<RuleViolation> getViolations() {
+        return getLoaded().getViolations();
+    }
+
+    @Override
+    public void addViolations(final List<RuleViolation> violations) {
+        getLoaded().addViolations(violations);
+    }
+
+    @Override
+    public void addViolation(final RuleViolation ruleViolation) {
+        getLoaded().addViolation(ruleViolation);
+    }
+
+    /** Decodes the violations of a cached result. */
+    @FunctionalInterface
+    interface ResultLoader {
+        AnalysisResult load() throws IOException;
+    }
+}
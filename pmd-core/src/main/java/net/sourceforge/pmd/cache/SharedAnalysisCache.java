@@ -0,0 +1,226 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sourceforge.pmd.Report.ProcessingError;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+
+/**
+ * An analysis cache backed by a content-addressed {@link CacheStore}.
+ * Results are not stored by file name, but by a digest of the file contents,
+ * its language version, the rulesets that apply to it, and the classpaths.
+ * This lets analyses of different checkouts of the same sources, eg on
+ * another branch or CI agent, reuse each other's results.
+ *
+ * <p>Since the key of an entry covers everything it depends on, entries
+ * are never invalidated, they are only evicted by the store.
+ *
+ * @deprecated This is internal API, will be hidden with 7.0.0
+ */
+@Deprecated
+@InternalApi
+public class SharedAnalysisCache extends AbstractAnalysisCache {
+
+    private static final int ENTRY_MAGIC = 0x504D4453; // "PMDS"
+
+    private final CacheStore store;
+    /** Key of each analysed file in the store. */
+    private final ConcurrentMap<FileId, String> keys = new ConcurrentHashMap<>();
+    private RuleSet[] ruleSets = new RuleSet[0];
+
+    /**
+     * Creates a new cache backed by the given store.
+     *
+     * @param store The store of the analysis results
+     */
+    public SharedAnalysisCache(final CacheStore store) {
+        super();
+        this.store = store;
+    }
+
+    @Override
+    public void checkValidity(RuleSets ruleSets, ClassLoader auxclassPathClassLoader, Collection<? extends TextFile> files) {
+        // nothing is loaded yet, this computes the checksums used in the keys
+        super.checkValidity(ruleSets, auxclassPathClassLoader, files);
+        this.ruleSets = ruleSets.getAllRuleSets();
+    }
+
+    @Override
+    public boolean isUpToDate(final TextDocument document) {
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "up-to-date check")) {
+            final FileId fileId = document.getFileId();
+            final String key = computeKey(document);
+            keys.put(fileId, key);
+
+            final AnalysisResult cachedResult = load(key, document);
+            if (cachedResult != null) {
+                LOG.trace("Shared analysis cache HIT");
+                fileResultsCache.put(fileId, cachedResult);
+                updatedResultsCache.put(fileId, cachedResult);
+                return true;
+            }
+
+            LOG.trace("Shared analysis cache MISS");
+            updatedResultsCache.put(fileId, new AnalysisResult(document.getCheckSum(), new ArrayList<>()));
+            return false;
+        }
+    }
+
+    @Override
+    public List<RuleViolation> getCachedViolations(final TextDocument sourceFile) {
+        // the key includes the rules, so all cached violations are still valid
+        final AnalysisResult analysisResult = fileResultsCache.get(sourceFile.getFileId());
+        return analysisResult == null ? Collections.emptyList() : analysisResult.getViolations();
+    }
+
+    @Override
+    public FileAnalysisListener startFileAnalysis(TextDocument file) {
+        // the key already covers the whole auxclasspath, so the classpath
+        // dependencies of the file are neither recorded nor fingerprinted
+        final FileId fileName = file.getFileId();
+
+        return new FileAnalysisListener() {
+            @Override
+            public void onRuleViolation(RuleViolation violation) {
+                updatedResultsCache.get(fileName).addViolation(violation);
+            }
+
+            @Override
+            public void onError(ProcessingError error) {
+                analysisFailed(file);
+            }
+        };
+    }
+
+    private AnalysisResult load(final String key, final TextDocument document) {
+        try {
+            final byte[] entry = store.load(key);
+            if (entry == null) {
+                return null;
+            }
+            final DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(entry));
+            if (inputStream.readInt() != ENTRY_MAGIC) {
+                LOG.debug("Ignoring malformed shared analysis cache entry {}", key);
+                return null;
+            }
+            final int countViolations = inputStream.readInt();
+            final List<RuleViolation> violations = new ArrayList<>(countViolations);
+            for (int i = 0; i < countViolations; i++) {
+                violations.add(CachedRuleViolation.loadFromStream(inputStream, document.getFileId(), ruleMapper));
+            }
+            return new AnalysisResult(document.getCheckSum(), violations);
+        } catch (final EOFException e) {
+            LOG.debug("Ignoring truncated shared analysis cache entry {}", key);
+            return null;
+        } catch (final IOException e) {
+            LOG.warn("Could not read shared analysis cache entry {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Computes the key of the given file in the store. This is a SHA-256 digest
+     * of the file contents and of everything else its analysis depends on.
+     * The path of the file is not part of it, only whether each ruleset
+     * applies to it.
+     */
+    private String computeKey(final TextDocument document) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by the JVM specification", e);
+        }
+
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try (DataOutputStream outputStream = new DataOutputStream(header)) {
+            final LanguageVersion languageVersion = document.getLanguageVersion();
+            outputStream.writeUTF(pmdVersion);
+            outputStream.writeUTF(languageVersion.getLanguage().getId());
+            outputStream.writeUTF(languageVersion.getVersion());
+            outputStream.writeLong(rulesetChecksum);
+            outputStream.writeLong(auxClassPathChecksum);
+            outputStream.writeLong(executionClassPathChecksum);
+            outputStream.writeInt(ruleSets.length);
+            for (final RuleSet ruleSet : ruleSets) {
+                outputStream.writeBoolean(ruleSet.applies(document.getFileId()));
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException("Cannot happen with an in-memory stream", e);
+        }
+        digest.update(header.toByteArray());
+        digest.update(document.getText().toString().getBytes(StandardCharsets.UTF_8));
+
+        final StringBuilder key = new StringBuilder(64);
+        for (final byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    @Override
+    public void persist() {
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "persist")) {
+            int stored = 0;
+            final ByteArrayOutputStream entry = new ByteArrayOutputStream();
+            for (final Map.Entry<FileId, AnalysisResult> resultEntry : updatedResultsCache.entrySet()) {
+                final FileId fileId = resultEntry.getKey();
+                final AnalysisResult result = resultEntry.getValue();
+                if (result == fileResultsCache.get(fileId)) { // NOPMD CompareObjectsWithEquals
+                    continue; // loaded from the store
+                }
+
+                entry.reset();
+                final DataOutputStream outputStream = new DataOutputStream(entry);
+                outputStream.writeInt(ENTRY_MAGIC);
+                outputStream.writeInt(result.getViolations().size());
+                for (final RuleViolation rv : result.getViolations()) {
+                    CachedRuleViolation.storeToStream(outputStream, rv);
+                }
+                outputStream.flush();
+                store.store(keys.get(fileId), entry.toByteArray());
+                stored++;
+            }
+            store.flush();
+            LOG.debug("Stored {} results in the shared analysis cache", stored);
+        } catch (final IOException e) {
+            LOG.error("Could not persist shared analysis cache: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    protected boolean cacheExists() {
+        // results are looked up by key, there is nothing to validate
+        return false;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache.internal;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Records the auxclasspath resources used while analysing a file. When
+ * the auxclasspath changes, the analysis cache then only invalidates the
+ * files that depend on a resource that changed.
+ *
+ * <p>The analysis cache starts a recording on the thread that analyses
+ * a file. A language implementation that reads the auxclasspath calls
+ * {@link #setTracked()} on the {@linkplain #current() current recording},
+ * then {@link #record(String)} for every resource it looks up, whether
+ * it was found or not. Files whose recording is not tracked are assumed
+ * to depend on the whole auxclasspath.
+ *
+ * <p>A resource may depend on other resources, eg a class on the classes
+ * its signatures refer to. Those may not be looked up again by every file
+ * that uses the resource, and may be looked up by another thread while
+ * the file is analysed. They are added with the function given to
+ * {@link #setTransitiveDependencies(Function)} when the resources are
+ * read, after the analysis of the file.
+ */
+public final class ClasspathDependencies {
+
+    private static final ThreadLocal<ClasspathDependencies> CURRENT = new ThreadLocal<>();
+
+    private final Set<String> resources = ConcurrentHashMap.newKeySet();
+    private volatile boolean tracked;
+    private volatile Function<String, ? extends Collection<String>> transitiveDependencies;
+
+    private ClasspathDependencies() {
+        // use startRecording
+    }
+
+    /**
+     * Returns the recording of the file analysed by the current thread,
+     * or null if there is none.
+     */
+    public static @Nullable ClasspathDependencies current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Starts a new recording on the current thread.
+     */
+    public static ClasspathDependencies startRecording() {
+        ClasspathDependencies recording = new ClasspathDependencies();
+        CURRENT.set(recording);
+        return recording;
+    }
+
+    /**
+     * Stops this recording, if it is the recording of the current thread.
+     */
+    public void stopRecording() {
+        if (CURRENT.get() == this) { // NOPMD CompareObjectsWithEquals
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Declares that the resources used by the file are recorded with
+     * {@link #record(String)}.
+     */
+    public void setTracked() {
+        tracked = true;
+    }
+
+    public boolean isTracked() {
+        return tracked;
+    }
+
+    /**
+     * Records that the analysis looked up the given resource.
+     *
+     * @param resourcePath A resource path, eg {@code java/lang/String.class}
+     *
+     * @return False if the resource was already recorded
+     */
+    public boolean record(String resourcePath) {
+        return resources.add(resourcePath);
+    }
+
+    /**
+     * Sets the function that returns the resources a resource depends on.
+     * These are added to the resources of the file when they are read.
+     */
+    public void setTransitiveDependencies(Function<String, ? extends Collection<String>> transitiveDependencies) {
+        this.transitiveDependencies = transitiveDependencies;
+    }
+
+    /**
+     * Returns the recorded resource paths, and the resources they depend on.
+     */
+    public Set<String> getResources() {
+        final Function<String, ? extends Collection<String>> dependenciesOf = transitiveDependencies;
+        if (dependenciesOf == null) {
+            return Collections.unmodifiableSet(resources);
+        }
+        final Set<String> result = new HashSet<>(resources);
+        final Deque<String> toExpand = new ArrayDeque<>(resources);
+        while (!toExpand.isEmpty()) {
+            for (String dependency : dependenciesOf.apply(toExpand.pop())) {
+                if (result.add(dependency)) {
+                    toExpand.add(dependency);
+                }
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+}
@@ -17,6 +17,7 @@ import java.util.Objects;
 import java.util.StringTokenizer;
 
 import org.apache.commons.lang3.StringUtils;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +34,10 @@ public class ClasspathClassLoader extends URLClassLoader {
 
     private static final Logger LOG = LoggerFactory.getLogger(ClasspathClassLoader.class);
 
+    /** Index of the class files, built on the first lookup. */
+    private volatile ClasspathIndex index;
+    private boolean closed;
+
     static {
         registerAsParallelCapable();
     }
@@ -114,6 +119,11 @@ public class ClasspathClassLoader extends URLClassLoader {
         // pmd-java's type resolution to fetch classes, instead of loadClass.
         Objects.requireNonNull(name);
 
+        ClasspathIndex idx = ClasspathIndex.isClassFile(name) ? getIndex() : null;
+        if (idx != null) {
+            return getClassFile(idx, name);
+        }
+
         URL url = findResource(name);
         if (url == null) {
             // note this will actually call back into this.findResource, but
@@ -124,6 +134,50 @@ public class ClasspathClassLoader extends URLClassLoader {
         return url;
     }
 
+    /**
+     * Finds a class file with the index, instead of searching all the
+     * jars in order, twice if it is not on this classpath. Class files
+     * that are not indexed, even in a package of the JDK, are looked up
+     * by the parent, which may define more classes than the JDK.
+     */
+    private URL getClassFile(ClasspathIndex idx, String name) {
+        URL url = idx.findClassFile(name);
+        if (url == null && idx.isInJdkPackage(name)) {
+            url = idx.findJdkClassFile(name);
+        }
+        if (url != null) {
+            return url;
+        }
+        ClassLoader parent = getParent();
+        return parent == null ? super.getResource(name) : parent.getResource(name);
+    }
+
+    private @Nullable ClasspathIndex getIndex() {
+        ClasspathIndex idx = index;
+        if (idx == null) {
+            synchronized (this) {
+                idx = index;
+                if (idx == null && !closed) {
+                    idx = ClasspathIndex.build(getURLs());
+                    index = idx;
+                }
+            }
+        }
+        return idx;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            if (index != null) {
+                index.close();
+                index = null;
+            }
+        }
+        super.close();
+    }
+
     @Override
     protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
         synchronized (getClassLoadingLock(name)) {
@@ -0,0 +1,338 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.internal.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An index of the class files of a classpath, and of the JDK when it
+ * runs on a modular image, by package. A lookup only checks the jars
+ * and directories that contain the package of the class, so that looking
+ * up a class that doesn't exist is as fast as finding one. This matters
+ * because the symbol resolver tries out many names when it disambiguates
+ * the names of the analysed sources.
+ *
+ * <p>The URLs are the same that a {@link java.net.URLClassLoader} would
+ * return, including for the jars referenced by the {@code Class-Path}
+ * attribute of the manifests, and for multi-release jars.
+ */
+final class ClasspathIndex implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClasspathIndex.class);
+
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String VERSIONS_PREFIX = "META-INF/versions/";
+    private static final int RUNTIME_VERSION = runtimeVersion();
+
+    /** Containers of each package, in classpath order. */
+    private final Map<String, List<Container>> containersByPackage = new HashMap<>();
+    private final List<JarContainer> jars = new ArrayList<>();
+
+    /** Modules of each package of the JDK. Empty before Java 9. */
+    private final Map<String, List<String>> jdkModulesByPackage = new HashMap<>();
+    private @Nullable FileSystem jrt;
+
+    private ClasspathIndex() {
+        // use build
+    }
+
+    /**
+     * Indexes the given classpath entries. Entries that cannot be read
+     * are ignored, like with a URLClassLoader.
+     */
+    static ClasspathIndex build(URL[] urls) {
+        ClasspathIndex index = new ClasspathIndex();
+        Deque<URL> toIndex = new ArrayDeque<>(Arrays.asList(urls));
+        Set<URL> seen = new HashSet<>();
+        while (!toIndex.isEmpty()) {
+            URL url = toIndex.pop();
+            if (seen.add(url)) {
+                // jars referenced by a manifest come right after the jar
+                List<URL> referenced = index.indexEntry(url);
+                for (int i = referenced.size() - 1; i >= 0; i--) {
+                    toIndex.push(referenced.get(i));
+                }
+            }
+        }
+        index.indexJdk();
+        return index;
+    }
+
+    /**
+     * Returns the URL of the given class file, if it is on the indexed
+     * classpath, otherwise null.
+     *
+     * @param resourcePath A class file name, eg {@code java/lang/String.class}
+     */
+    @Nullable URL findClassFile(String resourcePath) {
+        List<Container> containers = containersByPackage.get(packageOf(resourcePath));
+        if (containers == null) {
+            return null;
+        }
+        for (Container container : containers) {
+            URL url = container.find(resourcePath);
+            if (url != null) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the class file is in a package of the JDK. The JDK
+     * can then be queried with {@link #findJdkClassFile(String)}, instead
+     * of the parent class loader.
+     */
+    boolean isInJdkPackage(String resourcePath) {
+        return jdkModulesByPackage.containsKey(packageOf(resourcePath));
+    }
+
+    /**
+     * Returns the URL of a class file in a {@linkplain #isInJdkPackage(String) package of the JDK},
+     * or null if it doesn't exist.
+     */
+    @Nullable URL findJdkClassFile(String resourcePath) {
+        assert jrt != null : "No JDK package";
+        for (String module : jdkModulesByPackage.getOrDefault(packageOf(resourcePath), Collections.emptyList())) {
+            if (Files.isRegularFile(jrt.getPath("/modules", module, resourcePath))) {
+                return toUrl("jrt:/" + module + "/" + resourcePath);
+            }
+        }
+        return null;
+    }
+
+    static boolean isClassFile(String resourcePath) {
+        return resourcePath.endsWith(CLASS_SUFFIX);
+    }
+
+    private static String packageOf(String resourcePath) {
+        int lastSlash = resourcePath.lastIndexOf('/');
+        return lastSlash < 0 ? "" : resourcePath.substring(0, lastSlash);
+    }
+
+    private void addPackage(String pkg, Container container) {
+        List<Container> containers = containersByPackage.computeIfAbsent(pkg, k -> new ArrayList<>(1));
+        // containers are indexed one after the other, so if this
+        // one has the package already, it is the last one
+        if (containers.isEmpty() || containers.get(containers.size() - 1) != container) { // NOPMD CompareObjectsWithEquals
+            containers.add(container);
+        }
+    }
+
+    /** Indexes a classpath entry, returns the jars its manifest references. */
+    private List<URL> indexEntry(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            LOG.debug("Not indexing classpath entry {}", url);
+            return Collections.emptyList();
+        }
+        try {
+            Path path = Paths.get(url.toURI());
+            if (Files.isDirectory(path)) {
+                indexDirectory(path);
+            } else if (Files.isRegularFile(path)) {
+                return indexJar(url, path);
+            }
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            LOG.debug("Cannot index classpath entry {}", url, e);
+        }
+        return Collections.emptyList();
+    }
+
+    private void indexDirectory(Path dir) throws IOException {
+        DirContainer container = new DirContainer(dir);
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.filter(it -> isClassFile(it.getFileName().toString()) && Files.isRegularFile(it))
+                 .forEach(it -> {
+                     Path pkg = dir.relativize(it).getParent();
+                     addPackage(pkg == null ? "" : pkg.toString().replace(pkg.getFileSystem().getSeparator(), "/"), container);
+                 });
+        }
+    }
+
+    private List<URL> indexJar(URL url, Path path) throws IOException {
+        @SuppressWarnings("PMD.CloseResource") // closed with the index
+        JarFile jarFile = new JarFile(path.toFile(), false);
+        List<URL> referenced = new ArrayList<>();
+        boolean multiRelease = false;
+        Manifest manifest;
+        try {
+            manifest = jarFile.getManifest();
+        } catch (IOException e) {
+            jarFile.close();
+            throw e;
+        }
+        if (manifest != null) {
+            Attributes attributes = manifest.getMainAttributes();
+            multiRelease = "true".equalsIgnoreCase(attributes.getValue("Multi-Release"));
+            String classPath = attributes.getValue(Attributes.Name.CLASS_PATH);
+            if (classPath != null) {
+                for (String entry : classPath.trim().split("\\s+")) {
+                    try {
+                        referenced.add(new URL(url, entry));
+                    } catch (MalformedURLException e) {
+                        LOG.debug("Invalid Class-Path entry {} in {}", entry, url, e);
+                    }
+                }
+            }
+        }
+
+        JarContainer container = new JarContainer(jarFile, "jar:" + url + "!/", multiRelease && RUNTIME_VERSION >= 9);
+        jars.add(container);
+        jarFile.stream().map(ZipEntry::getName).forEach(name -> {
+            if (!isClassFile(name)) {
+                return;
+            }
+            addPackage(packageOf(name), container);
+            if (container.multiRelease && name.startsWith(VERSIONS_PREFIX)) {
+                // META-INF/versions/11/org/Foo.class is also org/Foo.class
+                addPackage(packageOf(name.substring(name.indexOf('/', VERSIONS_PREFIX.length()) + 1)), container);
+            }
+        });
+        return referenced;
+    }
+
+    private void indexJdk() {
+        if (RUNTIME_VERSION < 9) {
+            // no modular image, the JDK is in rt.jar
+            return;
+        }
+        try {
+            jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+            // /packages/java.lang/java.base
+            try (DirectoryStream<Path> packages = Files.newDirectoryStream(jrt.getPath("/packages"))) {
+                for (Path pkg : packages) {
+                    List<String> modules = new ArrayList<>(1);
+                    try (DirectoryStream<Path> pkgModules = Files.newDirectoryStream(pkg)) {
+                        for (Path module : pkgModules) {
+                            modules.add(module.getFileName().toString());
+                        }
+                    }
+                    jdkModulesByPackage.put(pkg.getFileName().toString().replace('.', '/'), modules);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Cannot index the JDK image", e);
+            jdkModulesByPackage.clear();
+        }
+    }
+
+    private static int runtimeVersion() {
+        String version = System.getProperty("java.specification.version");
+        try {
+            return version.startsWith("1.") ? Integer.parseInt(version.substring(2)) : Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            return 8;
+        }
+    }
+
+    private static @Nullable URL toUrl(String url) {
+        try {
+            return new URL(url);
+        } catch (MalformedURLException e) {
+            LOG.debug("Invalid URL {}", url, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        Exception exception = IOUtil.closeAll(jars);
+        if (exception != null) {
+            throw new IOException(exception);
+        }
+    }
+
+    private abstract static class Container {
+
+        abstract @Nullable URL find(String resourcePath);
+    }
+
+    private static final class JarContainer extends Container implements Closeable {
+
+        private final JarFile jarFile;
+        private final String baseUrl;
+        private final boolean multiRelease;
+
+        JarContainer(JarFile jarFile, String baseUrl, boolean multiRelease) {
+            this.jarFile = jarFile;
+            this.baseUrl = baseUrl;
+            this.multiRelease = multiRelease;
+        }
+
+        @Override
+        @Nullable URL find(String resourcePath) {
+            if (multiRelease) {
+                // like URLClassLoader, use the entry of the most recent version
+                for (int version = RUNTIME_VERSION; version >= 9; version--) {
+                    String versioned = VERSIONS_PREFIX + version + "/" + resourcePath;
+                    if (jarFile.getEntry(versioned) != null) {
+                        return toUrl(baseUrl + versioned);
+                    }
+                }
+            }
+            if (jarFile.getEntry(resourcePath) != null) {
+                return toUrl(baseUrl + resourcePath);
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            jarFile.close();
+        }
+    }
+
+    private static final class DirContainer extends Container {
+
+        private final Path dir;
+
+        DirContainer(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        @Nullable URL find(String resourcePath) {
+            Path file = dir.resolve(resourcePath);
+            if (Files.isRegularFile(file)) {
+                try {
+                    return file.toUri().toURL();
+                } catch (MalformedURLException e) {
+                    return null;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang;
+
+/**
+ * Strategy used to distribute files over the analysis threads when
+ * the analysis is multi-threaded. This has no effect when the thread
+ * count is zero.
+ *
+ * @see net.sourceforge.pmd.PMDConfiguration#setFileScheduling(FileScheduling)
+ * @since 7.0.0
+ */
+public enum FileScheduling {
+    /**
+     * Files are submitted in the order they were collected to a pool
+     * with a fixed number of threads. This is the default.
+     */
+    FIXED,
+
+    /**
+     * Files are submitted largest first to a work-stealing pool. When
+     * a few large files are at the end of the file list, this keeps
+     * them from running alone at the end of the analysis while the other
+     * threads are idle.
+     */
+    WORK_STEALING,
+
+    /**
+     * Files are read ahead by a dedicated thread, and handed over to the
+     * analysis threads through a bounded queue. This overlaps reading
+     * files with parsing and analysing them, which helps when reading is
+     * slow, eg on a network file system or with a cold page cache.
+     */
+    PIPELINED
+}
@@ -64,6 +64,7 @@ public interface LanguageProcessor extends AutoCloseable {
         private final List<TextFile> files;
         private final GlobalAnalysisListener listener;
         private final int threadCount;
+        private final FileScheduling fileScheduling;
         private final AnalysisCache analysisCache;
         private final MessageReporter messageReporter;
         private final LanguageProcessorRegistry lpRegistry;
@@ -81,10 +82,27 @@ public interface LanguageProcessor extends AutoCloseable {
                             AnalysisCache analysisCache,
                             MessageReporter messageReporter,
                             LanguageProcessorRegistry lpRegistry) {
+            this(rulesets, files, listener, threadCount, FileScheduling.FIXED, analysisCache, messageReporter, lpRegistry);
+        }
+
+        /**
+         * Create a new task. This constructor is internal and will be
+         * called by PMD.
+         */
+        @InternalApi
+        public AnalysisTask(RuleSets rulesets,
+                            List<TextFile> files,
+                            GlobalAnalysisListener listener,
+                            int threadCount,
+                            FileScheduling fileScheduling,
+                            AnalysisCache analysisCache,
+                            MessageReporter messageReporter,
+                            LanguageProcessorRegistry lpRegistry) {
             this.rulesets = rulesets;
             this.files = files;
             this.listener = listener;
             this.threadCount = threadCount;
+            this.fileScheduling = fileScheduling;
             this.analysisCache = analysisCache;
             this.messageReporter = messageReporter;
             this.lpRegistry = lpRegistry;
@@ -106,6 +124,14 @@ public interface LanguageProcessor extends AutoCloseable {
             return threadCount;
         }
 
+        /**
+         * Returns the strategy used to distribute files over threads.
+         * This is only relevant if {@link #getThreadCount()} is positive.
+         */
+        public FileScheduling getFileScheduling() {
+            return fileScheduling;
+        }
+
         public AnalysisCache getAnalysisCache() {
             return analysisCache;
         }
@@ -127,6 +153,7 @@ public interface LanguageProcessor extends AutoCloseable {
                 newFiles,
                 listener,
                 threadCount,
+                fileScheduling,
                 analysisCache,
                 messageReporter,
                 lpRegistry
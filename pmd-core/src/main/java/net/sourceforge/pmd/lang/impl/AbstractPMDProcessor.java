@@ -34,14 +34,23 @@ abstract class AbstractPMDProcessor implements AutoCloseable {
 
     /**
      * Returns a new file processor. The strategy used for threading is
-     * determined by {@link AnalysisTask#getThreadCount()}.
+     * determined by {@link AnalysisTask#getThreadCount()} and
+     * {@link AnalysisTask#getFileScheduling()}.
      * <p>Note: Only {@code 0} threads disables multi-thread processing. See the CLI documentation
      * for parameter {@code --threads}.</p>
      */
     public static AbstractPMDProcessor newFileProcessor(AnalysisTask analysisTask) {
-        return analysisTask.getThreadCount() > 0
-               ? new MultiThreadProcessor(analysisTask)
-               : new MonoThreadProcessor(analysisTask);
+        if (analysisTask.getThreadCount() <= 0) {
+            return new MonoThreadProcessor(analysisTask);
+        }
+        switch (analysisTask.getFileScheduling()) {
+        case WORK_STEALING:
+            return new WorkStealingProcessor(analysisTask);
+        case PIPELINED:
+            return new PipelinedProcessor(analysisTask);
+        default:
+            return new MultiThreadProcessor(analysisTask);
+        }
     }
 
 }
@@ -4,7 +4,6 @@
 
 package net.sourceforge.pmd.lang.impl;
 
-import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
 import net.sourceforge.pmd.lang.document.TextFile;
 
@@ -21,7 +20,7 @@ final class MonoThreadProcessor extends AbstractPMDProcessor {
     @SuppressWarnings("PMD.CloseResource") // closed by the PMDRunnable
     public void processFiles() {
         for (TextFile file : task.getFiles()) {
-            new MonothreadRunnable(file, task).run();
+            new PmdRunnable(file, task).run();
         }
     }
 
@@ -29,20 +28,4 @@ final class MonoThreadProcessor extends AbstractPMDProcessor {
     public void close() {
         // nothing to do
     }
-
-    static final class MonothreadRunnable extends PmdRunnable {
-
-        private final RuleSets ruleSets;
-
-        MonothreadRunnable(TextFile textFile, AnalysisTask task) {
-            super(textFile, task);
-            this.ruleSets = task.getRulesets();
-        }
-
-
-        @Override
-        protected RuleSets getRulesets() {
-            return ruleSets;
-        }
-    }
 }
@@ -12,10 +12,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
-import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
 import net.sourceforge.pmd.lang.document.TextFile;
-import net.sourceforge.pmd.util.log.MessageReporter;
 
 
 /**
@@ -36,24 +34,8 @@ final class MultiThreadProcessor extends AbstractPMDProcessor {
     @Override
     @SuppressWarnings("PMD.CloseResource") // closed by the PMDRunnable
     public void processFiles() {
-        // The thread-local is not static, but analysis-global
-        // This means we don't have to reset it manually, every analysis is isolated.
-        // The initial value makes a copy of the rulesets
-        final ThreadLocal<RuleSets> ruleSetCopy = ThreadLocal.withInitial(() -> {
-            RuleSets copy = new RuleSets(task.getRulesets());
-            // use a noop reporter because the copy should only contain rules that
-            // initialized properly
-            copy.initializeRules(task.getLpRegistry(), MessageReporter.quiet());
-            return copy;
-        });
-
         for (final TextFile textFile : task.getFiles()) {
-            futureList.add(executor.submit(new PmdRunnable(textFile, task) {
-                @Override
-                protected RuleSets getRulesets() {
-                    return ruleSetCopy.get();
-                }
-            }));
+            futureList.add(executor.submit(new PmdRunnable(textFile, task)));
         }
     }
 
@@ -0,0 +1,206 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.lang.FileScheduling;
+import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+
+/**
+ * Multi-threaded processor where a reader thread reads files ahead of
+ * the analysis threads. The contents of each file are read, normalized
+ * and checksummed by the reader, then handed over through a bounded
+ * queue. The analysis threads only parse and apply the rules.
+ *
+ * <p>With benchmarking enabled, the time the reader spends reading and
+ * waiting for the queue to have room ("hand-off"), and the time the analysis threads
+ * spend waiting for input, are reported in the {@link TimedOperationCategory#FILE_PIPELINE}
+ * category. The "queue depth" label records the number of files waiting
+ * in the queue each time the reader hands over a file: its counter is the
+ * sum of the depths, divide it by its number of calls to get the average depth.
+ *
+ * @see FileScheduling#PIPELINED
+ */
+final class PipelinedProcessor extends AbstractPMDProcessor {
+
+    /** Marks the end of the input, one is queued for each analysis thread. */
+    private static final PrefetchedFile END = new PrefetchedFile(null, null, null);
+
+    private final BlockingQueue<PrefetchedFile> queue;
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicReference<Throwable> firstError = new AtomicReference<>();
+
+    PipelinedProcessor(final AnalysisTask task) {
+        super(task);
+        // enough for each thread to have a file waiting
+        queue = new ArrayBlockingQueue<>(2 * task.getThreadCount());
+    }
+
+    @Override
+    public void processFiles() {
+        PmdThreadFactory threadFactory = new PmdThreadFactory();
+        Thread reader = threadFactory.newThread(this::readFiles);
+        threads.add(reader);
+        reader.start();
+
+        for (int i = 0; i < task.getThreadCount(); i++) {
+            Thread worker = threadFactory.newThread(this::analyseFiles);
+            threads.add(worker);
+            worker.start();
+        }
+    }
+
+    private void readFiles() {
+        TimeTracker.initThread();
+        try {
+            for (TextFile textFile : task.getFiles()) {
+                PrefetchedFile prefetched = read(textFile);
+                TimeTracker.count(TimedOperationCategory.FILE_PIPELINE, "queue depth", queue.size());
+                try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.FILE_PIPELINE, "hand-off")) {
+                    queue.put(prefetched);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) { // NOPMD AvoidCatchingThrowable: reported when closing
+            firstError.compareAndSet(null, e);
+        } finally {
+            endInput();
+            TimeTracker.finishThread();
+        }
+    }
+
+    @SuppressWarnings("PMD.CloseResource") // closed by the PmdRunnable
+    private PrefetchedFile read(TextFile textFile) {
+        if (!task.getRulesets().applies(textFile)) {
+            // the PmdRunnable skips it without reading it
+            return new PrefetchedFile(textFile, null, null);
+        }
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.FILE_PIPELINE, "read")) {
+            return new PrefetchedFile(textFile, TextDocument.create(textFile), null);
+        } catch (IOException e) {
+            // reported by the PmdRunnable, like when it reads the file itself
+            return new PrefetchedFile(textFile, null, e);
+        }
+    }
+
+    /**
+     * Queues an end marker for each analysis thread. This must succeed even
+     * if the reader was interrupted, otherwise the analysis threads would
+     * wait for input forever. In that case, the files that are still queued
+     * are dropped to make room for the markers.
+     */
+    private void endInput() {
+        boolean interrupted = Thread.interrupted();
+        try {
+            for (int i = 0; i < task.getThreadCount() && !interrupted; i++) {
+                queue.put(END);
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (interrupted) {
+            List<PrefetchedFile> dropped = new ArrayList<>();
+            queue.drainTo(dropped);
+            // only this thread adds to the queue, which has room for all the markers
+            for (int i = 0; i < task.getThreadCount(); i++) {
+                queue.offer(END);
+            }
+            for (PrefetchedFile file : dropped) {
+                file.close();
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void analyseFiles() {
+        try {
+            while (true) {
+                PrefetchedFile prefetched;
+                try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.FILE_PIPELINE, "wait for input")) {
+                    prefetched = queue.take();
+                }
+                if (prefetched == END) { // NOPMD CompareObjectsWithEquals
+                    return;
+                }
+                try {
+                    new PmdRunnable(prefetched.textFile, task, prefetched::open).run();
+                } catch (Throwable e) { // NOPMD AvoidCatchingThrowable: reported when closing
+                    firstError.compareAndSet(null, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            Throwable error = firstError.get();
+            if (error != null) {
+                task.getMessageReporter().error("Unknown error occurred while executing a PmdRunnable: {0}",
+                        error.toString(), error);
+                if (error instanceof Error) {
+                    throw (Error) error;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // only threads that were not joined are still alive
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /** The result of reading a file, either a document or an error. */
+    private static final class PrefetchedFile {
+
+        private final TextFile textFile;
+        private final TextDocument document;
+        private final IOException error;
+
+        PrefetchedFile(TextFile textFile, TextDocument document, IOException error) {
+            this.textFile = textFile;
+            this.document = document;
+            this.error = error;
+        }
+
+        TextDocument open(TextFile file) throws IOException {
+            if (error != null) {
+                throw error;
+            }
+            return document;
+        }
+
+        /** Closes the document of a file that will not be analysed. */
+        void close() {
+            if (document != null) {
+                try {
+                    document.close();
+                } catch (IOException ignored) {
+                    // the file is not analysed anyway
+                }
+            }
+        }
+    }
+}
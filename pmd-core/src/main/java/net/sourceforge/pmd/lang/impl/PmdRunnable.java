@@ -6,10 +6,14 @@ package net.sourceforge.pmd.lang.impl;
 
 import static net.sourceforge.pmd.util.CollectionUtil.listOf;
 
+import java.io.IOException;
+import java.util.function.Predicate;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.benchmark.TimeTracker;
@@ -33,23 +37,27 @@ import net.sourceforge.pmd.reporting.FileAnalysisListener;
 /**
  * A processing task for a single file.
  */
-abstract class PmdRunnable implements Runnable {
+final class PmdRunnable implements Runnable {
 
     private static final Logger LOG = LoggerFactory.getLogger(PmdRunnable.class);
     private final TextFile textFile;
     private final AnalysisTask task;
+    private final DocumentOpener opener;
 
     PmdRunnable(TextFile textFile, AnalysisTask task) {
-        this.textFile = textFile;
-        this.task = task;
+        this(textFile, task, TextDocument::create);
     }
 
     /**
-     * This is only called within the run method (when we are on the actual carrier thread).
-     * That way an implementation that uses a ThreadLocal will see the
-     * correct thread.
+     * Creates a task that gets the document of the file from the given
+     * opener, eg because it was read ahead by another thread. The opener
+     * is only called if a ruleset applies to the file.
      */
-    protected abstract RuleSets getRulesets();
+    PmdRunnable(TextFile textFile, AnalysisTask task, DocumentOpener opener) {
+        this.textFile = textFile;
+        this.task = task;
+        this.opener = opener;
+    }
 
     @Override
     public void run() throws FileAnalysisException {
@@ -58,12 +66,13 @@ abstract class PmdRunnable implements Runnable {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.FILE_PROCESSING);
              FileAnalysisListener listener = task.getListener().startFileAnalysis(textFile)) {
 
-            RuleSets ruleSets = getRulesets();
+            // the rulesets are shared by all threads
+            RuleSets ruleSets = task.getRulesets();
 
             // Coarse check to see if any RuleSet applies to file, will need to do a finer RuleSet specific check later
             if (ruleSets.applies(textFile)) {
                 AnalysisCache analysisCache = task.getAnalysisCache();
-                try (TextDocument textDocument = TextDocument.create(textFile);
+                try (TextDocument textDocument = opener.open(textFile);
                      FileAnalysisListener cacheListener = analysisCache.startFileAnalysis(textDocument)) {
 
                     @SuppressWarnings("PMD.CloseResource")
@@ -75,9 +84,17 @@ abstract class PmdRunnable implements Runnable {
                         //                         vvvvvvvv
                         reportCachedRuleViolations(listener, textDocument);
                     } else {
-                        LOG.trace("Processing file (lang: {}): {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
+                        Predicate<Rule> rulesToApply = rule -> true;
+                        if (analysisCache.isContentUpToDate(textDocument)) {
+                            LOG.trace("Processing changed rules only (lang: {}): {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
+                            // the violations of unchanged rules are already in the updated cache
+                            reportCachedRuleViolations(listener, textDocument);
+                            rulesToApply = rule -> !analysisCache.isRuleUpToDate(rule);
+                        } else {
+                            LOG.trace("Processing file (lang: {}): {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
+                        }
                         try {
-                            processSource(completeListener, textDocument, ruleSets);
+                            processSource(completeListener, textDocument, ruleSets, rulesToApply);
                         } catch (Exception | StackOverflowError | AssertionError e) {
                             if (e instanceof Error && !SystemProps.isErrorRecoveryMode()) { // NOPMD:
                                 throw e;
@@ -101,6 +118,13 @@ abstract class PmdRunnable implements Runnable {
         TimeTracker.finishThread();
     }
 
+    /** Reads the contents of a file into a document. */
+    @FunctionalInterface
+    interface DocumentOpener {
+
+        TextDocument open(TextFile textFile) throws IOException;
+    }
+
     private void reportCachedRuleViolations(final FileAnalysisListener ctx, TextDocument file) {
         for (final RuleViolation rv : task.getAnalysisCache().getCachedViolations(file)) {
             ctx.onRuleViolation(rv);
@@ -116,7 +140,8 @@ abstract class PmdRunnable implements Runnable {
 
     private void processSource(FileAnalysisListener listener,
                                TextDocument textDocument,
-                               RuleSets ruleSets) throws FileAnalysisException {
+                               RuleSets ruleSets,
+                               Predicate<Rule> rulesToApply) throws FileAnalysisException {
 
         SemanticErrorReporter reporter = SemanticErrorReporter.reportToLogger(task.getMessageReporter());
         @SuppressWarnings("PMD.CloseResource")
@@ -137,7 +162,7 @@ abstract class PmdRunnable implements Runnable {
             throw semanticError;
         }
 
-        ruleSets.apply(rootNode, listener);
+        ruleSets.apply(rootNode, listener, rulesToApply);
     }
 
 }
@@ -0,0 +1,125 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.sourceforge.pmd.lang.FileScheduling;
+import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
+import net.sourceforge.pmd.lang.document.TextFile;
+
+/**
+ * Multi-threaded processor that submits files largest-first to a
+ * work-stealing pool. Completion is tracked with a latch instead of
+ * a list of futures.
+ *
+ * @see FileScheduling#WORK_STEALING
+ */
+final class WorkStealingProcessor extends AbstractPMDProcessor {
+
+    private final ForkJoinPool pool;
+    private final AtomicReference<Throwable> firstError = new AtomicReference<>();
+    private CountDownLatch remaining = new CountDownLatch(0);
+
+    WorkStealingProcessor(final AnalysisTask task) {
+        super(task);
+
+        AtomicInteger counter = new AtomicInteger();
+        pool = new ForkJoinPool(task.getThreadCount(), p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("PmdThread " + counter.incrementAndGet());
+            return thread;
+        }, null, true);
+    }
+
+    @Override
+    @SuppressWarnings("PMD.CloseResource") // closed by the PMDRunnable
+    public void processFiles() {
+        List<TextFile> files = sortLargestFirst(task.getFiles());
+        remaining = new CountDownLatch(files.size());
+
+        for (final TextFile textFile : files) {
+            PmdRunnable runnable = new PmdRunnable(textFile, task);
+            pool.execute(() -> {
+                try {
+                    runnable.run();
+                } catch (Throwable e) { // NOPMD AvoidCatchingThrowable: reported when closing
+                    firstError.compareAndSet(null, e);
+                } finally {
+                    remaining.countDown();
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns a copy of the given list, ordered by decreasing estimated cost.
+     * The sort is stable so files with the same cost keep their relative order.
+     */
+    static List<TextFile> sortLargestFirst(List<TextFile> files) {
+        Map<TextFile, Long> costs = new IdentityHashMap<>();
+        for (TextFile file : files) {
+            costs.put(file, estimateCost(file));
+        }
+        List<TextFile> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparing(costs::get, Comparator.reverseOrder()));
+        return sorted;
+    }
+
+    /**
+     * Estimates the processing cost of a file with its size on disk.
+     * Files that are not on the default file system (eg in-memory files)
+     * get a cost of zero.
+     */
+    private static long estimateCost(TextFile file) {
+        try {
+            Path path = Paths.get(file.getFileId().getAbsolutePath());
+            return Files.isRegularFile(path) ? Files.size(path) : 0L;
+        } catch (InvalidPathException | IOException | SecurityException e) {
+            return 0L;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            remaining.await();
+
+            Throwable error = firstError.get();
+            if (error != null) {
+                task.getMessageReporter().error("Unknown error occurred while executing a PmdRunnable: {0}",
+                        error.toString(), error);
+                if (error instanceof Error) {
+                    throw (Error) error;
+                }
+            }
+
+            pool.shutdown();
+            while (!pool.awaitTermination(10, TimeUnit.HOURS)) {
+                // still waiting
+                Thread.yield();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -242,6 +242,11 @@ public abstract class AbstractDelegateRule implements Rule {
         rule.initialize(languageProcessor);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return rule.isThreadSafe();
+    }
+
     /**
      * @see Rule#hasDescriptor(PropertyDescriptor)
      */
@@ -0,0 +1,28 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule;
+
+/**
+ * Strategy used to apply the rules to the nodes of a file, once the
+ * file is parsed.
+ *
+ * @see net.sourceforge.pmd.PMDConfiguration#setRuleDispatch(RuleDispatch)
+ * @since 7.0.0
+ */
+public enum RuleDispatch {
+    /**
+     * Each rule is applied in turn to all the nodes it targets. This
+     * is the default.
+     */
+    PER_RULE,
+
+    /**
+     * The nodes of the file are walked once in document order, and each
+     * node is given to all the rules that target it. Each rule is still
+     * started before its first node and ended after the walk. This improves
+     * memory locality on big files with many rules.
+     */
+    FUSED
+}
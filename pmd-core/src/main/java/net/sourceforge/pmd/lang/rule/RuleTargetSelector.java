@@ -19,6 +19,7 @@ import net.sourceforge.pmd.lang.ast.RootNode;
 import net.sourceforge.pmd.lang.rule.internal.TargetSelectorInternal;
 import net.sourceforge.pmd.lang.rule.internal.TreeIndex;
 import net.sourceforge.pmd.util.CollectionUtil;
+import net.sourceforge.pmd.util.IteratorUtil;
 
 /**
  * A strategy for selecting nodes that will be targeted by a rule.
@@ -79,6 +80,24 @@ public abstract class RuleTargetSelector extends TargetSelectorInternal {
         return forTypes(CollectionUtil.listOf(first, types));
     }
 
+    /**
+     * Target the root of the tree, and the nodes having one of the
+     * given XPath local names. The root is visited once, even if it
+     * has one of these names.
+     *
+     * @param names XPath names
+     *
+     * @return A selector
+     *
+     * @throws IllegalArgumentException If the argument is empty
+     */
+    public static RuleTargetSelector forRootAndXPathNames(Collection<String> names) {
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("Cannot visit zero nodes");
+        }
+        return new RootAndXPathNameVisits(names);
+    }
+
     /**
      * Target only the root of the tree.
      */
@@ -109,12 +128,59 @@ public abstract class RuleTargetSelector extends TargetSelectorInternal {
             return index.getByName(visits);
         }
 
+        @Override
+        protected boolean visitsClass(Class<? extends Node> nodeClass) {
+            return false;
+        }
+
+        @Override
+        protected boolean visitsXPathName(String xpathName) {
+            return visits.contains(xpathName);
+        }
+
         @Override
         public String toString() {
             return "XPathNameVisits" + visits;
         }
     }
 
+    private static final class RootAndXPathNameVisits extends RuleTargetSelector {
+
+        private final Set<String> visits;
+
+        RootAndXPathNameVisits(Collection<String> visits) {
+            this.visits = new HashSet<>(visits);
+        }
+
+        @Override
+        protected void prepare(ApplicatorBuilder builder) {
+            builder.registerXPathNames(visits);
+            builder.registerClasses(Collections.singleton(RootNode.class));
+        }
+
+        @Override
+        protected Iterator<? extends Node> getVisitedNodes(TreeIndex index) {
+            // the root comes first in document order
+            return IteratorUtil.concat(index.getByClass(Collections.singleton(RootNode.class)),
+                                       IteratorUtil.filter(index.getByName(visits), n -> !(n instanceof RootNode)));
+        }
+
+        @Override
+        protected boolean visitsClass(Class<? extends Node> nodeClass) {
+            return RootNode.class.isAssignableFrom(nodeClass);
+        }
+
+        @Override
+        protected boolean visitsXPathName(String xpathName) {
+            return visits.contains(xpathName);
+        }
+
+        @Override
+        public String toString() {
+            return "RootAndXPathNameVisits" + visits;
+        }
+    }
+
     private static final class ClassRulechainVisits extends RuleTargetSelector {
 
         public static final RuleTargetSelector ROOT_ONLY = new ClassRulechainVisits(Collections.singleton(RootNode.class));
@@ -138,6 +204,21 @@ public abstract class RuleTargetSelector extends TargetSelectorInternal {
             return index.getByClass(visits);
         }
 
+        @Override
+        protected boolean visitsClass(Class<? extends Node> nodeClass) {
+            for (Class<? extends Node> visit : visits) {
+                if (visit.isAssignableFrom(nodeClass)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        protected boolean visitsXPathName(String xpathName) {
+            return false;
+        }
+
         @Override
         public String toString() {
             return "ClassVisits" + visits;
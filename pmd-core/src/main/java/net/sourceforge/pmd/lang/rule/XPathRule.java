@@ -19,12 +19,14 @@ import org.slf4j.LoggerFactory;
 import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleContext;
 import net.sourceforge.pmd.annotation.DeprecatedUntil700;
+import net.sourceforge.pmd.annotation.InternalApi;
 import net.sourceforge.pmd.lang.LanguageProcessor;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.rule.xpath.PmdXPathException;
 import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
 import net.sourceforge.pmd.lang.rule.xpath.internal.DeprecatedAttrLogger;
 import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SharedSubexpressions;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.properties.PropertyFactory;
 
@@ -68,6 +70,9 @@ public final class XPathRule extends AbstractRule {
     // this is shared with rules forked by deepCopy, used by the XPathRuleQuery
     private DeprecatedAttrLogger attrLogger = DeprecatedAttrLogger.create(this);
 
+    private boolean profiling;
+    private SharedSubexpressions sharedSubexpressions;
+
 
     /**
      * @deprecated This is now only used by the ruleset loader. When
@@ -103,9 +108,31 @@ public final class XPathRule extends AbstractRule {
     public Rule deepCopy() {
         XPathRule rule = (XPathRule) super.deepCopy();
         rule.attrLogger = this.attrLogger;
+        rule.profiling = this.profiling;
+        rule.sharedSubexpressions = this.sharedSubexpressions;
         return rule;
     }
 
+    /**
+     * Times the subexpressions and the extension function calls of the
+     * query with the {@link net.sourceforge.pmd.benchmark.TimeTracker}.
+     * This slows down the rule. Must be called before {@link #initialize(LanguageProcessor)}.
+     */
+    @InternalApi
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+    }
+
+    /**
+     * Shares the compiled subexpressions of the query with the other
+     * rules that use the same instance, typically the other rules of
+     * the analysis. Must be called before {@link #initialize(LanguageProcessor)}.
+     */
+    @InternalApi
+    public void setSharedSubexpressions(SharedSubexpressions sharedSubexpressions) {
+        this.sharedSubexpressions = sharedSubexpressions;
+    }
+
     /**
      * Returns the version for this rule. Returns null if this is not
      * set or invalid.
@@ -156,12 +183,24 @@ public final class XPathRule extends AbstractRule {
                                                      version,
                                                      getPropertiesByPropertyDescriptor(),
                                                      languageProcessor.services().getXPathHandler(),
-                                                     attrLogger);
+                                                     attrLogger,
+                                                     profiling ? getName() : null,
+                                                     sharedSubexpressions != null ? sharedSubexpressions
+                                                                                  : new SharedSubexpressions());
         } catch (PmdXPathException e) {
             throw addExceptionContext(e);
         }
     }
 
+    /**
+     * XPath rules are thread-safe, the compiled query is immutable
+     * once initialized.
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     private SaxonXPathRuleQuery getQueryMaybeInitialize() throws PmdXPathException {
         if (xpathRuleQuery == null) {
             throw new IllegalStateException("Not initialized");
@@ -173,18 +212,22 @@ public final class XPathRule extends AbstractRule {
     @Override
     protected @NonNull RuleTargetSelector buildTargetSelector() {
 
-        List<String> visits = getQueryMaybeInitialize().getRuleChainVisits();
+        SaxonXPathRuleQuery query = getQueryMaybeInitialize();
+        List<String> visits = query.getRuleChainVisits();
 
-        logXPathRuleChainUsage(!visits.isEmpty());
+        logXPathRuleChainUsage(visits.isEmpty() ? "no" : query.needsRootVisit() ? "Partially using" : "Using");
 
-        return visits.isEmpty() ? RuleTargetSelector.forRootOnly()
-                                : RuleTargetSelector.forXPathNames(visits);
+        if (visits.isEmpty()) {
+            return RuleTargetSelector.forRootOnly();
+        }
+        return query.needsRootVisit() ? RuleTargetSelector.forRootAndXPathNames(visits)
+                                      : RuleTargetSelector.forXPathNames(visits);
     }
 
 
-    private void logXPathRuleChainUsage(boolean usesRuleChain) {
+    private void logXPathRuleChainUsage(String usage) {
         LOG.debug("{} rule chain for XPath {} rule: {} ({})",
-                usesRuleChain ? "Using" : "no",
+                usage,
                 getProperty(XPathRule.VERSION_DESCRIPTOR),
                 getName(),
                 getRuleSetName());
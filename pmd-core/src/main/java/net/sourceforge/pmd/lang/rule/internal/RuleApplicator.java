@@ -4,8 +4,12 @@
 
 package net.sourceforge.pmd.lang.rule.internal;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
 
 import org.apache.commons.lang3.exception.ExceptionContext;
 import org.slf4j.Logger;
@@ -26,38 +30,140 @@ import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.util.AssertionUtil;
 import net.sourceforge.pmd.util.StringUtil;
 
-/** Applies a set of rules to a set of ASTs. */
+/**
+ * Applies a set of rules to a set of ASTs. An instance may be shared
+ * by several threads: the index of the current file is kept in a
+ * thread-local {@link TreeIndex}.
+ */
 public class RuleApplicator {
 
     private static final Logger LOG = LoggerFactory.getLogger(RuleApplicator.class);
-    // we reuse the type lattice from run to run, eventually it converges
-    // towards the final topology (all node types have been encountered)
+    // we reuse the index from run to run, the buckets of each node type
+    // are only computed the first time a node of that type is encountered.
     // This has excellent performance! Indexing time is insignificant
     // compared to rule application for any non-trivial ruleset. Even
     // when you use a single rule, indexing time is insignificant compared
     // to eg type resolution.
 
-    private final TreeIndex idx;
-    private LanguageVersion currentLangVer;
+    private final ThreadLocal<TreeIndex> idx;
+    private final ThreadLocal<RuleDispatchTable> dispatchTable = new ThreadLocal<>();
 
-    public RuleApplicator(TreeIndex index) {
-        this.idx = index;
+    public RuleApplicator(Set<String> namesToIndex, Set<Class<? extends Node>> classesToIndex) {
+        this.idx = ThreadLocal.withInitial(() -> new TreeIndex(namesToIndex, classesToIndex));
     }
 
 
+    /**
+     * Index the given tree. The index is used by subsequent calls to
+     * {@link #apply(Collection, FileAnalysisListener)} on the same thread.
+     */
     public void index(RootNode root) {
-        idx.reset();
-        indexTree(root, idx);
-        currentLangVer = root.getLanguageVersion();
+        TreeIndex index = idx.get();
+        index.reset();
+        indexTree(root, index);
+        index.setLanguageVersion(root.getLanguageVersion());
     }
 
     public void apply(Collection<? extends Rule> rules, FileAnalysisListener listener) {
-        applyOnIndex(idx, rules, listener);
+        apply(rules, rule -> true, listener);
+    }
+
+    /**
+     * Apply the rules that match the filter on the tree that was last
+     * indexed by this thread.
+     */
+    public void apply(Collection<? extends Rule> rules, Predicate<? super Rule> ruleFilter, FileAnalysisListener listener) {
+        applyOnIndex(idx.get(), rules, ruleFilter, listener);
     }
 
-    private void applyOnIndex(TreeIndex idx, Collection<? extends Rule> rules, FileAnalysisListener listener) {
+    /**
+     * Apply the rules that match the filter on the tree that was last
+     * indexed by this thread, walking the tree once. Each node is given
+     * to the rules that visit it, in the order of the rules. All rules
+     * are started before the walk, and ended after it.
+     *
+     * <p>When {@linkplain TimeTracker#isTracking() benchmarking}, the
+     * time spent in each rule and the number of nodes it visited are
+     * summed up during the walk, and recorded once per rule for the file.
+     */
+    public void applyFused(List<? extends Rule> rules, Predicate<? super Rule> ruleFilter, FileAnalysisListener listener) {
+        TreeIndex idx = this.idx.get();
+        LanguageVersion currentLangVer = idx.getLanguageVersion();
+        List<Rule> applicableRules = new ArrayList<>(rules.size());
         for (Rule rule : rules) {
-            if (!RuleSet.applies(rule, currentLangVer)) {
+            if (RuleSet.applies(rule, currentLangVer) && ruleFilter.test(rule)) {
+                applicableRules.add(rule);
+            }
+        }
+        if (applicableRules.isEmpty()) {
+            return;
+        }
+
+        RuleDispatchTable table = dispatchTable.get();
+        if (table == null || !table.isFor(applicableRules)) {
+            table = new RuleDispatchTable(applicableRules);
+            dispatchTable.set(table);
+        }
+
+        RuleContext[] contexts = new RuleContext[table.getRuleCount()];
+        int numStarted = 0;
+        try {
+            for (; numStarted < contexts.length; numStarted++) {
+                Rule rule = table.getRule(numStarted);
+                contexts[numStarted] = RuleContext.create(listener, rule);
+                rule.start(contexts[numStarted]);
+            }
+
+            if (TimeTracker.isTracking()) {
+                walkTimed(idx, table, contexts, listener);
+            } else {
+                for (int id = 0; id < idx.getNumNodes(); id++) {
+                    Node node = idx.getNode(id);
+                    for (int ruleIndex : table.rulesFor(node)) {
+                        applyOnNode(table.getRule(ruleIndex), node, contexts[ruleIndex], listener);
+                    }
+                }
+            }
+        } finally {
+            for (int i = 0; i < numStarted; i++) {
+                endRule(table.getRule(i), contexts[i], idx.getNode(0), listener);
+            }
+        }
+    }
+
+    /**
+     * The fused walk, measuring the time of each rule without starting
+     * a timed operation for every node.
+     */
+    private void walkTimed(TreeIndex idx, RuleDispatchTable table, RuleContext[] contexts, FileAnalysisListener listener) {
+        long[] totalNanos = new long[contexts.length];
+        long[] selfNanos = new long[contexts.length];
+        int[] nodeCounts = new int[contexts.length];
+        try {
+            for (int id = 0; id < idx.getNumNodes(); id++) {
+                Node node = idx.getNode(id);
+                for (int ruleIndex : table.rulesFor(node)) {
+                    long nestedNanos = TimeTracker.getNestedOperationsNanos();
+                    long start = System.nanoTime();
+                    applyOnNode(table.getRule(ruleIndex), node, contexts[ruleIndex], listener);
+                    long elapsed = System.nanoTime() - start;
+                    totalNanos[ruleIndex] += elapsed;
+                    selfNanos[ruleIndex] += elapsed - (TimeTracker.getNestedOperationsNanos() - nestedNanos);
+                    nodeCounts[ruleIndex]++;
+                }
+            }
+        } finally {
+            for (int i = 0; i < contexts.length; i++) {
+                TimeTracker.recordOperation(TimedOperationCategory.RULE, table.getRule(i).getName(),
+                                            totalNanos[i], selfNanos[i], nodeCounts[i]);
+            }
+        }
+    }
+
+    private void applyOnIndex(TreeIndex idx, Collection<? extends Rule> rules, Predicate<? super Rule> ruleFilter, FileAnalysisListener listener) {
+        LanguageVersion currentLangVer = idx.getLanguageVersion();
+        for (Rule rule : rules) {
+            if (!RuleSet.applies(rule, currentLangVer) || !ruleFilter.test(rule)) {
                 continue; // No point in even trying to apply the rule
             }
             
@@ -69,17 +175,8 @@ public class RuleApplicator {
                 Iterator<? extends Node> targets = rule.getTargetSelector().getVisitedNodes(idx);
                 while (targets.hasNext()) {
                     Node node = targets.next();
-
-                    try {
-                        nodeCounter++;
-                        rule.apply(node, ctx);
-                    } catch (RuntimeException e) {
-                        reportOrRethrow(listener, rule, node, AssertionUtil.contexted(e), true);
-                    } catch (StackOverflowError e) {
-                        reportOrRethrow(listener, rule, node, AssertionUtil.contexted(e), SystemProps.isErrorRecoveryMode());
-                    } catch (AssertionError e) {
-                        reportOrRethrow(listener, rule, node, AssertionUtil.contexted(e), SystemProps.isErrorRecoveryMode());
-                    }
+                    nodeCounter++;
+                    applyOnNode(rule, node, ctx, listener);
                 }
                 
                 rcto.close(nodeCounter);
@@ -90,6 +187,36 @@ public class RuleApplicator {
     }
 
 
+    private void applyOnNode(Rule rule, Node node, RuleContext ctx, FileAnalysisListener listener) {
+        try {
+            rule.apply(node, ctx);
+        } catch (RuntimeException e) {
+            reportOrRethrow(listener, rule, node, AssertionUtil.contexted(e), true);
+        } catch (StackOverflowError e) {
+            reportOrRethrow(listener, rule, node, AssertionUtil.contexted(e), SystemProps.isErrorRecoveryMode());
+        } catch (AssertionError e) {
+            reportOrRethrow(listener, rule, node, AssertionUtil.contexted(e), SystemProps.isErrorRecoveryMode());
+        }
+    }
+
+
+    /**
+     * Ends the rule, reporting its errors like those of {@link Rule#apply(Node, RuleContext)},
+     * so that the other rules are still ended.
+     */
+    private void endRule(Rule rule, RuleContext ctx, Node root, FileAnalysisListener listener) {
+        try {
+            rule.end(ctx);
+        } catch (RuntimeException e) {
+            reportOrRethrow(listener, rule, root, AssertionUtil.contexted(e), true);
+        } catch (StackOverflowError e) {
+            reportOrRethrow(listener, rule, root, AssertionUtil.contexted(e), SystemProps.isErrorRecoveryMode());
+        } catch (AssertionError e) {
+            reportOrRethrow(listener, rule, root, AssertionUtil.contexted(e), SystemProps.isErrorRecoveryMode());
+        }
+    }
+
+
     private <E extends Throwable> void reportOrRethrow(FileAnalysisListener listener, Rule rule, Node node, E e, boolean reportAndDontThrow) throws E {
         if (e instanceof ExceptionContext) {
             ((ExceptionContext) e).addContextValue("Rule applied on node", node);
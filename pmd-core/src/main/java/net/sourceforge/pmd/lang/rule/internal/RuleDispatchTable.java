@@ -0,0 +1,110 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.internal;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.lang.ast.Node;
+
+/**
+ * Maps the nodes of a tree to the rules that visit them, for the fused
+ * mode of the {@link RuleApplicator}. The rules of a node class or an
+ * XPath name are computed the first time they are needed. This is
+ * per-thread state, it's reused while the rules to apply don't change.
+ */
+final class RuleDispatchTable {
+
+    private static final int[] NO_RULES = {};
+
+    private final Rule[] rules;
+    private final Map<Class<?>, int[]> byClass = new HashMap<>();
+    private final Map<String, int[]> byName = new HashMap<>();
+
+    RuleDispatchTable(List<? extends Rule> rules) {
+        this.rules = rules.toArray(new Rule[0]);
+    }
+
+    /** Returns true if this table dispatches to the same rule instances, in the same order. */
+    boolean isFor(List<? extends Rule> rules) {
+        if (rules.size() != this.rules.length) {
+            return false;
+        }
+        for (int i = 0; i < this.rules.length; i++) {
+            if (rules.get(i) != this.rules[i]) { // NOPMD CompareObjectsWithEquals
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Rule getRule(int index) {
+        return rules[index];
+    }
+
+    int getRuleCount() {
+        return rules.length;
+    }
+
+    /**
+     * Returns the indices of the rules that visit the given node, in
+     * increasing order.
+     */
+    int[] rulesFor(Node node) {
+        int[] forClass = byClass.computeIfAbsent(node.getClass(), this::computeForClass);
+        int[] forName = byName.computeIfAbsent(node.getXPathNodeName(), this::computeForName);
+        if (forName.length == 0) {
+            return forClass;
+        } else if (forClass.length == 0) {
+            return forName;
+        }
+        // a rule may visit both the class and the name of a node, eg the
+        // root, then it's in both arrays but must be applied once
+        int[] merged = new int[forClass.length + forName.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < forClass.length && j < forName.length) {
+            if (forClass[i] == forName[j]) {
+                j++;
+            } else {
+                merged[k++] = forClass[i] < forName[j] ? forClass[i++] : forName[j++];
+            }
+        }
+        while (i < forClass.length) {
+            merged[k++] = forClass[i++];
+        }
+        while (j < forName.length) {
+            merged[k++] = forName[j++];
+        }
+        return k == merged.length ? merged : Arrays.copyOf(merged, k);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int[] computeForClass(Class<?> nodeClass) {
+        int[] result = new int[rules.length];
+        int size = 0;
+        for (int i = 0; i < rules.length; i++) {
+            if (rules[i].getTargetSelector().visitsClass((Class<? extends Node>) nodeClass)) {
+                result[size++] = i;
+            }
+        }
+        return size == 0 ? NO_RULES : Arrays.copyOf(result, size);
+    }
+
+    private int[] computeForName(String xpathName) {
+        int[] result = new int[rules.length];
+        int size = 0;
+        for (int i = 0; i < rules.length; i++) {
+            if (rules[i].getTargetSelector().visitsXPathName(xpathName)) {
+                result[size++] = i;
+            }
+        }
+        return size == 0 ? NO_RULES : Arrays.copyOf(result, size);
+    }
+}
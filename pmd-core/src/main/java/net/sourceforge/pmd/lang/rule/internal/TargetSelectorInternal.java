@@ -26,6 +26,21 @@ public abstract class TargetSelectorInternal {
     protected abstract Iterator<? extends Node> getVisitedNodes(TreeIndex index);
 
 
+    /**
+     * Returns true if all nodes of the given class are visited, whatever
+     * their XPath name. This is used to build the dispatch table of the
+     * {@link RuleApplicator} in fused mode.
+     */
+    protected abstract boolean visitsClass(Class<? extends Node> nodeClass);
+
+
+    /**
+     * Returns true if all nodes with the given XPath name are visited,
+     * whatever their class.
+     */
+    protected abstract boolean visitsXPathName(String xpathName);
+
+
     protected static final class ApplicatorBuilder {
 
         private final Set<String> namesToIndex = new HashSet<>();
@@ -44,7 +59,7 @@ public abstract class TargetSelectorInternal {
         }
 
         RuleApplicator build() {
-            return new RuleApplicator(new TreeIndex(namesToIndex, classesToIndex));
+            return new RuleApplicator(namesToIndex, classesToIndex);
         }
     }
 }
@@ -5,67 +5,242 @@
 package net.sourceforge.pmd.lang.rule.internal;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.stream.Collectors;
 
+import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.ast.Node;
-import net.sourceforge.pmd.util.IteratorUtil;
+import net.sourceforge.pmd.util.IteratorUtil.AbstractIterator;
 
 /**
- * Index of an AST, for use by the {@link RuleApplicator}.
+ * Index of an AST, for use by the {@link RuleApplicator}. This is
+ * per-thread state, it's reset before indexing each file.
+ *
+ * <p>Each node is given its preorder index as id. Buckets store the
+ * ids of their nodes, so they are in document order. Buckets and the
+ * node table are reused from file to file. The buckets a node class
+ * belongs to are computed once for each class.
  */
 public class TreeIndex {
 
-    private final LatticeRelation<Class<?>, Node, Iterable<Node>> byClass;
-    private final Set<String> interestingNames;
-    private final Map<String, List<Node>> byName;
+    private static final int[] NO_IDS = {};
+
+    /** Bucket of each class that can be queried. */
+    private final Map<Class<?>, IntBucket> byQueryClass = new HashMap<>();
+    /** Buckets of each node class encountered, ie those of all its supertypes that can be queried. */
+    private final Map<Class<?>, IntBucket[]> bucketsOfClass = new HashMap<>();
+    private final Map<String, IntBucket> byName = new HashMap<>();
+    private final List<IntBucket> allBuckets = new ArrayList<>();
+
+    /** Indexed nodes, by id. */
+    private Node[] nodes = new Node[256];
+    private int numNodes;
+    private LanguageVersion languageVersion;
 
 
     public TreeIndex(Set<String> namesToIndex,
                      Set<Class<? extends Node>> classesToIndex) {
 
-        byClass = new LatticeRelation<>(
-            TopoOrder.TYPE_HIERARCHY_ORDERING,
-            classesToIndex,
-            Class::getSimpleName,
-            Collectors.toSet()
-        );
-        this.interestingNames = namesToIndex;
-        byName = new HashMap<>();
+        for (Class<? extends Node> klass : classesToIndex) {
+            if (klass == null) {
+                throw new IllegalArgumentException("Query set " + classesToIndex + " contains a null key");
+            }
+            byQueryClass.put(klass, newBucket());
+        }
+        for (String name : namesToIndex) {
+            byName.put(name, newBucket());
+        }
+    }
+
+    private IntBucket newBucket() {
+        IntBucket bucket = new IntBucket();
+        allBuckets.add(bucket);
+        return bucket;
     }
 
     void indexNode(Node n) {
-        if (interestingNames.contains(n.getXPathNodeName())) {
-            byName.computeIfAbsent(n.getXPathNodeName(), k -> new ArrayList<>()).add(n);
+        int id = numNodes++;
+        if (id == nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
         }
-        byClass.put(n.getClass(), n);
+        nodes[id] = n;
+
+        IntBucket nameBucket = byName.get(n.getXPathNodeName());
+        if (nameBucket != null) {
+            nameBucket.add(id);
+        }
+        for (IntBucket bucket : bucketsOfClass.computeIfAbsent(n.getClass(), this::computeBuckets)) {
+            bucket.add(id);
+        }
+    }
+
+    private IntBucket[] computeBuckets(Class<?> nodeClass) {
+        List<IntBucket> buckets = new ArrayList<>();
+        byQueryClass.forEach((queryClass, bucket) -> {
+            if (queryClass.isAssignableFrom(nodeClass)) {
+                buckets.add(bucket);
+            }
+        });
+        return buckets.toArray(new IntBucket[0]);
     }
 
     void reset() {
-        byClass.clearValues();
-        byName.clear();
+        for (IntBucket bucket : allBuckets) {
+            bucket.size = 0;
+        }
+        // don't retain the previous tree
+        Arrays.fill(nodes, 0, numNodes, null);
+        numNodes = 0;
+        languageVersion = null;
+    }
+
+    void setLanguageVersion(LanguageVersion languageVersion) {
+        this.languageVersion = languageVersion;
+    }
+
+    /** Returns the language version of the indexed tree. */
+    LanguageVersion getLanguageVersion() {
+        return languageVersion;
+    }
+
+    /** Returns the number of indexed nodes. */
+    int getNumNodes() {
+        return numNodes;
+    }
+
+    /** Returns the node with the given preorder index. */
+    Node getNode(int id) {
+        return nodes[id];
     }
 
     Iterator<Node> getByName(String n) {
-        return byName.getOrDefault(n, Collections.emptyList()).iterator();
+        return iterate(byName.get(n));
     }
 
     Iterator<Node> getByClass(Class<? extends Node> n) {
-        return byClass.get(n).iterator();
+        return iterate(byQueryClass.get(n));
+    }
+
+    private Iterator<Node> iterate(IntBucket bucket) {
+        if (bucket == null || bucket.size == 0) {
+            return Collections.emptyIterator();
+        }
+        return new BucketIterator(bucket);
     }
 
 
+    /**
+     * Returns the nodes with any of the given XPath names, in document order.
+     */
     public Iterator<Node> getByName(Collection<String> n) {
-        return IteratorUtil.flatMap(n.iterator(), this::getByName);
+        if (n.size() == 1) {
+            return getByName(n.iterator().next());
+        }
+        return merge(n, byName);
     }
 
+    /**
+     * Returns the nodes that are instances of any of the given classes,
+     * in document order. A node that is an instance of several of these
+     * classes is returned once.
+     */
     public Iterator<Node> getByClass(Collection<? extends Class<? extends Node>> n) {
-        return IteratorUtil.flatMap(n.iterator(), this::getByClass);
+        if (n.size() == 1) {
+            return getByClass(n.iterator().next());
+        }
+        return merge(n, byQueryClass);
+    }
+
+    private <K> Iterator<Node> merge(Collection<? extends K> keys, Map<? super K, IntBucket> buckets) {
+        List<IntBucket> nonEmpty = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            IntBucket bucket = buckets.get(key);
+            if (bucket != null && bucket.size > 0) {
+                nonEmpty.add(bucket);
+            }
+        }
+        if (nonEmpty.isEmpty()) {
+            return Collections.emptyIterator();
+        } else if (nonEmpty.size() == 1) {
+            return new BucketIterator(nonEmpty.get(0));
+        }
+        return new MergingIterator(nonEmpty.toArray(new IntBucket[0]));
+    }
+
+    /** A growable array of node ids, sorted in increasing order. */
+    private static final class IntBucket {
+
+        private int[] ids = NO_IDS;
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(16, size * 2));
+            }
+            ids[size++] = id;
+        }
+    }
+
+    private final class BucketIterator implements Iterator<Node> {
+
+        private final IntBucket bucket;
+        private int cursor;
+
+        BucketIterator(IntBucket bucket) {
+            this.bucket = bucket;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor < bucket.size;
+        }
+
+        @Override
+        public Node next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return nodes[bucket.ids[cursor++]];
+        }
+    }
+
+    /** Merges several buckets, skipping the ids that are in several of them. */
+    private final class MergingIterator extends AbstractIterator<Node> {
+
+        private final IntBucket[] buckets;
+        private final int[] cursors;
+        private int lastId = -1;
+
+        MergingIterator(IntBucket[] buckets) {
+            this.buckets = buckets;
+            this.cursors = new int[buckets.length];
+        }
+
+        @Override
+        protected void computeNext() {
+            int min = Integer.MAX_VALUE;
+            for (int i = 0; i < buckets.length; i++) {
+                IntBucket bucket = buckets[i];
+                while (cursors[i] < bucket.size && bucket.ids[cursors[i]] <= lastId) {
+                    cursors[i]++;
+                }
+                if (cursors[i] < bucket.size) {
+                    min = Math.min(min, bucket.ids[cursors[i]]);
+                }
+            }
+            if (min == Integer.MAX_VALUE) {
+                done();
+            } else {
+                lastId = min;
+                setNext(nodes[min]);
+            }
+        }
     }
 }
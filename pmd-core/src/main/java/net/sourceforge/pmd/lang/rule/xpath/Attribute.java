@@ -9,6 +9,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +34,7 @@ public class Attribute {
     private final String name;
 
     private final MethodHandle handle;
+    private final Function<? super Node, ?> accessor;
     private final Method method;
     private boolean invoked;
 
@@ -44,6 +46,17 @@ public class Attribute {
         this.parent = parent;
         this.name = name;
         this.handle = handle;
+        this.accessor = null;
+        this.method = m;
+    }
+
+    /** Creates a new attribute belonging to the given node using a function that calls its accessor. */
+    @InternalApi
+    public Attribute(Node parent, String name, Function<? super Node, ?> accessor, Method m) {
+        this.parent = parent;
+        this.name = name;
+        this.handle = null;
+        this.accessor = accessor;
         this.method = m;
     }
 
@@ -53,6 +66,7 @@ public class Attribute {
         this.name = name;
         this.value = value;
         this.handle = null;
+        this.accessor = null;
         this.method = null;
         this.stringValue = value;
         this.invoked = true;
@@ -111,7 +125,7 @@ public class Attribute {
         Object value;
         // this lazy loading reduces calls to Method.invoke() by about 90%
         try {
-            value = handle.invokeExact(parent);
+            value = accessor != null ? accessor.apply(parent) : handle.invokeExact(parent);
         } catch (Throwable iae) { // NOPMD
             LOG.debug("Exception while fetching attribute value", iae);
             value = null;
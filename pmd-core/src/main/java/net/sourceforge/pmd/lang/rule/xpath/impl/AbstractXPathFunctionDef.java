@@ -4,7 +4,13 @@
 
 package net.sourceforge.pmd.lang.rule.xpath.impl;
 
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
 import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.ast.Node;
 
 import net.sf.saxon.lib.ExtensionFunctionDefinition;
 import net.sf.saxon.om.StructuredQName;
@@ -37,4 +43,16 @@ public abstract class AbstractXPathFunctionDef extends ExtensionFunctionDefiniti
     public final StructuredQName getFunctionQName() {
         return qname;
     }
+
+    /**
+     * Returns a test equivalent to a call of this function with the given
+     * arguments, on the context node. Queries that use this function may
+     * then be evaluated without Saxon. Returns null if that is not supported,
+     * which is the default.
+     *
+     * @param arguments Values of the arguments, which are all string literals
+     */
+    public @Nullable Predicate<Node> compileContextNodeTest(List<String> arguments) {
+        return null;
+    }
 }
@@ -4,26 +4,40 @@
 
 package net.sourceforge.pmd.lang.rule.xpath.impl;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodHandles.Lookup;
 import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.impl.AbstractNode;
 import net.sourceforge.pmd.lang.rule.xpath.Attribute;
 import net.sourceforge.pmd.lang.rule.xpath.NoAttribute;
 import net.sourceforge.pmd.lang.rule.xpath.NoAttribute.NoAttrScope;
 import net.sourceforge.pmd.util.AssertionUtil;
+import net.sourceforge.pmd.util.DataMap;
+import net.sourceforge.pmd.util.DataMap.SimpleDataKey;
 
 
 /**
@@ -31,12 +45,29 @@ import net.sourceforge.pmd.util.AssertionUtil;
  * attributes. This is the default way the attributes of a node
  * are made accessible to XPath rules, and defines an important
  * piece of PMD's XPath support.
+ *
+ * <p>Attribute accessors are compiled to functions once per node class.
+ * The attributes of a node are created the first time they are iterated
+ * or {@linkplain #findAttribute(Node, String) looked up}, and then reused,
+ * so their values are computed at most once.
  */
 public class AttributeAxisIterator implements Iterator<Attribute> {
 
+    private static final Logger LOG = LoggerFactory.getLogger(AttributeAxisIterator.class);
+
+    /** Attributes of a node that have been created already, indexed by slot. */
+    private static final SimpleDataKey<Attribute[]> ATTRIBUTES_KEY = DataMap.simpleDataKey("xpath.attributes");
+
     /** Caches the precomputed attribute accessors of a given class. */
     private static final ConcurrentMap<Class<?>, List<MethodWrapper>> METHOD_CACHE = new ConcurrentHashMap<>();
 
+    /**
+     * Caches the attribute accessors of a given class by attribute name,
+     * or {@link #NOT_INDEXED} if the class overrides {@link Node#getXPathAttributesIterator()}.
+     */
+    private static final ConcurrentMap<Class<?>, Map<String, MethodWrapper>> ATTRIBUTE_TABLES = new ConcurrentHashMap<>();
+    private static final Map<String, MethodWrapper> NOT_INDEXED = new HashMap<>();
+
     /* Constants used to determine which methods are accessors */
     private static final Set<Class<?>> CONSIDERED_RETURN_TYPES
             = new HashSet<>(Arrays.<Class<?>>asList(Integer.TYPE, Boolean.TYPE, Double.TYPE, String.class,
@@ -60,6 +91,7 @@ public class AttributeAxisIterator implements Iterator<Attribute> {
                                       "getScope"));
 
     /* Iteration variables */
+    private final List<MethodWrapper> wrappers;
     private final Iterator<MethodWrapper> iterator;
     private final Node node;
 
@@ -71,20 +103,75 @@ public class AttributeAxisIterator implements Iterator<Attribute> {
      */
     public AttributeAxisIterator(Node contextNode) {
         this.node = contextNode;
-        this.iterator = METHOD_CACHE.computeIfAbsent(contextNode.getClass(), this::getWrappersForClass).iterator();
+        this.wrappers = METHOD_CACHE.computeIfAbsent(contextNode.getClass(), this::getWrappersForClass);
+        this.iterator = wrappers.iterator();
+    }
+
+    /**
+     * Returns the attribute of the node that has the given name, or null
+     * if there is none. This finds the same attribute as {@link Node#getXPathAttributesIterator()}.
+     * If the node doesn't override that method, the accessor of the attribute
+     * is looked up in a table that is computed once for each node class,
+     * and other attributes are not created.
+     *
+     * @param node Node
+     * @param name Name of the attribute
+     */
+    public static @Nullable Attribute findAttribute(Node node, String name) {
+        Map<String, MethodWrapper> table = ATTRIBUTE_TABLES.computeIfAbsent(node.getClass(), k -> makeAttributeTable(node));
+        if (table == NOT_INDEXED) { // NOPMD CompareObjectsWithEquals
+            Attribute found = null;
+            Iterator<Attribute> iterator = node.getXPathAttributesIterator();
+            while (iterator.hasNext()) {
+                Attribute attribute = iterator.next();
+                if (attribute.getName().equals(name)) {
+                    // the last one wins, like when they're collected in a map
+                    found = attribute;
+                }
+            }
+            return found;
+        }
+        MethodWrapper m = table.get(name);
+        return m == null ? null : getAttribute(node, m, METHOD_CACHE.get(node.getClass()).size());
+    }
+
+    private static Attribute getAttribute(Node node, MethodWrapper m, int numAttributes) {
+        Attribute[] attributes = node.getUserMap().computeIfAbsent(ATTRIBUTES_KEY, () -> new Attribute[numAttributes]);
+        Attribute attribute = attributes[m.slot];
+        if (attribute == null) {
+            attribute = m.accessor != null ? new Attribute(node, m.name, m.accessor, m.method)
+                                           : new Attribute(node, m.name, m.methodHandle, m.method);
+            attributes[m.slot] = attribute;
+        }
+        return attribute;
+    }
+
+    private static Map<String, MethodWrapper> makeAttributeTable(Node node) {
+        try {
+            if (node.getClass().getMethod("getXPathAttributesIterator").getDeclaringClass() != Node.class) {
+                return NOT_INDEXED;
+            }
+        } catch (NoSuchMethodException e) {
+            throw AssertionUtil.shouldNotReachHere("Node method should exist " + e);
+        }
+        Map<String, MethodWrapper> table = new HashMap<>();
+        new AttributeAxisIterator(node).iterator.forEachRemaining(m -> table.put(m.name, m));
+        return table;
     }
 
     private List<MethodWrapper> getWrappersForClass(Class<?> nodeClass) {
-        return Arrays.stream(nodeClass.getMethods())
-                     .filter(m -> isAttributeAccessor(nodeClass, m))
-                     .map(m -> {
-                         try {
-                             return new MethodWrapper(m);
-                         } catch (IllegalAccessException e) {
-                             throw AssertionUtil.shouldNotReachHere("Method should be accessible " + e);
-                         }
-                     })
-                     .collect(Collectors.toList());
+        List<Method> accessors = Arrays.stream(nodeClass.getMethods())
+                                       .filter(m -> isAttributeAccessor(nodeClass, m))
+                                       .collect(Collectors.toList());
+        List<MethodWrapper> result = new ArrayList<>(accessors.size());
+        for (Method m : accessors) {
+            try {
+                result.add(new MethodWrapper(m, result.size()));
+            } catch (IllegalAccessException e) {
+                throw AssertionUtil.shouldNotReachHere("Method should be accessible " + e);
+            }
+        }
+        return result;
     }
 
     /**
@@ -152,7 +239,7 @@ public class AttributeAxisIterator implements Iterator<Attribute> {
     @Override
     public Attribute next() {
         MethodWrapper m = iterator.next();
-        return new Attribute(node, m.name, m.methodHandle, m.method);
+        return getAttribute(node, m, wrappers.size());
     }
 
 
@@ -171,15 +258,54 @@ public class AttributeAxisIterator implements Iterator<Attribute> {
     private static class MethodWrapper {
         static final Lookup LOOKUP = MethodHandles.publicLookup();
         private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Node.class);
+        /**
+         * Compiled accessors by method. Methods that are inherited by
+         * several node classes are equal, so they share their accessor.
+         */
+        private static final ConcurrentMap<Method, Optional<Function<Node, Object>>> ACCESSORS = new ConcurrentHashMap<>();
         public MethodHandle methodHandle;
+        /** Compiled accessor, null if it couldn't be created. */
+        public @Nullable Function<Node, Object> accessor;
         public Method method;
         public String name;
+        /** Index of the attribute among those of the node class. */
+        public int slot;
 
 
-        MethodWrapper(Method m) throws IllegalAccessException {
+        MethodWrapper(Method m, int slot) throws IllegalAccessException {
             this.method = m;
             this.methodHandle = LOOKUP.unreflect(m).asType(GETTER_TYPE);
+            this.accessor = ACCESSORS.computeIfAbsent(m, k -> Optional.ofNullable(makeAccessor(k))).orElse(null);
             this.name = truncateMethodName(m.getName());
+            this.slot = slot;
+        }
+
+        /**
+         * Creates a function that calls the accessor directly, which is
+         * cheaper than invoking the method handle. The function is defined
+         * next to this class, so the declaring class of the accessor must
+         * be public and visible from here.
+         */
+        @SuppressWarnings("unchecked")
+        private static @Nullable Function<Node, Object> makeAccessor(Method m) {
+            Class<?> declaringClass = m.getDeclaringClass();
+            try {
+                if (!Modifier.isPublic(declaringClass.getModifiers())
+                    || Class.forName(declaringClass.getName(), false, AttributeAxisIterator.class.getClassLoader()) != declaringClass) {
+                    return null;
+                }
+                Lookup lookup = MethodHandles.lookup();
+                CallSite site = LambdaMetafactory.metafactory(lookup,
+                                                              "apply",
+                                                              MethodType.methodType(Function.class),
+                                                              MethodType.methodType(Object.class, Object.class),
+                                                              lookup.unreflect(m),
+                                                              MethodType.methodType(Object.class, declaringClass));
+                return (Function<Node, Object>) site.getTarget().invoke();
+            } catch (Throwable e) { // NOPMD
+                LOG.debug("Cannot compile attribute accessor {}, using a method handle", m, e);
+                return null;
+            }
         }
 
 
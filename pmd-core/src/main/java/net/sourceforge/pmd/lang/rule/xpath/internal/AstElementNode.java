@@ -18,6 +18,7 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.RootNode;
 import net.sourceforge.pmd.lang.rule.xpath.Attribute;
+import net.sourceforge.pmd.lang.rule.xpath.impl.AttributeAxisIterator;
 import net.sourceforge.pmd.util.CollectionUtil;
 
 import net.sf.saxon.Configuration;
@@ -45,7 +46,6 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
 
     private final List<AstElementNode> children;
     private @Nullable Map<String, AstAttributeNode> attributes;
-    private @Nullable Map<String, Attribute> lightAttributes;
 
 
     AstElementNode(AstTreeInfo document,
@@ -58,6 +58,7 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
         this.treeInfo = document;
         this.wrappedNode = wrappedNode;
         this.id = idGenerator.getAndIncrement();
+        document.addWrapper(this);
 
         this.children = new ArrayList<>(wrappedNode.getNumChildren());
 
@@ -99,15 +100,6 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
         return attributes;
     }
 
-    public Map<String, Attribute> getLightAttributes() {
-        if (lightAttributes == null) {
-            lightAttributes = new HashMap<>();
-            getUnderlyingNode().getXPathAttributesIterator()
-                               .forEachRemaining(it -> lightAttributes.put(it.getName(), it));
-        }
-        return lightAttributes;
-    }
-
     @Override
     public boolean hasChildNodes() {
         return !children.isEmpty();
@@ -175,7 +167,9 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
 
     @Override
     public String getAttributeValue(String uri, String local) {
-        Attribute attribute = getLightAttributes().get(local);
+        // the attribute nodes are only created for @* and attribute::node() queries
+        Attribute attribute = attributes != null ? getAttributeFromNodes(local)
+                                                 : AttributeAxisIterator.findAttribute(getUnderlyingNode(), local);
         if (attribute != null) {
             getTreeInfo().getLogger().recordUsageOf(attribute);
             return attribute.getStringValue();
@@ -184,6 +178,11 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
     }
 
 
+    private @Nullable Attribute getAttributeFromNodes(String local) {
+        AstAttributeNode node = getAttributes().get(local);
+        return node == null ? null : node.getUnderlyingNode();
+    }
+
     @Override
     public int getLineNumber() {
         return wrappedNode.getBeginLine();
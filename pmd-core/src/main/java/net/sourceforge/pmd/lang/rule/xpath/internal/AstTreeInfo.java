@@ -4,11 +4,8 @@
 
 package net.sourceforge.pmd.lang.rule.xpath.internal;
 
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
+import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.apache.commons.lang3.mutable.MutableInt;
 
@@ -25,19 +22,12 @@ import net.sf.saxon.om.GenericTreeInfo;
 public final class AstTreeInfo extends GenericTreeInfo {
 
     private DeprecatedAttrLogger logger;
-    private final Map<Node, AstElementNode> wrapperCache = new LinkedHashMap<Node, AstElementNode>() {
-        @Override
-        protected boolean removeEldestEntry(Entry eldest) {
-            /*
-            hit ratio depending on cache size:
-            512: 61%
-            1024: 75%
-            2048: 82%
-            unbounded: 85%
-             */
-            return size() > 1024;
-        }
-    };
+    /**
+     * Wrapper of each node. Wrappers are created eagerly for the whole
+     * tree, so this is complete once the constructor returns. This tree
+     * is shared by all XPath rules that run on the file.
+     */
+    private final Map<Node, AstElementNode> wrappers = new IdentityHashMap<>();
 
     /**
      * Builds an AstDocument, with the given node as the root.
@@ -53,48 +43,17 @@ public final class AstTreeInfo extends GenericTreeInfo {
         setRootNode(new AstDocumentNode(this, idGenerator, node, configuration));
     }
 
-    public AstElementNode findWrapperFor(Node node) {
-        AstElementNode element = wrapperCache.get(node);
-        if (element == null) {
-            element = findWrapperImpl(node);
-            wrapperCache.put(node, element);
-            assert element.getUnderlyingNode() == node : "Incorrect wrapper " + element + " for " + node;
-        }
-        return element;
+    void addWrapper(AstElementNode element) {
+        wrappers.put(element.getUnderlyingNode(), element);
     }
 
-    // for the RootNode, this returns the document node
-    private AstElementNode findWrapperImpl(Node node) {
-        // find the closest cached ancestor
-        AstElementNode cur = getRootNode().getRootElement();
-        List<Node> ancestors = new ArrayList<>();
-        for (Node ancestor : node.ancestorsOrSelf()) {
-            AstElementNode wrappedAncestor = wrapperCache.get(ancestor);
-            ancestors.add(ancestor);
-            if (wrappedAncestor != null) {
-                cur = wrappedAncestor;
-                break;
-            }
-        }
-
-        // then go down the tree from that ancestor
-
-        // note we skip the first, who is the topmost ancestor
-        for (int i = ancestors.size() - 2; i >= 0; i--) {
-            Node ancestor = ancestors.get(i);
-            int idx = ancestor.getIndexInParent();
-            if (idx >= cur.getChildren().size()) {
-                throw new IllegalArgumentException("Node is not part of this tree " + node);
-            }
-
-            cur = cur.getChildren().get(idx);
-            wrapperCache.put(ancestor, cur);
-        }
-        if (cur.getUnderlyingNode() != node) {
-            // may happen with the root
+    // for the RootNode, this returns the root element, not the document node
+    public AstElementNode findWrapperFor(Node node) {
+        AstElementNode element = wrappers.get(node);
+        if (element == null) {
             throw new IllegalArgumentException("Node is not part of this tree " + node);
         }
-        return cur;
+        return element;
     }
 
     /**
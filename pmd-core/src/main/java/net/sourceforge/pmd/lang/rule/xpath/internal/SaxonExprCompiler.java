@@ -0,0 +1,664 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.xpath.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.ast.NodeStream;
+import net.sourceforge.pmd.lang.rule.xpath.Attribute;
+import net.sourceforge.pmd.lang.rule.xpath.impl.AbstractXPathFunctionDef;
+import net.sourceforge.pmd.lang.rule.xpath.impl.AttributeAxisIterator;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SharedSubexpressions.Subexpression;
+
+import net.sf.saxon.expr.AndExpression;
+import net.sf.saxon.expr.Atomizer;
+import net.sf.saxon.expr.AttributeGetter;
+import net.sf.saxon.expr.AxisExpression;
+import net.sf.saxon.expr.BooleanExpression;
+import net.sf.saxon.expr.CastExpression;
+import net.sf.saxon.expr.ContextItemExpression;
+import net.sf.saxon.expr.Expression;
+import net.sf.saxon.expr.FilterExpression;
+import net.sf.saxon.expr.GeneralComparison20;
+import net.sf.saxon.expr.Literal;
+import net.sf.saxon.expr.Operand;
+import net.sf.saxon.expr.OrExpression;
+import net.sf.saxon.expr.SlashExpression;
+import net.sf.saxon.expr.SystemFunctionCall;
+import net.sf.saxon.expr.ValueComparison;
+import net.sf.saxon.expr.parser.Token;
+import net.sf.saxon.expr.sort.UntypedNumericComparer;
+import net.sf.saxon.functions.IntegratedFunctionCall;
+import net.sf.saxon.lib.ExtensionFunctionDefinition;
+import net.sf.saxon.om.AxisInfo;
+import net.sf.saxon.om.GroundedValue;
+import net.sf.saxon.om.Item;
+import net.sf.saxon.pattern.AnyNodeTest;
+import net.sf.saxon.pattern.NameTest;
+import net.sf.saxon.pattern.NodeKindTest;
+import net.sf.saxon.pattern.NodeTest;
+import net.sf.saxon.type.BuiltInAtomicType;
+import net.sf.saxon.type.Type;
+import net.sf.saxon.value.BooleanValue;
+import net.sf.saxon.value.IntegerValue;
+import net.sf.saxon.value.StringValue;
+import net.sf.saxon.value.UntypedAtomicValue;
+
+/**
+ * Compiles Saxon expressions to Java code that walks the AST directly,
+ * without wrapping it into a Saxon tree. This supports a subset of XPath
+ * that is common in rules:
+ * <ul>
+ * <li>Paths on the self, child, descendant and ancestor axes, with
+ * name tests, and predicates;
+ * <li>Comparisons of attributes and literals;
+ * <li>{@code and}, {@code or}, {@code not}, {@code exists}, {@code empty}
+ * and {@code count};
+ * <li>Extension functions that {@linkplain AbstractXPathFunctionDef#compileContextNodeTest(List) can be compiled}.
+ * </ul>
+ *
+ * <p>Expressions outside of this subset are not compiled, and are left
+ * to Saxon. Some attribute values, eg doubles, cannot be handled at runtime
+ * exactly like Saxon would. In that case the compiled query throws
+ * {@link FallbackToSaxon}, and the caller should evaluate the expression
+ * with Saxon instead.
+ *
+ * <p>Predicates and attribute reads are {@linkplain SharedSubexpressions shared}
+ * with the queries of other rules.
+ */
+final class SaxonExprCompiler {
+
+    /** Lexical form of an {@code xs:double} that is parsed the same by Java. */
+    private static final Pattern DOUBLE_LITERAL = Pattern.compile("[-+]?(\\d+(\\.\\d*)?|\\.\\d+)([eE][-+]?\\d+)?");
+
+    private final DeprecatedAttrLogger attrLogger;
+    private final SharedSubexpressions sharedSubexpressions;
+    private final List<Subexpression<?>> usedSubexpressions = new ArrayList<>();
+
+    SaxonExprCompiler(DeprecatedAttrLogger attrLogger, SharedSubexpressions sharedSubexpressions) {
+        this.attrLogger = attrLogger;
+        this.sharedSubexpressions = sharedSubexpressions;
+    }
+
+    /**
+     * A compiled expression that selects nodes, relative to a context node.
+     */
+    @FunctionalInterface
+    interface NodeQuery {
+
+        /**
+         * Returns the selected nodes. They may contain duplicates, and
+         * may be out of document order.
+         *
+         * @throws FallbackToSaxon If the expression should be evaluated by Saxon
+         */
+        NodeStream<? extends Node> evaluate(Node context);
+    }
+
+    /**
+     * Thrown by a compiled query when it cannot evaluate its expression
+     * exactly like Saxon would. This has no stack trace.
+     */
+    static final class FallbackToSaxon extends RuntimeException {
+
+        static final FallbackToSaxon INSTANCE = new FallbackToSaxon();
+
+        private FallbackToSaxon() {
+            super("Expression must be evaluated by Saxon", null, false, false);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Values {
+
+        List<Object> evaluate(Node context);
+    }
+
+    /** An untyped atomic value, ie the string value of an attribute. */
+    private static final class Untyped {
+
+        static final Untyped EMPTY = new Untyped("");
+
+        final String text;
+
+        Untyped(String text) {
+            this.text = text;
+        }
+    }
+
+    private enum Op {
+        EQ, NE, LT, LE, GT, GE;
+
+        boolean test(int comparison) {
+            switch (this) {
+            case EQ: return comparison == 0;
+            case NE: return comparison != 0;
+            case LT: return comparison < 0;
+            case LE: return comparison <= 0;
+            case GT: return comparison > 0;
+            default: return comparison >= 0;
+            }
+        }
+
+        static @Nullable Op fromToken(int token) {
+            switch (token) {
+            case Token.EQUALS: case Token.FEQ: return EQ;
+            case Token.NE: case Token.FNE: return NE;
+            case Token.LT: case Token.FLT: return LT;
+            case Token.LE: case Token.FLE: return LE;
+            case Token.GT: case Token.FGT: return GT;
+            case Token.GE: case Token.FGE: return GE;
+            default: return null;
+            }
+        }
+    }
+
+
+    /**
+     * Compiles an expression that selects nodes. Returns null if the
+     * expression is not supported.
+     */
+    @Nullable NodeQuery compile(Expression expr) {
+        return compilePath(expr);
+    }
+
+    /**
+     * Records that the compiled queries use their shared subexpressions.
+     * This is only called if the queries are used, so that the other
+     * rules don't cache the values of subexpressions needlessly.
+     */
+    void commitSharedSubexpressions() {
+        for (Subexpression<?> subexpression : usedSubexpressions) {
+            subexpression.addUser(attrLogger);
+        }
+        usedSubexpressions.clear();
+    }
+
+    private <T> Subexpression<T> share(Object key) {
+        Subexpression<T> subexpression = sharedSubexpressions.get(key);
+        usedSubexpressions.add(subexpression);
+        return subexpression;
+    }
+
+    private Predicate<Node> shareCondition(Expression expr, Predicate<Node> condition) {
+        // Saxon compares expressions structurally, the string form of an
+        // expression is ambiguous, eg it does not escape string literals.
+        // The functions are part of the key, their names may be ambiguous
+        Subexpression<Boolean> subexpression = share(Arrays.asList("[]", expr, functionsIn(expr, new ArrayList<>())));
+        return node -> subexpression.getValue(node, condition::test);
+    }
+
+    private Function<Node, @Nullable Attribute> shareAttributeLookup(String name) {
+        Subexpression<Optional<Attribute>> subexpression = share(Arrays.asList("@", name));
+        Function<Node, Optional<Attribute>> lookup = node -> {
+            Attribute attribute = AttributeAxisIterator.findAttribute(node, name);
+            if (attribute == null) {
+                return Optional.empty();
+            }
+            // the value may be reused by the other queries, which record it too
+            subexpression.recordUsageOf(attribute);
+            return Optional.of(attribute);
+        };
+        return node -> subexpression.getValue(node, lookup).orElse(null);
+    }
+
+    private static List<ExtensionFunctionDefinition> functionsIn(Expression expr, List<ExtensionFunctionDefinition> result) {
+        if (expr instanceof IntegratedFunctionCall) {
+            result.add(((IntegratedFunctionCall) expr).getFunction().getDefinition());
+        }
+        for (Operand operand : expr.operands()) {
+            functionsIn(operand.getChildExpression(), result);
+        }
+        return result;
+    }
+
+    private @Nullable NodeQuery compilePath(Expression expr) {
+        if (expr instanceof ContextItemExpression) {
+            return NodeStream::of;
+        } else if (expr instanceof AxisExpression) {
+            return compileAxis((AxisExpression) expr);
+        } else if (expr instanceof SlashExpression) {
+            NodeQuery start = compilePath(((SlashExpression) expr).getStart());
+            NodeQuery step = compilePath(((SlashExpression) expr).getStep());
+            if (start == null || step == null) {
+                return null;
+            }
+            return context -> start.evaluate(context).flatMap(step::evaluate);
+        } else if (expr instanceof FilterExpression) {
+            NodeQuery base = compilePath(((FilterExpression) expr).getBase());
+            // only boolean predicates are compiled, so this is never positional
+            Expression filterExpr = ((FilterExpression) expr).getFilter();
+            Predicate<Node> filter = compileCondition(filterExpr);
+            if (base == null || filter == null) {
+                return null;
+            }
+            Predicate<Node> sharedFilter = shareCondition(filterExpr, filter);
+            return context -> base.evaluate(context).filter(sharedFilter);
+        }
+        return null;
+    }
+
+    private @Nullable NodeQuery compileAxis(AxisExpression axis) {
+        NodeTest test = axis.getNodeTest();
+        Predicate<Node> nodeFilter;
+        if (test == null || test instanceof AnyNodeTest) {
+            nodeFilter = null;
+        } else if (test == NodeKindTest.ELEMENT) {
+            nodeFilter = SaxonExprCompiler::isElement;
+        } else if (test instanceof NameTest && test.getPrimitiveType() == Type.ELEMENT
+                   && ((NameTest) test).getNamespaceURI().isEmpty()) {
+            String name = ((NameTest) test).getLocalPart();
+            nodeFilter = node -> name.equals(node.getXPathNodeName());
+        } else {
+            return null;
+        }
+
+        NodeQuery query;
+        switch (axis.getAxis()) {
+        case AxisInfo.SELF:
+            query = NodeStream::of;
+            break;
+        case AxisInfo.CHILD:
+            query = Node::children;
+            break;
+        case AxisInfo.DESCENDANT:
+            query = context -> context.descendants().crossFindBoundaries();
+            break;
+        case AxisInfo.DESCENDANT_OR_SELF:
+            query = context -> context.descendantsOrSelf().crossFindBoundaries();
+            break;
+        case AxisInfo.PARENT:
+        case AxisInfo.ANCESTOR:
+        case AxisInfo.ANCESTOR_OR_SELF:
+            if (nodeFilter == null) {
+                // would select the document node above the root
+                return null;
+            }
+            query = axis.getAxis() == AxisInfo.PARENT ? context -> NodeStream.of(context.getParent())
+                    : axis.getAxis() == AxisInfo.ANCESTOR ? Node::ancestors
+                    : Node::ancestorsOrSelf;
+            break;
+        default:
+            return null;
+        }
+
+        if (nodeFilter == null) {
+            return query;
+        }
+        NodeQuery unfiltered = query;
+        return context -> unfiltered.evaluate(context).filter(nodeFilter);
+    }
+
+    /** Same as {@link AstElementNode}, nodes with these names are not elements. */
+    private static boolean isElement(Node node) {
+        String name = node.getXPathNodeName();
+        return !"#text".equals(name) && !"#comment".equals(name);
+    }
+
+
+    /**
+     * Compiles an expression whose effective boolean value is used, eg
+     * in a predicate. Returns null if the expression is not supported.
+     */
+    private @Nullable Predicate<Node> compileCondition(Expression expr) {
+        if (expr instanceof AndExpression || expr instanceof OrExpression) {
+            Predicate<Node> lhs = compileCondition(((BooleanExpression) expr).getLhsExpression());
+            Predicate<Node> rhs = compileCondition(((BooleanExpression) expr).getRhsExpression());
+            if (lhs == null || rhs == null) {
+                return null;
+            }
+            return expr instanceof AndExpression ? lhs.and(rhs) : lhs.or(rhs);
+        } else if (expr instanceof ValueComparison) {
+            return compileValueComparison((ValueComparison) expr);
+        } else if (expr instanceof GeneralComparison20) {
+            return compileGeneralComparison((GeneralComparison20) expr);
+        } else if (expr instanceof SystemFunctionCall) {
+            return compileBooleanFunction((SystemFunctionCall) expr);
+        } else if (expr instanceof IntegratedFunctionCall) {
+            return compileExtensionFunction((IntegratedFunctionCall) expr);
+        } else if (expr instanceof Literal) {
+            GroundedValue value = ((Literal) expr).getValue();
+            if (value instanceof BooleanValue) {
+                boolean b = ((BooleanValue) value).getBooleanValue();
+                return context -> b;
+            }
+            return null;
+        }
+        NodeQuery path = compilePath(expr);
+        return path == null ? null : context -> path.evaluate(context).nonEmpty();
+    }
+
+    private @Nullable Predicate<Node> compileBooleanFunction(SystemFunctionCall call) {
+        Expression[] args = call.getArguments();
+        switch (call.getFunctionName().getLocalPart()) {
+        case "not": {
+            Predicate<Node> arg = args.length == 1 ? compileCondition(args[0]) : null;
+            return arg == null ? null : arg.negate();
+        }
+        case "boolean":
+            return args.length == 1 ? compileCondition(args[0]) : null;
+        case "exists":
+        case "empty": {
+            Predicate<Node> exists = args.length == 1 ? compileExists(args[0]) : null;
+            if (exists == null) {
+                return null;
+            }
+            return "exists".equals(call.getFunctionName().getLocalPart()) ? exists : exists.negate();
+        }
+        default:
+            return null;
+        }
+    }
+
+    private @Nullable Predicate<Node> compileExists(Expression expr) {
+        if (expr instanceof AxisExpression && ((AxisExpression) expr).getAxis() == AxisInfo.ATTRIBUTE) {
+            String name = getAttributeName((AxisExpression) expr);
+            if (name == null) {
+                return null;
+            }
+            Function<Node, @Nullable Attribute> lookup = shareAttributeLookup(name);
+            return context -> lookup.apply(context) != null;
+        }
+        NodeQuery path = compilePath(expr);
+        return path == null ? null : context -> path.evaluate(context).nonEmpty();
+    }
+
+    private @Nullable Predicate<Node> compileExtensionFunction(IntegratedFunctionCall call) {
+        ExtensionFunctionDefinition definition = call.getFunction().getDefinition();
+        if (!(definition instanceof AbstractXPathFunctionDef)) {
+            return null;
+        }
+        List<String> arguments = new ArrayList<>();
+        for (Expression arg : call.getArguments()) {
+            if (!(arg instanceof Literal) || ((Literal) arg).getValue().getClass() != StringValue.class) {
+                return null;
+            }
+            arguments.add(((StringValue) ((Literal) arg).getValue()).getStringValue());
+        }
+        return ((AbstractXPathFunctionDef) definition).compileContextNodeTest(Collections.unmodifiableList(arguments));
+    }
+
+
+    private @Nullable Predicate<Node> compileValueComparison(ValueComparison comparison) {
+        Op op = Op.fromToken(comparison.getOperator());
+        Values lhs = compileValues(comparison.getLhsExpression());
+        Values rhs = compileValues(comparison.getRhsExpression());
+        if (op == null || lhs == null || rhs == null) {
+            return null;
+        }
+        boolean untypedNumeric = comparison.getAtomicComparer() instanceof UntypedNumericComparer;
+        BooleanValue whenEmpty = comparison.getResultWhenEmpty();
+        boolean resultWhenEmpty = whenEmpty != null && whenEmpty.getBooleanValue();
+
+        return context -> {
+            List<Object> left = lhs.evaluate(context);
+            List<Object> right = rhs.evaluate(context);
+            if (left.isEmpty() || right.isEmpty()) {
+                return resultWhenEmpty;
+            } else if (left.size() > 1 || right.size() > 1) {
+                throw FallbackToSaxon.INSTANCE; // that's an error
+            }
+            return op.test(compare(left.get(0), right.get(0), false, untypedNumeric));
+        };
+    }
+
+    private @Nullable Predicate<Node> compileGeneralComparison(GeneralComparison20 comparison) {
+        Op op = Op.fromToken(comparison.getOperator());
+        Values lhs = compileValues(comparison.getLhsExpression());
+        Values rhs = compileValues(comparison.getRhsExpression());
+        if (op == null || lhs == null || rhs == null) {
+            return null;
+        }
+        return context -> {
+            List<Object> right = rhs.evaluate(context);
+            for (Object left : lhs.evaluate(context)) {
+                for (Object r : right) {
+                    if (op.test(compare(left, r, true, false))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        };
+    }
+
+
+    /**
+     * Compiles an expression that evaluates to a sequence of atomic
+     * values, represented as String (xs:string), {@link Untyped}, Boolean
+     * or Long (xs:integer).
+     */
+    private @Nullable Values compileValues(Expression expr) {
+        if (expr instanceof Literal) {
+            List<Object> values = new ArrayList<>();
+            for (Item item : ((Literal) expr).getValue().asIterable()) {
+                Object value = literalValue(item);
+                if (value == null) {
+                    return null;
+                }
+                values.add(value);
+            }
+            List<Object> constant = Collections.unmodifiableList(values);
+            return context -> constant;
+        } else if (expr instanceof AttributeGetter) {
+            // the string value of the attribute, as an untyped atomic value
+            String name = ((AttributeGetter) expr).getAttributeName().getLocalPart();
+            if (!((AttributeGetter) expr).getAttributeName().getURI().isEmpty()) {
+                return null;
+            }
+            Function<Node, @Nullable Attribute> lookup = shareAttributeLookup(name);
+            return context -> {
+                Attribute attribute = lookup.apply(context);
+                if (attribute == null) {
+                    return Collections.emptyList();
+                }
+                return Collections.singletonList(new Untyped(attribute.getStringValue()));
+            };
+        } else if (expr instanceof CastExpression) {
+            return compileCast((CastExpression) expr);
+        } else if (expr instanceof Atomizer) {
+            return compileAtomizer(((Atomizer) expr).getBaseExpression());
+        } else if (expr instanceof SystemFunctionCall
+            && "count".equals(((SystemFunctionCall) expr).getFunctionName().getLocalPart())
+            && ((SystemFunctionCall) expr).getArity() == 1) {
+            NodeQuery path = compilePath(((SystemFunctionCall) expr).getArg(0));
+            return path == null ? null : context -> Collections.singletonList((long) path.evaluate(context).count());
+        }
+        return null;
+    }
+
+    private static @Nullable Object literalValue(Item item) {
+        if (item instanceof UntypedAtomicValue) {
+            return new Untyped(item.getStringValue());
+        } else if (item.getClass() == StringValue.class) {
+            return item.getStringValue();
+        } else if (item instanceof BooleanValue) {
+            return ((BooleanValue) item).getBooleanValue();
+        } else if (item instanceof IntegerValue && ((IntegerValue) item).asBigInteger().bitLength() < 64) {
+            return ((IntegerValue) item).asBigInteger().longValue();
+        }
+        return null;
+    }
+
+    private @Nullable Values compileCast(CastExpression cast) {
+        Values base = compileValues(cast.getBaseExpression());
+        if (base == null) {
+            return null;
+        }
+        boolean toString;
+        if (cast.getTargetType() == BuiltInAtomicType.STRING) {
+            toString = true;
+        } else if (cast.getTargetType() == BuiltInAtomicType.BOOLEAN) {
+            toString = false;
+        } else {
+            return null;
+        }
+        boolean allowsEmpty = cast.allowsEmpty();
+
+        return context -> {
+            List<Object> values = base.evaluate(context);
+            if (values.isEmpty() && allowsEmpty) {
+                return values;
+            } else if (values.size() != 1) {
+                throw FallbackToSaxon.INSTANCE; // that's an error
+            }
+            Object value = values.get(0);
+            return Collections.singletonList(toString ? castToString(value) : castToBoolean(value));
+        };
+    }
+
+    private static String castToString(Object value) {
+        return value instanceof Untyped ? ((Untyped) value).text : value.toString();
+    }
+
+    private static Boolean castToBoolean(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if (value instanceof Long) {
+            return (Long) value != 0;
+        }
+        switch (castToString(value).trim()) {
+        case "true":
+        case "1":
+            return true;
+        case "false":
+        case "0":
+            return false;
+        default:
+            throw FallbackToSaxon.INSTANCE; // that's an error
+        }
+    }
+
+    /**
+     * Compiles the atomization of attributes, eg {@code A/@Name}. Their
+     * typed value is used, like {@link DomainConversion} does it.
+     */
+    private @Nullable Values compileAtomizer(Expression base) {
+        NodeQuery nodes;
+        AxisExpression attributeStep;
+        if (base instanceof AxisExpression) {
+            nodes = NodeStream::of;
+            attributeStep = (AxisExpression) base;
+        } else if (base instanceof SlashExpression && ((SlashExpression) base).getStep() instanceof AxisExpression) {
+            nodes = compilePath(((SlashExpression) base).getStart());
+            attributeStep = (AxisExpression) ((SlashExpression) base).getStep();
+        } else {
+            return null;
+        }
+        String name = attributeStep.getAxis() == AxisInfo.ATTRIBUTE ? getAttributeName(attributeStep) : null;
+        if (nodes == null || name == null) {
+            return null;
+        }
+
+        Function<Node, @Nullable Attribute> lookup = shareAttributeLookup(name);
+        return context -> {
+            List<Object> values = new ArrayList<>(1);
+            nodes.evaluate(context).forEach(node -> {
+                Attribute attribute = lookup.apply(node);
+                if (attribute != null) {
+                    addTypedValue(attribute.getValue(), values);
+                }
+            });
+            return values;
+        };
+    }
+
+    private static void addTypedValue(Object value, List<Object> values) {
+        if (value == null) {
+            values.add(Untyped.EMPTY);
+        } else if (value instanceof String || value instanceof Character
+            || value instanceof Enum || value instanceof Pattern) {
+            values.add(String.valueOf(value));
+        } else if (value instanceof Boolean) {
+            values.add(value);
+        } else if (value instanceof Integer || value instanceof Long) {
+            values.add(((Number) value).longValue());
+        } else if (value instanceof Collection) {
+            for (Object item : (Collection<?>) value) {
+                addTypedValue(item, values);
+            }
+        } else {
+            // eg doubles, their conversion to string is different
+            throw FallbackToSaxon.INSTANCE;
+        }
+    }
+
+    private static @Nullable String getAttributeName(AxisExpression axis) {
+        NodeTest test = axis.getNodeTest();
+        if (test instanceof NameTest && ((NameTest) test).getNamespaceURI().isEmpty()) {
+            return ((NameTest) test).getLocalPart();
+        }
+        return null;
+    }
+
+
+    /**
+     * Compares two atomic values like Saxon. Untyped values are converted
+     * to the type of the other operand in general comparisons, otherwise
+     * they're compared as strings, unless the comparison is numeric.
+     */
+    private static int compare(Object left, Object right, boolean general, boolean untypedNumeric) {
+        if (left instanceof Untyped || right instanceof Untyped) {
+            Object typed = left instanceof Untyped ? right : left;
+            if (typed instanceof Untyped || typed instanceof String) {
+                return compareStrings(castToString(left), castToString(right));
+            } else if (typed instanceof Long && (general || untypedNumeric)) {
+                return Double.compare(toDouble(left), toDouble(right));
+            } else if (typed instanceof Boolean && general) {
+                return Boolean.compare(castToBoolean(left), castToBoolean(right));
+            }
+        } else if (left instanceof String && right instanceof String) {
+            return compareStrings((String) left, (String) right);
+        } else if (left instanceof Boolean && right instanceof Boolean) {
+            return Boolean.compare((Boolean) left, (Boolean) right);
+        } else if (left instanceof Long && right instanceof Long) {
+            return Long.compare((Long) left, (Long) right);
+        }
+        throw FallbackToSaxon.INSTANCE;
+    }
+
+    private static int compareStrings(String left, String right) {
+        // only equality is the same as with the codepoint collation
+        if (left.equals(right)) {
+            return 0;
+        }
+        int cmp = left.compareTo(right);
+        if (isBmpOnly(left) && isBmpOnly(right)) {
+            return cmp;
+        }
+        throw FallbackToSaxon.INSTANCE;
+    }
+
+    private static boolean isBmpOnly(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isSurrogate(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double toDouble(Object value) {
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        String text = castToString(value).trim();
+        if (!DOUBLE_LITERAL.matcher(text).matches()) {
+            throw FallbackToSaxon.INSTANCE; // eg INF, or an error
+        }
+        return Double.parseDouble(text);
+    }
+}
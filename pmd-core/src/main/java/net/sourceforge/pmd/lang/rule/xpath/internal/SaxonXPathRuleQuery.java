@@ -5,13 +5,16 @@
 package net.sourceforge.pmd.lang.rule.xpath.internal;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang3.exception.ContextedRuntimeException;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,6 +25,8 @@ import net.sourceforge.pmd.lang.rule.xpath.PmdXPathException;
 import net.sourceforge.pmd.lang.rule.xpath.PmdXPathException.Phase;
 import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
 import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonExprCompiler.FallbackToSaxon;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonExprCompiler.NodeQuery;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.util.DataMap;
 import net.sourceforge.pmd.util.DataMap.SimpleDataKey;
@@ -74,24 +79,81 @@ public class SaxonXPathRuleQuery {
      */
     Map<String, List<Expression>> nodeNameToXPaths = new HashMap<>();
 
+    /**
+     * Union branches that have no root element, when others have one.
+     * These are evaluated from the root, while the other branches use the
+     * rule chain. Empty if the rule chain is used for all branches, or none.
+     */
+    private final List<Expression> unrootedExpressions = new ArrayList<>();
+
+    /**
+     * The other union branches, evaluated from the root. Empty unless
+     * there are {@link #unrootedExpressions}. A node selected by both
+     * kinds of branches is only reported by the rule chain.
+     */
+    private final List<Expression> rootedExpressionsFromRoot = new ArrayList<>();
+
     /**
      * Representation of an XPath query, created at {@link #initialize()} using {@link #xpathExpr}.
      */
     XPathExpression xpathExpression;
 
+    /**
+     * Compiled version of the rulechain expressions, by node name. Null
+     * if some of them couldn't be compiled, then Saxon evaluates them.
+     */
+    private Map<String, List<NodeQuery>> compiledQueries;
+
     private final DeprecatedAttrLogger attrCtx;
 
+    /** Subexpressions shared with the compiled queries of other rules. */
+    private final SharedSubexpressions sharedSubexpressions;
+
+    /** Null unless the query is profiled. */
+    private final @Nullable XPathProfiler profiler;
+
 
     public SaxonXPathRuleQuery(String xpathExpr,
                                XPathVersion version,
                                Map<PropertyDescriptor<?>, Object> properties,
                                XPathHandler xPathHandler,
                                DeprecatedAttrLogger logger) throws PmdXPathException {
+        this(xpathExpr, version, properties, xPathHandler, logger, null);
+    }
+
+    /**
+     * Creates a query. If a rule name is given, the subexpressions and
+     * the extension function calls of the query are timed with the
+     * {@link net.sourceforge.pmd.benchmark.TimeTracker}, under this name.
+     * Profiled queries are always evaluated by Saxon.
+     */
+    public SaxonXPathRuleQuery(String xpathExpr,
+                               XPathVersion version,
+                               Map<PropertyDescriptor<?>, Object> properties,
+                               XPathHandler xPathHandler,
+                               DeprecatedAttrLogger logger,
+                               @Nullable String profiledRuleName) throws PmdXPathException {
+        this(xpathExpr, version, properties, xPathHandler, logger, profiledRuleName, new SharedSubexpressions());
+    }
+
+    /**
+     * Creates a query whose compiled subexpressions are shared with the
+     * other queries created with the same {@link SharedSubexpressions}.
+     */
+    public SaxonXPathRuleQuery(String xpathExpr,
+                               XPathVersion version,
+                               Map<PropertyDescriptor<?>, Object> properties,
+                               XPathHandler xPathHandler,
+                               DeprecatedAttrLogger logger,
+                               @Nullable String profiledRuleName,
+                               SharedSubexpressions sharedSubexpressions) throws PmdXPathException {
         this.xpathExpr = xpathExpr;
         this.version = version;
         this.properties = properties;
         this.xPathHandler = xPathHandler;
         this.attrCtx = logger;
+        this.sharedSubexpressions = sharedSubexpressions;
+        this.profiler = profiledRuleName == null ? null : new XPathProfiler(profiledRuleName);
         try {
             initialize();
         } catch (XPathException e) {
@@ -109,8 +171,45 @@ public class SaxonXPathRuleQuery {
         return rulechainQueries;
     }
 
+    /**
+     * Returns true if only some branches of the query use the rule chain.
+     * The root must then be visited too, in addition to the {@linkplain #getRuleChainVisits() rule chain visits}.
+     */
+    public boolean needsRootVisit() {
+        return !unrootedExpressions.isEmpty();
+    }
+
 
     public List<Node> evaluate(final Node node) {
+        List<NodeQuery> compiled = compiledQueries == null ? null : compiledQueries.get(node.getXPathNodeName());
+        if (compiled != null && !isUnrootedRoot(node)) {
+            try {
+                return evaluateCompiled(compiled, node);
+            } catch (FallbackToSaxon ignored) {
+                // this node has values that only Saxon can handle
+            }
+        }
+        return evaluateWithSaxon(node);
+    }
+
+    private List<Node> evaluateCompiled(List<NodeQuery> queries, Node node) {
+        // sequences may contain duplicates, like with Saxon
+        final Set<Node> results = new LinkedHashSet<>();
+        for (NodeQuery query : queries) {
+            query.evaluate(node).forEach(results::add);
+        }
+        final List<Node> sortedRes = new ArrayList<>(results);
+        sortedRes.sort(RuleChainAnalyzer.documentOrderComparator());
+        return sortedRes;
+    }
+
+    // test only
+    boolean isCompiled() {
+        return compiledQueries != null;
+    }
+
+    // package-private for tests
+    List<Node> evaluateWithSaxon(final Node node) {
         final AstTreeInfo documentNode = getDocumentNodeForRootNode(node);
         documentNode.setAttrCtx(attrCtx);
         try {
@@ -121,19 +220,17 @@ public class SaxonXPathRuleQuery {
             // XPath 2.0 sequences may contain duplicates
             final Set<Node> results = new LinkedHashSet<>();
             List<Expression> expressions = getExpressionsForLocalNameOrDefault(node.getXPathNodeName());
-            for (Expression expression : expressions) {
-                @SuppressWarnings("PMD.CloseResource")
-                SequenceIterator iterator = expression.iterate(xpathDynamicContext.getXPathContextObject());
-                Item current = iterator.next();
-                while (current != null) {
-                    if (current instanceof AstNodeOwner) {
-                        results.add(((AstNodeOwner) current).getUnderlyingNode());
-                    } else {
-                        throw new XPathException("XPath rule expression returned a non-node (" + current.getClass() + "): " + current);
-                    }
-                    current = iterator.next();
+            if (isUnrootedRoot(node)) {
+                addResults(unrootedExpressions, xpathDynamicContext, results);
+                if (!results.isEmpty()) {
+                    // the rule chain visits of the other branches report these already
+                    Set<Node> reportedByRuleChain = new HashSet<>();
+                    addResults(rootedExpressionsFromRoot, xpathDynamicContext, reportedByRuleChain);
+                    results.removeAll(reportedByRuleChain);
                 }
+                expressions = nodeNameToXPaths.getOrDefault(node.getXPathNodeName(), Collections.emptyList());
             }
+            addResults(expressions, xpathDynamicContext, results);
 
             final List<Node> sortedRes = new ArrayList<>(results);
             sortedRes.sort(RuleChainAnalyzer.documentOrderComparator());
@@ -145,6 +242,27 @@ public class SaxonXPathRuleQuery {
         }
     }
 
+    private static void addResults(List<Expression> expressions, XPathDynamicContext context, Set<Node> results) throws XPathException {
+        for (Expression expression : expressions) {
+            @SuppressWarnings("PMD.CloseResource")
+            SequenceIterator iterator = expression.iterate(context.getXPathContextObject());
+            Item current = iterator.next();
+            while (current != null) {
+                if (current instanceof AstNodeOwner) {
+                    results.add(((AstNodeOwner) current).getUnderlyingNode());
+                } else {
+                    throw new XPathException("XPath rule expression returned a non-node (" + current.getClass() + "): " + current);
+                }
+                current = iterator.next();
+            }
+        }
+    }
+
+    /** Whether this is the root, and the unrooted branches must be evaluated on it. */
+    private boolean isUnrootedRoot(Node node) {
+        return !unrootedExpressions.isEmpty() && node.getParent() == null;
+    }
+
     private ContextedRuntimeException wrapException(XPathException e, Phase phase) {
         return new PmdXPathException(e, phase, xpathExpr, version);
     }
@@ -202,7 +320,7 @@ public class SaxonXPathRuleQuery {
         for (ExtensionFunctionDefinition fun : xPathHandler.getRegisteredExtensionFunctions()) {
             StructuredQName qname = fun.getFunctionQName();
             staticCtx.declareNamespace(qname.getPrefix(), qname.getURI());
-            this.configuration.registerExtensionFunction(fun);
+            this.configuration.registerExtensionFunction(profiler == null ? fun : profiler.instrument(fun));
         }
 
         final XPathEvaluator xpathEvaluator = new XPathEvaluator(configuration);
@@ -216,8 +334,6 @@ public class SaxonXPathRuleQuery {
     private void analyzeXPathForRuleChain(final XPathEvaluator xpathEvaluator) {
         final Expression expr = xpathExpression.getInternalExpression();
 
-        boolean useRuleChain = true;
-
         // First step: Split the union venn expressions into single expressions
         Iterable<Expression> subexpressions = SaxonExprTransformations.splitUnions(expr);
 
@@ -232,23 +348,63 @@ public class SaxonXPathRuleQuery {
 
             if (!rca.getRootElements().isEmpty()) {
                 rca.getRootElements().forEach(it -> addExpressionForNode(it, finalExpr));
+                rootedExpressionsFromRoot.add(SaxonExprTransformations.copyTopLevelLets(subexpression, expr));
             } else {
-                // couldn't find a root element for the expression, that means, we can't use rule chain at all
-                // even though, it would be possible for part of the expression.
-                useRuleChain = false;
-                break;
+                // couldn't find a root element for the expression, it is evaluated
+                // from the root, the other branches may still use the rule chain
+                unrootedExpressions.add(SaxonExprTransformations.copyTopLevelLets(subexpression, expr));
             }
         }
 
-        if (useRuleChain) {
-            rulechainQueries.addAll(nodeNameToXPaths.keySet());
-        } else {
-            nodeNameToXPaths.clear();
+        if (unrootedExpressions.isEmpty()) {
+            rootedExpressionsFromRoot.clear();
+        }
+        if (nodeNameToXPaths.isEmpty()) {
+            unrootedExpressions.clear();
             LOG.debug("Unable to use RuleChain for XPath: {}", xpathExpr);
+        } else {
+            rulechainQueries.addAll(nodeNameToXPaths.keySet());
+            if (profiler == null) {
+                compileRuleChainQueries();
+            }
+            if (!unrootedExpressions.isEmpty()) {
+                LOG.debug("Unable to use RuleChain for union branches {} of XPath: {}", unrootedExpressions, xpathExpr);
+            }
         }
 
         // always add fallback expression
         addExpressionForNode(AST_ROOT, xpathExpression.getInternalExpression());
+
+        if (profiler != null) {
+            instrumentForProfiling();
+        }
+    }
+
+    private void instrumentForProfiling() {
+        for (List<Expression> expressions : nodeNameToXPaths.values()) {
+            expressions.replaceAll(profiler::instrument);
+        }
+        unrootedExpressions.replaceAll(profiler::instrument);
+        rootedExpressionsFromRoot.replaceAll(profiler::instrument);
+    }
+
+    private void compileRuleChainQueries() {
+        SaxonExprCompiler compiler = new SaxonExprCompiler(attrCtx, sharedSubexpressions);
+        Map<String, List<NodeQuery>> compiled = new HashMap<>();
+        for (Map.Entry<String, List<Expression>> entry : nodeNameToXPaths.entrySet()) {
+            List<NodeQuery> queries = new ArrayList<>(entry.getValue().size());
+            for (Expression expression : entry.getValue()) {
+                NodeQuery query = compiler.compile(expression);
+                if (query == null) {
+                    LOG.debug("Unable to compile XPath, it will be evaluated by Saxon: {}", xpathExpr);
+                    return;
+                }
+                queries.add(query);
+            }
+            compiled.put(entry.getKey(), queries);
+        }
+        compiler.commitSharedSubexpressions();
+        compiledQueries = compiled;
     }
 
     public static NamePool getNamePool() {
@@ -0,0 +1,99 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.xpath.internal;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.rule.xpath.Attribute;
+import net.sourceforge.pmd.util.DataMap;
+import net.sourceforge.pmd.util.DataMap.DataKey;
+import net.sourceforge.pmd.util.DataMap.SimpleDataKey;
+
+/**
+ * Subexpressions of the compiled XPath queries of all rules. Rules often
+ * share predicates and attribute reads, eg {@code //MethodCall[@MethodName = 'foo']}.
+ * The value of a subexpression that is used by several queries is computed
+ * once per node, then stored in the {@linkplain Node#getUserMap() user map}
+ * of the node, where the other queries find it.
+ *
+ * <p>Subexpressions are identified by a key, which must capture everything
+ * their value depends on, apart from the node.
+ *
+ * <p>An instance is shared by the rules of an analysis, see
+ * {@link net.sourceforge.pmd.RuleSets#initializeRules(net.sourceforge.pmd.lang.LanguageProcessorRegistry, net.sourceforge.pmd.util.log.MessageReporter) RuleSets::initializeRules},
+ * so that it does not outlive it.
+ */
+public final class SharedSubexpressions {
+
+    private final ConcurrentMap<Object, Subexpression<?>> byKey = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the subexpression with the given key. The type parameter
+     * must be the same for equal keys.
+     */
+    @SuppressWarnings("unchecked")
+    <T> Subexpression<T> get(Object key) {
+        return (Subexpression<T>) byKey.computeIfAbsent(key, k -> new Subexpression<>(k.toString()));
+    }
+
+    static final class Subexpression<T> {
+
+        private final SimpleDataKey<T> dataKey;
+        private final AtomicInteger users = new AtomicInteger();
+        private final List<DeprecatedAttrLogger> attrLoggers = new CopyOnWriteArrayList<>();
+
+        private Subexpression(String name) {
+            this.dataKey = DataMap.simpleDataKey(name);
+        }
+
+        /**
+         * Records that another compiled query uses this subexpression.
+         * The attributes read while computing the value are recorded
+         * with the logger of the query, even when the value is then
+         * reused by other queries.
+         */
+        void addUser(DeprecatedAttrLogger attrLogger) {
+            if (attrLogger != DeprecatedAttrLogger.noop()) { // NOPMD CompareObjectsWithEquals
+                attrLoggers.add(attrLogger);
+            }
+            users.incrementAndGet();
+        }
+
+        /** Records the usage of the attribute for all queries that use this subexpression. */
+        void recordUsageOf(Attribute attribute) {
+            for (DeprecatedAttrLogger attrLogger : attrLoggers) {
+                attrLogger.recordUsageOf(attribute);
+            }
+        }
+
+        boolean isShared() {
+            return users.get() > 1;
+        }
+
+        /**
+         * Returns the value of this subexpression on the given node. If
+         * it is shared, the value is computed only the first time.
+         */
+        T getValue(Node node, Function<? super Node, ? extends T> computation) {
+            if (!isShared()) {
+                // don't pay for the user map
+                return computation.apply(node);
+            }
+            DataMap<DataKey<?, ?>> userMap = node.getUserMap();
+            T value = userMap.get(dataKey);
+            if (value == null) {
+                value = computation.apply(node);
+                userMap.set(dataKey, value);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.xpath.internal;
+
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+
+import net.sf.saxon.expr.Expression;
+import net.sf.saxon.expr.OperandRole;
+import net.sf.saxon.expr.StaticContext;
+import net.sf.saxon.expr.UnaryExpression;
+import net.sf.saxon.expr.XPathContext;
+import net.sf.saxon.expr.parser.RebindingMap;
+import net.sf.saxon.lib.ExtensionFunctionCall;
+import net.sf.saxon.lib.ExtensionFunctionDefinition;
+import net.sf.saxon.om.GroundedValue;
+import net.sf.saxon.om.Item;
+import net.sf.saxon.om.Sequence;
+import net.sf.saxon.om.SequenceIterator;
+import net.sf.saxon.om.StructuredQName;
+import net.sf.saxon.trans.XPathException;
+import net.sf.saxon.value.SequenceType;
+
+/**
+ * Instruments the expressions of an XPath query, so that each subexpression
+ * and each extension function call is timed with the {@link TimeTracker}.
+ * Subexpressions are measured under {@link TimedOperationCategory#XPATH_EXPRESSION},
+ * functions under {@link TimedOperationCategory#XPATH_FUNCTION}, labeled
+ * with the name of the rule. The counter of each measurement is the number
+ * of items produced.
+ *
+ * <p>Instrumented subexpressions are evaluated eagerly, to count their
+ * items and attribute the time to them. This may be slower than the normal
+ * evaluation, which stops as soon as the result is known. The measurements
+ * are for comparing the subexpressions, not for absolute timings.
+ */
+final class XPathProfiler {
+
+    private final String ruleName;
+
+    XPathProfiler(String ruleName) {
+        this.ruleName = ruleName;
+    }
+
+    /**
+     * Returns a copy of the expression in which the subexpressions that
+     * the {@link SaxonExprVisitor} knows about are timed.
+     */
+    Expression instrument(Expression expression) {
+        return new InstrumentingVisitor().visit(expression);
+    }
+
+    /** Returns a function that times the calls to the given one. */
+    ExtensionFunctionDefinition instrument(ExtensionFunctionDefinition definition) {
+        return new ProfiledFunctionDefinition(definition, ruleName + " " + definition.getFunctionQName().getDisplayName());
+    }
+
+
+    private final class InstrumentingVisitor extends SaxonExprVisitor {
+
+        @Override
+        public Expression visit(Expression expr) {
+            Expression result = super.visit(expr);
+            return new ProfiledExpression(result, ruleName + " " + expr.toShortString());
+        }
+    }
+
+    /**
+     * Times the evaluation of its operand, which it otherwise behaves like.
+     */
+    static final class ProfiledExpression extends UnaryExpression {
+
+        private final String label;
+
+        ProfiledExpression(Expression base, String label) {
+            super(base);
+            this.label = label;
+        }
+
+        @Override
+        protected OperandRole getOperandRole() {
+            return OperandRole.SAME_FOCUS_ACTION;
+        }
+
+        @Override
+        public int getImplementationMethod() {
+            return getBaseExpression().getImplementationMethod();
+        }
+
+        @Override
+        public SequenceIterator iterate(XPathContext context) throws XPathException {
+            GroundedValue value;
+            try (TimedOperation op = TimeTracker.startOperation(TimedOperationCategory.XPATH_EXPRESSION, label)) {
+                value = getBaseExpression().iterate(context).materialize();
+                op.close(value.getLength());
+            }
+            return value.iterate();
+        }
+
+        @Override
+        public Item evaluateItem(XPathContext context) throws XPathException {
+            try (TimedOperation op = TimeTracker.startOperation(TimedOperationCategory.XPATH_EXPRESSION, label)) {
+                Item item = getBaseExpression().evaluateItem(context);
+                op.close(item == null ? 0 : 1);
+                return item;
+            }
+        }
+
+        @Override
+        public boolean effectiveBooleanValue(XPathContext context) throws XPathException {
+            try (TimedOperation op = TimeTracker.startOperation(TimedOperationCategory.XPATH_EXPRESSION, label)) {
+                boolean result = getBaseExpression().effectiveBooleanValue(context);
+                op.close(result ? 1 : 0);
+                return result;
+            }
+        }
+
+        @Override
+        public Expression copy(RebindingMap rebindings) {
+            return new ProfiledExpression(getBaseExpression().copy(rebindings), label);
+        }
+
+        @Override
+        public String toShortString() {
+            return getBaseExpression().toShortString();
+        }
+
+        @Override
+        public String toString() {
+            return getBaseExpression().toString();
+        }
+    }
+
+    private static final class ProfiledFunctionDefinition extends ExtensionFunctionDefinition {
+
+        private final ExtensionFunctionDefinition base;
+        private final String label;
+
+        ProfiledFunctionDefinition(ExtensionFunctionDefinition base, String label) {
+            this.base = base;
+            this.label = label;
+        }
+
+        @Override
+        public StructuredQName getFunctionQName() {
+            return base.getFunctionQName();
+        }
+
+        @Override
+        public int getMinimumNumberOfArguments() {
+            return base.getMinimumNumberOfArguments();
+        }
+
+        @Override
+        public int getMaximumNumberOfArguments() {
+            return base.getMaximumNumberOfArguments();
+        }
+
+        @Override
+        public SequenceType[] getArgumentTypes() {
+            return base.getArgumentTypes();
+        }
+
+        @Override
+        public SequenceType getResultType(SequenceType[] suppliedArgumentTypes) {
+            return base.getResultType(suppliedArgumentTypes);
+        }
+
+        @Override
+        public boolean trustResultType() {
+            return base.trustResultType();
+        }
+
+        @Override
+        public boolean dependsOnFocus() {
+            return base.dependsOnFocus();
+        }
+
+        @Override
+        public boolean hasSideEffects() {
+            return base.hasSideEffects();
+        }
+
+        @Override
+        public ExtensionFunctionCall makeCallExpression() {
+            ExtensionFunctionCall call = base.makeCallExpression();
+            call.setDefinition(base);
+            return new ProfiledFunctionCall(call, label);
+        }
+    }
+
+    private static final class ProfiledFunctionCall extends ExtensionFunctionCall {
+
+        private final ExtensionFunctionCall base;
+        private final String label;
+
+        ProfiledFunctionCall(ExtensionFunctionCall base, String label) {
+            this.base = base;
+            this.label = label;
+        }
+
+        @Override
+        public void supplyStaticContext(StaticContext context, int locationId, Expression[] arguments) throws XPathException {
+            base.supplyStaticContext(context, locationId, arguments);
+        }
+
+        @Override
+        public Expression rewrite(StaticContext context, Expression[] arguments) throws XPathException {
+            // a rewritten call would not be timed
+            return null;
+        }
+
+        @Override
+        public void copyLocalData(ExtensionFunctionCall destination) {
+            base.copyLocalData(((ProfiledFunctionCall) destination).base);
+        }
+
+        @Override
+        public Sequence call(XPathContext context, Sequence[] arguments) throws XPathException {
+            try (TimedOperation op = TimeTracker.startOperation(TimedOperationCategory.XPATH_FUNCTION, label)) {
+                GroundedValue result = base.call(context, arguments).materialize();
+                op.close(result.getLength());
+                return result;
+            }
+        }
+    }
+}
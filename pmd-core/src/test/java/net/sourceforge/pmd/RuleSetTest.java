@@ -28,11 +28,13 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -42,11 +44,18 @@ import org.junit.jupiter.api.extension.RegisterExtension;
 
 import net.sourceforge.pmd.Report.ProcessingError;
 import net.sourceforge.pmd.RuleSet.RuleSetBuilder;
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.benchmark.TimingReport;
 import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
+import net.sourceforge.pmd.lang.ast.DummyNode;
 import net.sourceforge.pmd.lang.ast.DummyNode.DummyRootNode;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.RootNode;
+import net.sourceforge.pmd.lang.document.TestMessageReporter;
 import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.RuleDispatch;
 import net.sourceforge.pmd.lang.rule.RuleReference;
 import net.sourceforge.pmd.lang.rule.RuleTargetSelector;
 
@@ -574,6 +583,155 @@ class RuleSetTest {
     }
 
 
+    @Test
+    void originalRulesAreClaimedAgainByTheNextAnalysis() throws InterruptedException {
+        InstanceRecordingRule.INSTANCES.clear();
+        RuleSets ruleSets = new RuleSets(RuleSet.forSingleRule(new InstanceRecordingRule()));
+        RootNode root = helper.parse("(a)");
+        for (int i = 0; i < 2; i++) {
+            ruleSets.initializeRules(LanguageProcessorRegistry.singleton(root.getAstInfo().getLanguageProcessor()),
+                                     new TestMessageReporter());
+            // each analysis is run by another thread
+            Thread thread = new Thread(() -> Report.buildReport(ctx -> ruleSets.apply(root, ctx)));
+            thread.start();
+            thread.join();
+        }
+
+        assertEquals(ruleSets.getAllRules(), InstanceRecordingRule.INSTANCES);
+    }
+
+    @Test
+    void fusedDispatchWalksTheTreeOnce() {
+        List<String> events = new ArrayList<>();
+        RuleSet ruleset = createRuleSetBuilder("fusedDispatch")
+            .addRule(new EventRecordingRule("byType", events, RuleTargetSelector.forTypes(DummyNode.class)))
+            .addRule(new EventRecordingRule("byName", events, RuleTargetSelector.forXPathNames(setOf("dummyRootNode"))))
+            .build();
+
+        RuleSets ruleSets = new RuleSets(ruleset);
+        ruleSets.setRuleDispatch(RuleDispatch.PER_RULE);
+        Report.buildReport(ctx -> ruleSets.apply(helper.parse("(a(b))(c)"), ctx));
+        assertEquals(listOf("start byType", "byType ", "byType a", "byType b", "byType c", "end byType",
+                            "start byName", "byName ", "end byName"),
+                     events);
+
+        events.clear();
+        ruleSets.setRuleDispatch(RuleDispatch.FUSED);
+        Report.buildReport(ctx -> ruleSets.apply(helper.parse("(a(b))(c)"), ctx));
+        assertEquals(listOf("start byType", "start byName", "byType ", "byName ", "byType a", "byType b", "byType c",
+                            "end byType", "end byName"),
+                     events);
+    }
+
+    @Test
+    void fusedDispatchTimesEachRuleWhenBenchmarking() {
+        List<String> events = new ArrayList<>();
+        RuleSet ruleset = createRuleSetBuilder("fusedDispatch")
+            .addRule(new EventRecordingRule("byType", events, RuleTargetSelector.forTypes(DummyNode.class)))
+            .addRule(new EventRecordingRule("byName", events, RuleTargetSelector.forXPathNames(setOf("dummyRootNode"))))
+            .build();
+
+        RuleSets ruleSets = new RuleSets(ruleset);
+        ruleSets.setRuleDispatch(RuleDispatch.FUSED);
+        TimingReport timingReport;
+        TimeTracker.startGlobalTracking();
+        try {
+            Report.buildReport(ctx -> ruleSets.apply(helper.parse("(a(b))(c)"), ctx));
+        } finally {
+            timingReport = TimeTracker.stopGlobalTracking();
+        }
+
+        // the tree is still walked once
+        assertEquals(listOf("start byType", "start byName", "byType ", "byName ", "byType a", "byType b", "byType c",
+                            "end byType", "end byName"),
+                     events);
+        assertEquals(setOf("byType", "byName"), timingReport.getLabeledMeasurements(TimedOperationCategory.RULE).keySet());
+    }
+
+    @Test
+    void fusedDispatchEndsAllRulesWhenOneFails() {
+        List<String> events = new ArrayList<>();
+        RuleSet ruleset = createRuleSetBuilder("fusedDispatch")
+            .addRule(new EventRecordingRule("failing", events, RuleTargetSelector.forTypes(DummyNode.class)) {
+                @Override
+                public void end(RuleContext ctx) {
+                    super.end(ctx);
+                    throw new IllegalStateException("Test exception while ending rule");
+                }
+            })
+            .addRule(new EventRecordingRule("other", events, RuleTargetSelector.forTypes(DummyNode.class)))
+            .build();
+
+        RuleSets ruleSets = new RuleSets(ruleset);
+        ruleSets.setRuleDispatch(RuleDispatch.FUSED);
+        Report report = Report.buildReport(ctx -> ruleSets.apply(helper.parse("(a)"), ctx));
+
+        assertEquals(listOf("start failing", "start other", "failing ", "other ", "failing a", "other a",
+                            "end failing", "end other"),
+                     events);
+        assertThat(report.getProcessingErrors(), hasSize(1));
+        assertThat(report.getProcessingErrors().get(0).getError().getCause(), instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    void rootAndNameSelectorVisitsRootOnce() {
+        List<String> events = new ArrayList<>();
+        RuleSet ruleset = createRuleSetBuilder("rootAndNames")
+            .addRule(new EventRecordingRule("rule", events, RuleTargetSelector.forRootAndXPathNames(setOf("dummyRootNode", "dummyNode"))))
+            .build();
+
+        RuleSets ruleSets = new RuleSets(ruleset);
+        for (RuleDispatch dispatch : RuleDispatch.values()) {
+            events.clear();
+            ruleSets.setRuleDispatch(dispatch);
+            Report.buildReport(ctx -> ruleSets.apply(helper.parse("(a(b))(c)"), ctx));
+            assertEquals(listOf("start rule", "rule ", "rule a", "rule b", "rule c", "end rule"), events, dispatch.toString());
+        }
+    }
+
+    static class InstanceRecordingRule extends MockRule {
+
+        static final Set<Rule> INSTANCES = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+        @Override
+        public void apply(Node node, RuleContext ctx) {
+            INSTANCES.add(this);
+        }
+    }
+
+    private static class EventRecordingRule extends MockRule {
+
+        private final List<String> events;
+        private final RuleTargetSelector targetSelector;
+
+        EventRecordingRule(String name, List<String> events, RuleTargetSelector targetSelector) {
+            setName(name);
+            this.events = events;
+            this.targetSelector = targetSelector;
+        }
+
+        @Override
+        protected @NonNull RuleTargetSelector buildTargetSelector() {
+            return targetSelector;
+        }
+
+        @Override
+        public void start(RuleContext ctx) {
+            events.add("start " + getName());
+        }
+
+        @Override
+        public void apply(Node target, RuleContext ctx) {
+            events.add(getName() + " " + target.getImage());
+        }
+
+        @Override
+        public void end(RuleContext ctx) {
+            events.add("end " + getName());
+        }
+    }
+
+
     static class MockRule extends net.sourceforge.pmd.lang.rule.MockRule {
 
         MockRule() {
@@ -6,7 +6,9 @@ package net.sourceforge.pmd.cache;
 
 import static com.github.stefanbirkner.systemlambda.SystemLambda.restoreSystemProperties;
 import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static net.sourceforge.pmd.util.CollectionUtil.mapOf;
 import static net.sourceforge.pmd.util.CollectionUtil.setOf;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -25,8 +27,10 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -36,8 +40,11 @@ import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 
 import net.sourceforge.pmd.PmdCoreTestUtils;
+import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.RuleWithProperties;
+import net.sourceforge.pmd.cache.internal.ClasspathDependencies;
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.document.FileId;
@@ -236,6 +243,228 @@ class FileAnalysisCacheTest {
                 "Cache believes unmodified file is up to date after ruleset changed");
     }
 
+    @Test
+    void testRuleChangeOnlyInvalidatesChangedRule() throws IOException {
+        final Rule ruleA = mockRule("RuleA");
+        final Rule ruleB = mockRule("RuleB");
+        final ClassLoader cl = mock(ClassLoader.class);
+
+        final RuleSets rs = mock(RuleSets.class);
+        when(rs.getChecksum()).thenReturn(1L);
+        when(rs.getRuleChecksums()).thenReturn(mapOf(ruleA, 1L, ruleB, 2L));
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        cache.isUpToDate(sourceFile);
+        try (FileAnalysisListener listener = cache.startFileAnalysis(sourceFile)) {
+            final FileLocation location = FileLocation.range(sourceFile.getFileId(), TextRange2d.range2d(1, 2, 3, 4));
+            listener.onRuleViolation(new ParametricRuleViolation(ruleA, location, "message A"));
+            listener.onRuleViolation(new ParametricRuleViolation(ruleB, location, "message B"));
+        } catch (Exception e) {
+            fail(e);
+        }
+        cache.persist();
+
+        // the configuration of rule B changes
+        final RuleSets changedRs = mock(RuleSets.class);
+        when(changedRs.getChecksum()).thenReturn(2L);
+        when(changedRs.getRuleChecksums()).thenReturn(mapOf(ruleA, 1L, ruleB, 3L));
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(changedRs, cl, setOf(sourceFileBackend));
+        assertFalse(reloadedCache.isUpToDate(sourceFile),
+                "Cache believes unmodified file is up to date after a rule changed");
+        assertTrue(reloadedCache.isContentUpToDate(sourceFile));
+        assertTrue(reloadedCache.isRuleUpToDate(ruleA));
+        assertFalse(reloadedCache.isRuleUpToDate(ruleB));
+
+        final List<RuleViolation> cachedViolations = reloadedCache.getCachedViolations(sourceFile);
+        assertEquals(1, cachedViolations.size(), "Only violations of unchanged rules should be replayed");
+        assertEquals("message A", cachedViolations.get(0).getDescription());
+    }
+
+    @Test
+    void testRuleRemovalKeepsCacheValid() throws Exception {
+        final Rule ruleA = mockRule("RuleA");
+        final Rule ruleB = mockRule("RuleB");
+        final ClassLoader cl = mock(ClassLoader.class);
+
+        final RuleSets rs = mock(RuleSets.class);
+        when(rs.getChecksum()).thenReturn(1L);
+        when(rs.getRuleChecksums()).thenReturn(mapOf(ruleA, 1L, ruleB, 2L));
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        cache.isUpToDate(sourceFile);
+        try (FileAnalysisListener listener = cache.startFileAnalysis(sourceFile)) {
+            final FileLocation location = FileLocation.range(sourceFile.getFileId(), TextRange2d.range2d(1, 2, 3, 4));
+            listener.onRuleViolation(new ParametricRuleViolation(ruleA, location, "message A"));
+            listener.onRuleViolation(new ParametricRuleViolation(ruleB, location, "message B"));
+        }
+        cache.persist();
+
+        // rule B is removed
+        final RuleSets changedRs = mock(RuleSets.class);
+        when(changedRs.getChecksum()).thenReturn(2L);
+        when(changedRs.getRuleChecksums()).thenReturn(mapOf(ruleA, 1L));
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(changedRs, cl, setOf(sourceFileBackend));
+        assertTrue(reloadedCache.isUpToDate(sourceFile),
+                   "No rule needs to be executed after rules were only removed");
+        List<RuleViolation> cachedViolations = reloadedCache.getCachedViolations(sourceFile);
+        assertEquals(1, cachedViolations.size(), "Violations of removed rules should be dropped");
+        assertEquals("message A", cachedViolations.get(0).getDescription());
+        reloadedCache.persist();
+
+        final FileAnalysisCache cacheWithoutRuleB = new FileAnalysisCache(newCacheFile);
+        cacheWithoutRuleB.checkValidity(changedRs, cl, setOf(sourceFileBackend));
+        assertTrue(cacheWithoutRuleB.isUpToDate(sourceFile));
+        cachedViolations = cacheWithoutRuleB.getCachedViolations(sourceFile);
+        assertEquals(1, cachedViolations.size(), "Violations of removed rules should not be persisted");
+        assertEquals("message A", cachedViolations.get(0).getDescription());
+    }
+
+    @Test
+    void testSameRuleWithDifferentPropertiesIsCachedSeparately() throws Exception {
+        final Rule ruleA = new RuleWithProperties();
+        final Rule ruleB = new RuleWithProperties();
+        ruleB.setProperty(RuleWithProperties.STRING_PROPERTY_DESCRIPTOR, "other");
+        final ClassLoader cl = mock(ClassLoader.class);
+
+        final RuleSets rs = mock(RuleSets.class);
+        when(rs.getChecksum()).thenReturn(1L);
+        when(rs.getAllRules()).thenReturn(setOf(ruleA, ruleB));
+        when(rs.getRuleChecksums()).thenReturn(mapOf(ruleA, 1L, ruleB, 2L));
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        cache.isUpToDate(sourceFile);
+        try (FileAnalysisListener listener = cache.startFileAnalysis(sourceFile)) {
+            final FileLocation location = FileLocation.range(sourceFile.getFileId(), TextRange2d.range2d(1, 2, 3, 4));
+            listener.onRuleViolation(new ParametricRuleViolation(ruleA, location, "message A"));
+            listener.onRuleViolation(new ParametricRuleViolation(ruleB, location, "message B"));
+        }
+        cache.persist();
+
+        // the message of the second reference changes
+        final RuleSets changedRs = mock(RuleSets.class);
+        when(changedRs.getChecksum()).thenReturn(2L);
+        when(changedRs.getAllRules()).thenReturn(setOf(ruleA, ruleB));
+        when(changedRs.getRuleChecksums()).thenReturn(mapOf(ruleA, 1L, ruleB, 3L));
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(changedRs, cl, setOf(sourceFileBackend));
+        assertFalse(reloadedCache.isUpToDate(sourceFile));
+        assertTrue(reloadedCache.isRuleUpToDate(ruleA));
+        assertFalse(reloadedCache.isRuleUpToDate(ruleB));
+
+        final List<RuleViolation> cachedViolations = reloadedCache.getCachedViolations(sourceFile);
+        assertEquals(1, cachedViolations.size());
+        assertEquals("message A", cachedViolations.get(0).getDescription());
+        assertSame(ruleA, cachedViolations.get(0).getRule());
+    }
+
+    @Test
+    void testChangedResultsAreAppendedToLog() throws Exception {
+        final Rule rule = mockRule("RuleA");
+        final RuleSets rs = mock(RuleSets.class);
+        when(rs.getRuleChecksums()).thenReturn(mapOf(rule, 1L));
+        final ClassLoader cl = mock(ClassLoader.class);
+        final File logFile = new File(newCacheFile.getPath() + ".log");
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        analyseWithViolations(cache, sourceFile, rule, 1);
+        cache.persist();
+        assertFalse(logFile.exists(), "A new cache should not have a log");
+        final byte[] cacheContent = Files.readAllBytes(newCacheFile.toPath());
+
+        // the file changes
+        Files.write(tempFolder.resolve("Source.java"), listOf("other text"));
+        try (TextDocument changedFile = TextDocument.create(sourceFileBackend)) {
+            final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+            reloadedCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+            assertFalse(reloadedCache.isUpToDate(changedFile));
+            analyseWithViolations(reloadedCache, changedFile, rule, 2);
+            reloadedCache.persist();
+            assertTrue(logFile.exists(), "The changed result should be in the log");
+            assertArrayEquals(cacheContent, Files.readAllBytes(newCacheFile.toPath()),
+                              "The cache file should not be rewritten");
+
+            final FileAnalysisCache cacheWithLog = new FileAnalysisCache(newCacheFile);
+            cacheWithLog.checkValidity(rs, cl, setOf(sourceFileBackend));
+            assertTrue(cacheWithLog.isUpToDate(changedFile), "The result of the log should be used");
+            assertEquals(2, cacheWithLog.getCachedViolations(changedFile).size());
+
+            // a rule change rewrites the cache file, which merges the log
+            when(rs.getRuleChecksums()).thenReturn(mapOf(rule, 2L));
+            final FileAnalysisCache cacheWithChangedRule = new FileAnalysisCache(newCacheFile);
+            cacheWithChangedRule.checkValidity(rs, cl, setOf(sourceFileBackend));
+            cacheWithChangedRule.isUpToDate(changedFile);
+            cacheWithChangedRule.persist();
+            assertFalse(logFile.exists(), "The log should be merged into the cache file");
+        }
+    }
+
+    @Test
+    void testResultsOfFilesNoLongerAnalysedAreEventuallyDropped() throws Exception {
+        final Rule rule = mockRule("RuleA");
+        final RuleSets rs = mock(RuleSets.class);
+        when(rs.getRuleChecksums()).thenReturn(mapOf(rule, 1L));
+        final ClassLoader cl = mock(ClassLoader.class);
+
+        final List<TextFile> files = new ArrayList<>();
+        final List<TextDocument> docs = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            final Path file = tempFolder.resolve("Other" + i + ".java");
+            Files.write(file, listOf("text " + i));
+            files.add(TextFile.forPath(file, Charset.defaultCharset(), dummyVersion));
+            docs.add(TextDocument.create(files.get(i)));
+        }
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, cl, files);
+        for (TextDocument doc : docs) {
+            analyseWithViolations(cache, doc, rule, 1);
+        }
+        cache.persist();
+        final long fullSize = newCacheFile.length();
+
+        // only one of the files is analysed now, even though it did not change
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, cl, setOf(files.get(0)));
+        assertTrue(reloadedCache.isUpToDate(docs.get(0)));
+        reloadedCache.persist();
+        assertTrue(newCacheFile.length() < fullSize, "The results of the other files should be dropped");
+
+        final FileAnalysisCache cacheWithAllFiles = new FileAnalysisCache(newCacheFile);
+        cacheWithAllFiles.checkValidity(rs, cl, files);
+        assertTrue(cacheWithAllFiles.isUpToDate(docs.get(0)));
+        assertEquals(1, cacheWithAllFiles.getCachedViolations(docs.get(0)).size());
+        assertFalse(cacheWithAllFiles.isUpToDate(docs.get(1)));
+    }
+
+    private void analyseWithViolations(FileAnalysisCache cache, TextDocument doc, Rule rule, int count) throws Exception {
+        cache.isUpToDate(doc);
+        try (FileAnalysisListener listener = cache.startFileAnalysis(doc)) {
+            for (int i = 0; i < count; i++) {
+                final FileLocation location = FileLocation.range(doc.getFileId(), TextRange2d.range2d(i + 1, 1, i + 1, 2));
+                listener.onRuleViolation(new ParametricRuleViolation(rule, location, "message " + i));
+            }
+        }
+    }
+
+    private Rule mockRule(String name) {
+        final Language language = mock(Language.class);
+        when(language.getTerseName()).thenReturn("dummy");
+        final net.sourceforge.pmd.Rule rule = mock(net.sourceforge.pmd.Rule.class, Mockito.RETURNS_SMART_NULLS);
+        when(rule.getLanguage()).thenReturn(language);
+        when(rule.getRuleClass()).thenReturn("com.example." + name);
+        when(rule.getName()).thenReturn(name);
+        return rule;
+    }
+
     @Test
     void testAuxClasspathNonExistingAuxclasspathEntriesIgnored() throws MalformedURLException, IOException {
         final RuleSets rs = mock(RuleSets.class);
@@ -312,6 +541,155 @@ class FileAnalysisCacheTest {
                 "Cache believes cache is up to date when a auxclasspath file changed");
     }
 
+    @Test
+    void testAuxClasspathChangeOnlyInvalidatesDependentFiles() throws Exception {
+        final RuleSets rs = mock(RuleSets.class);
+        final URLClassLoader cl = mock(URLClassLoader.class);
+
+        final URL dependency = createClassFile("v1", "Dependency.class", "dependency 1");
+        final URL changedDependency = createClassFile("v2", "Dependency.class", "dependency 2");
+        final URL other = createClassFile("v1", "Other.class", "other 1");
+        final URL changedOther = createClassFile("v2", "Other.class", "other 2");
+        when(cl.getURLs()).thenReturn(new URL[] { dependency, other });
+        when(cl.findResource("Dependency.class")).thenReturn(dependency);
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        cache.isUpToDate(sourceFile);
+        try (FileAnalysisListener ignored = cache.startFileAnalysis(sourceFile)) {
+            final ClasspathDependencies dependencies = ClasspathDependencies.current();
+            assertNotNull(dependencies);
+            dependencies.setTracked();
+            dependencies.record("Dependency.class");
+        }
+        cache.persist();
+
+        // a class the file does not depend on changes
+        when(cl.getURLs()).thenReturn(new URL[] { dependency, changedOther });
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        assertTrue(reloadedCache.isUpToDate(sourceFile),
+                "Cache believes unmodified file is not up to date after an unrelated auxclasspath change");
+        reloadedCache.persist();
+
+        // a class the file depends on changes
+        when(cl.getURLs()).thenReturn(new URL[] { changedDependency, changedOther });
+        when(cl.findResource("Dependency.class")).thenReturn(changedDependency);
+        final FileAnalysisCache invalidatedCache = new FileAnalysisCache(newCacheFile);
+        invalidatedCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        assertFalse(invalidatedCache.isUpToDate(sourceFile),
+                "Cache believes unmodified file is up to date after one of its dependencies changed");
+    }
+
+    @Test
+    void testRuleChangeKeepsDependenciesOfUnchangedRules() throws Exception {
+        final Rule ruleA = mockRule("RuleA");
+        final Rule ruleB = mockRule("RuleB");
+        final URLClassLoader cl = mock(URLClassLoader.class);
+
+        final URL dependency = createClassFile("v1", "Dependency.class", "dependency 1");
+        final URL changedDependency = createClassFile("v2", "Dependency.class", "dependency 2");
+        final URL other = createClassFile("v1", "Other.class", "other 1");
+        when(cl.getURLs()).thenReturn(new URL[] { dependency, other });
+        when(cl.findResource("Dependency.class")).thenReturn(dependency);
+        when(cl.findResource("Other.class")).thenReturn(other);
+
+        final RuleSets rs = mock(RuleSets.class);
+        when(rs.getChecksum()).thenReturn(1L);
+        when(rs.getRuleChecksums()).thenReturn(mapOf(ruleA, 1L, ruleB, 2L));
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        analyseWithDependencies(cache, sourceFile, "Dependency.class");
+        cache.persist();
+
+        // rule B changes, and only rule B is executed again
+        final RuleSets changedRs = mock(RuleSets.class);
+        when(changedRs.getChecksum()).thenReturn(2L);
+        when(changedRs.getRuleChecksums()).thenReturn(mapOf(ruleA, 1L, ruleB, 3L));
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(changedRs, cl, setOf(sourceFileBackend));
+        analyseWithDependencies(reloadedCache, sourceFile, "Other.class");
+        reloadedCache.persist();
+
+        // a class only used by the results of rule A changes
+        when(cl.getURLs()).thenReturn(new URL[] { changedDependency, other });
+        when(cl.findResource("Dependency.class")).thenReturn(changedDependency);
+        final FileAnalysisCache invalidatedCache = new FileAnalysisCache(newCacheFile);
+        invalidatedCache.checkValidity(changedRs, cl, setOf(sourceFileBackend));
+        assertFalse(invalidatedCache.isUpToDate(sourceFile),
+                    "The dependencies of the cached results should be kept after a partial analysis");
+    }
+
+    @Test
+    void testNewDependencyIsAppendedToLog() throws Exception {
+        final RuleSets rs = mock(RuleSets.class);
+        final URLClassLoader cl = mock(URLClassLoader.class);
+        final File logFile = new File(newCacheFile.getPath() + ".log");
+
+        final URL dependency = createClassFile("v1", "Dependency.class", "dependency 1");
+        final URL changedDependency = createClassFile("v2", "Dependency.class", "dependency 2");
+        when(cl.getURLs()).thenReturn(new URL[] { dependency });
+        when(cl.findResource("Dependency.class")).thenReturn(dependency);
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        analyseWithDependencies(cache, sourceFile);
+        cache.persist();
+        final byte[] cacheContent = Files.readAllBytes(newCacheFile.toPath());
+
+        // the file changes, and now depends on a class
+        Files.write(tempFolder.resolve("Source.java"), listOf("other text"));
+        try (TextDocument changedFile = TextDocument.create(sourceFileBackend)) {
+            final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+            reloadedCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+            analyseWithDependencies(reloadedCache, changedFile, "Dependency.class");
+            reloadedCache.persist();
+            assertTrue(logFile.exists(), "The new dependency should be in the log");
+            assertArrayEquals(cacheContent, Files.readAllBytes(newCacheFile.toPath()),
+                              "The cache file should not be rewritten for a new dependency");
+
+            // the dependency changes
+            when(cl.getURLs()).thenReturn(new URL[] { changedDependency });
+            when(cl.findResource("Dependency.class")).thenReturn(changedDependency);
+            final FileAnalysisCache invalidatedCache = new FileAnalysisCache(newCacheFile);
+            invalidatedCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+            assertFalse(invalidatedCache.isUpToDate(changedFile),
+                        "The dependency of the log should invalidate the file");
+            invalidatedCache.persist();
+        }
+
+        assertFalse(logFile.exists(), "The log should be merged into the cache file");
+        try (Stream<Path> files = Files.list(tempFolder)) {
+            assertTrue(files.noneMatch(file -> isTemporaryCacheFile(file)),
+                       "The temporary file should be moved");
+        }
+    }
+
+    private boolean isTemporaryCacheFile(Path file) {
+        final String name = file.getFileName().toString();
+        return name.startsWith(newCacheFile.getName()) && name.endsWith(".tmp");
+    }
+
+    private void analyseWithDependencies(FileAnalysisCache cache, TextDocument doc, String... dependencies) throws Exception {
+        cache.isUpToDate(doc);
+        try (FileAnalysisListener ignored = cache.startFileAnalysis(doc)) {
+            final ClasspathDependencies recording = ClasspathDependencies.current();
+            assertNotNull(recording);
+            recording.setTracked();
+            for (String dependency : dependencies) {
+                recording.record(dependency);
+            }
+        }
+    }
+
+    private URL createClassFile(String directory, String fileName, String content) throws IOException {
+        final Path file = Files.createDirectories(tempFolder.resolve(directory)).resolve(fileName);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file.toUri().toURL();
+    }
+
     @Test
     void testClasspathNonExistingEntryIsIgnored() throws Exception {
         restoreSystemProperties(() -> {
@@ -0,0 +1,166 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static net.sourceforge.pmd.util.CollectionUtil.setOf;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import net.sourceforge.pmd.PmdCoreTestUtils;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.cache.internal.ClasspathDependencies;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.document.FileLocation;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.document.TextRange2d;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+
+class SharedAnalysisCacheTest {
+
+    @TempDir
+    private Path tempFolder;
+
+    private TextFile createFile(String name, String content) throws IOException {
+        Path file = tempFolder.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, listOf(content), StandardCharsets.UTF_8);
+        return TextFile.forPath(file, StandardCharsets.UTF_8, PmdCoreTestUtils.dummyVersion());
+    }
+
+    private static RuleSets mockRuleSets(long checksum) {
+        RuleSets rs = mock(RuleSets.class);
+        when(rs.getChecksum()).thenReturn(checksum);
+        when(rs.getAllRuleSets()).thenReturn(new RuleSet[0]);
+        return rs;
+    }
+
+    private static void analyse(SharedAnalysisCache cache, TextDocument document) throws Exception {
+        try (FileAnalysisListener listener = cache.startFileAnalysis(document)) {
+            assertFalse(cache.isUpToDate(document));
+
+            final RuleViolation rv = mock(RuleViolation.class);
+            when(rv.getLocation()).thenReturn(FileLocation.range(document.getFileId(), TextRange2d.range2d(1, 2, 3, 4)));
+            final Rule rule = mock(Rule.class, Mockito.RETURNS_SMART_NULLS);
+            when(rule.getLanguage()).thenReturn(mock(Language.class));
+            when(rv.getRule()).thenReturn(rule);
+            listener.onRuleViolation(rv);
+        }
+    }
+
+    @Test
+    void testResultsAreSharedBetweenCheckouts() throws Exception {
+        final Path storeDir = tempFolder.resolve("store");
+        final TextFile original = createFile("branch1/Source.java", "dummy text");
+        final TextFile copy = createFile("branch2/Source.java", "dummy text");
+
+        final SharedAnalysisCache cache = new SharedAnalysisCache(new DirectoryCacheStore(storeDir, 1 << 20));
+        cache.checkValidity(mockRuleSets(1), mock(ClassLoader.class), setOf(original));
+        try (TextDocument document = TextDocument.create(original)) {
+            analyse(cache, document);
+        }
+        cache.persist();
+
+        final SharedAnalysisCache otherCache = new SharedAnalysisCache(new DirectoryCacheStore(storeDir, 1 << 20));
+        otherCache.checkValidity(mockRuleSets(1), mock(ClassLoader.class), setOf(copy));
+        try (TextDocument document = TextDocument.create(copy)) {
+            assertTrue(otherCache.isUpToDate(document), "Identical content in another checkout should be up to date");
+            final List<RuleViolation> violations = otherCache.getCachedViolations(document);
+            assertEquals(1, violations.size());
+            assertEquals(copy.getFileId(), violations.get(0).getFileId());
+            assertEquals(2, violations.get(0).getBeginColumn());
+        }
+    }
+
+    @Test
+    void testClasspathDependenciesAreNotRecorded() throws Exception {
+        final TextFile file = createFile("Source.java", "dummy text");
+
+        final SharedAnalysisCache cache = new SharedAnalysisCache(new DirectoryCacheStore(tempFolder.resolve("store"), 1 << 20));
+        cache.checkValidity(mockRuleSets(1), mock(ClassLoader.class), setOf(file));
+        try (TextDocument document = TextDocument.create(file);
+             FileAnalysisListener ignored = cache.startFileAnalysis(document)) {
+            assertNull(ClasspathDependencies.current(), "The key already covers the auxclasspath");
+        }
+    }
+
+    @Test
+    void testChangedContentIsNotUpToDate() throws Exception {
+        final Path storeDir = tempFolder.resolve("store");
+        final TextFile original = createFile("branch1/Source.java", "dummy text");
+        final TextFile changed = createFile("branch2/Source.java", "changed text");
+
+        final SharedAnalysisCache cache = new SharedAnalysisCache(new DirectoryCacheStore(storeDir, 1 << 20));
+        cache.checkValidity(mockRuleSets(1), mock(ClassLoader.class), setOf(original));
+        try (TextDocument document = TextDocument.create(original)) {
+            analyse(cache, document);
+        }
+        cache.persist();
+
+        final SharedAnalysisCache otherCache = new SharedAnalysisCache(new DirectoryCacheStore(storeDir, 1 << 20));
+        otherCache.checkValidity(mockRuleSets(1), mock(ClassLoader.class), setOf(changed));
+        try (TextDocument document = TextDocument.create(changed)) {
+            assertFalse(otherCache.isUpToDate(document));
+        }
+    }
+
+    @Test
+    void testChangedRulesetsAreNotUpToDate() throws Exception {
+        final Path storeDir = tempFolder.resolve("store");
+        final TextFile file = createFile("Source.java", "dummy text");
+
+        final SharedAnalysisCache cache = new SharedAnalysisCache(new DirectoryCacheStore(storeDir, 1 << 20));
+        cache.checkValidity(mockRuleSets(1), mock(ClassLoader.class), setOf(file));
+        try (TextDocument document = TextDocument.create(file)) {
+            analyse(cache, document);
+        }
+        cache.persist();
+
+        final TextFile sameFile = createFile("Source.java", "dummy text");
+        final SharedAnalysisCache otherCache = new SharedAnalysisCache(new DirectoryCacheStore(storeDir, 1 << 20));
+        otherCache.checkValidity(mockRuleSets(2), mock(ClassLoader.class), setOf(sameFile));
+        try (TextDocument document = TextDocument.create(sameFile)) {
+            assertFalse(otherCache.isUpToDate(document));
+        }
+    }
+
+    @Test
+    void testStoreEvictsLeastRecentlyUsedEntries() throws IOException {
+        final DirectoryCacheStore store = new DirectoryCacheStore(tempFolder, 250);
+        store.store("aaaa", new byte[100]);
+        store.store("bbbb", new byte[100]);
+        store.store("cccc", new byte[100]);
+        Files.setLastModifiedTime(tempFolder.resolve("aa/aaaa"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(tempFolder.resolve("bb/bbbb"), FileTime.fromMillis(3000));
+        Files.setLastModifiedTime(tempFolder.resolve("cc/cccc"), FileTime.fromMillis(2000));
+
+        store.flush();
+
+        // evicted until 3/4 of the maximum size is used
+        assertNull(store.load("aaaa"));
+        assertNull(store.load("cccc"));
+        assertArrayEquals(new byte[100], store.load("bbbb"));
+    }
+}
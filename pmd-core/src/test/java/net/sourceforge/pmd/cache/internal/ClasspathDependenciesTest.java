@@ -0,0 +1,51 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache.internal;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static net.sourceforge.pmd.util.CollectionUtil.setOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ClasspathDependenciesTest {
+
+    @Test
+    void testRecordingIsThreadLocal() {
+        final ClasspathDependencies recording = ClasspathDependencies.startRecording();
+        assertSame(recording, ClasspathDependencies.current());
+        recording.stopRecording();
+        assertNull(ClasspathDependencies.current());
+    }
+
+    @Test
+    void testTransitiveDependenciesAreExpandedWhenRead() {
+        final Map<String, List<String>> dependencies = new HashMap<>();
+        final ClasspathDependencies recording = ClasspathDependencies.startRecording();
+        try {
+            recording.record("A.class");
+            recording.setTransitiveDependencies(
+                name -> dependencies.getOrDefault(name, Collections.emptyList()));
+
+            // the dependencies of A are only known after it was recorded,
+            // eg because another thread was still parsing it
+            dependencies.put("A.class", listOf("B.class"));
+            dependencies.put("B.class", listOf("C.class", "A.class"));
+
+            final Collection<String> resources = recording.getResources();
+            assertEquals(setOf("A.class", "B.class", "C.class"), resources);
+        } finally {
+            recording.stopRecording();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.internal.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ClasspathClassLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path jar;
+    private Path dir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        Path referenced = tempDir.resolve("referenced.jar");
+        writeJar(referenced, (String) null, "ref/Referenced.class");
+
+        jar = tempDir.resolve("lib.jar");
+        writeJar(jar, "referenced.jar", "a/b/C.class", "a/b/C$Inner.class", "a/D.class", "META-INF/H.class");
+
+        dir = tempDir.resolve("classes");
+        Files.createDirectories(dir.resolve("e"));
+        Files.write(dir.resolve("e/F.class"), new byte[] {1});
+        Files.write(dir.resolve("G.class"), new byte[] {1});
+    }
+
+    @Test
+    void testClassFilesHaveSameUrlsAsUrlClassLoader() throws IOException {
+        try (ClasspathClassLoader loader = new ClasspathClassLoader(Arrays.asList(jar.toFile(), dir.toFile()), null);
+             URLClassLoader expected = new URLClassLoader(loader.getURLs(), null)) {
+
+            for (String name : Arrays.asList("a/b/C.class", "a/b/C$Inner.class", "a/D.class",
+                                             "META-INF/H.class", "e/F.class", "G.class", "ref/Referenced.class")) {
+                URL url = loader.getResource(name);
+                assertNotNull(url, name);
+                assertEquals(expected.getResource(name).toString(), url.toString());
+            }
+        }
+    }
+
+    @Test
+    void testMissingClassFiles() throws IOException {
+        try (ClasspathClassLoader loader = new ClasspathClassLoader(Arrays.asList(jar.toFile(), dir.toFile()), null)) {
+            // package on the classpath
+            assertNull(loader.getResource("a/b/Missing.class"));
+            // package not on the classpath
+            assertNull(loader.getResource("x/y/Missing.class"));
+            assertNull(loader.getResource("Missing.class"));
+            assertNull(loader.getResource("java/lang/Missing.class"));
+        }
+    }
+
+    @Test
+    void testJdkClassFiles() throws IOException {
+        try (ClasspathClassLoader loader = new ClasspathClassLoader(Arrays.asList(jar.toFile()), null)) {
+            URL url = loader.getResource("java/lang/String.class");
+            assertNotNull(url);
+            assertEquals(ClassLoader.getSystemResource("java/lang/String.class").toString(), url.toString());
+        }
+    }
+
+    @Test
+    void testParentIsQueriedAfterClasspath() throws IOException {
+        Path other = tempDir.resolve("other.jar");
+        writeJar(other, (String) null, "a/b/C.class", "p/Parent.class");
+
+        try (URLClassLoader parent = new URLClassLoader(new URL[] {other.toUri().toURL()}, null);
+             ClasspathClassLoader loader = new ClasspathClassLoader(Arrays.asList(jar.toFile()), parent)) {
+            // child first
+            assertEquals(jar.toUri().toURL().toString(), jarOf(loader.getResource("a/b/C.class")));
+            assertEquals(other.toUri().toURL().toString(), jarOf(loader.getResource("p/Parent.class")));
+        }
+    }
+
+    @Test
+    void testParentIsQueriedForMissingJdkClassFiles() throws IOException {
+        Path other = tempDir.resolve("other.jar");
+        writeJar(other, (String) null, "java/lang/NotInTheJdk.class");
+
+        try (URLClassLoader parent = new URLClassLoader(new URL[] {other.toUri().toURL()}, null);
+             ClasspathClassLoader loader = new ClasspathClassLoader(Arrays.asList(jar.toFile()), parent)) {
+            assertEquals(other.toUri().toURL().toString(), jarOf(loader.getResource("java/lang/NotInTheJdk.class")));
+            assertNull(loader.getResource("java/lang/Missing.class"));
+        }
+    }
+
+    @Test
+    void testMultiReleaseJar() throws IOException {
+        Path mrJar = tempDir.resolve("mr.jar");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Multi-Release", "true");
+        writeJar(mrJar, manifest, "mr/Base.class", "mr/Both.class", "META-INF/versions/9/mr/Both.class",
+                 "META-INF/versions/9/mr/Versioned.class");
+
+        try (ClasspathClassLoader loader = new ClasspathClassLoader(Arrays.asList(mrJar.toFile()), null);
+             URLClassLoader expected = new URLClassLoader(loader.getURLs(), null)) {
+            for (String name : Arrays.asList("mr/Base.class", "mr/Both.class", "mr/Versioned.class")) {
+                assertEquals(String.valueOf(expected.getResource(name)), String.valueOf(loader.getResource(name)), name);
+            }
+        }
+    }
+
+    @Test
+    void testOtherResourcesAreNotIndexed() throws IOException {
+        Files.write(dir.resolve("e/resource.txt"), new byte[] {1});
+        try (ClasspathClassLoader loader = new ClasspathClassLoader(Arrays.asList(dir.toFile()), null)) {
+            assertNotNull(loader.getResource("e/resource.txt"));
+        }
+    }
+
+    private static String jarOf(URL url) {
+        String path = url.getPath();
+        return path.substring(0, path.indexOf("!/"));
+    }
+
+    private static void writeJar(Path path, String classPath, String... entries) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (classPath != null) {
+            manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+        }
+        writeJar(path, manifest, entries);
+    }
+
+    private static void writeJar(Path path, Manifest manifest, String... entries) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path);
+             JarOutputStream jarOut = new JarOutputStream(out, manifest)) {
+            for (String entry : entries) {
+                jarOut.putNextEntry(new JarEntry(entry));
+                jarOut.write(new byte[] {1});
+                jarOut.closeEntry();
+            }
+        }
+    }
+}
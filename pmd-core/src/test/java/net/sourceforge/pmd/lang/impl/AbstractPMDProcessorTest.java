@@ -20,6 +20,7 @@ import net.sourceforge.pmd.RuleContext;
 import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.FileScheduling;
 import net.sourceforge.pmd.lang.LanguageProcessor;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.ast.Node;
@@ -39,6 +40,10 @@ abstract class AbstractPMDProcessorTest {
 
     protected abstract Class<? extends AbstractPMDProcessor> getExpectedImplementation();
 
+    protected FileScheduling getFileScheduling() {
+        return FileScheduling.FIXED;
+    }
+
     @Test
     void shouldUseCorrectProcessorImpl() {
         try (AbstractPMDProcessor processor = AbstractPMDProcessor.newFileProcessor(createTask(getThreads()))) {
@@ -47,7 +52,7 @@ abstract class AbstractPMDProcessorTest {
     }
 
     private LanguageProcessor.AnalysisTask createTask(int threads) {
-        return new LanguageProcessor.AnalysisTask(null, null, null, threads, null, null, null);
+        return new LanguageProcessor.AnalysisTask(null, null, null, threads, getFileScheduling(), null, null, null);
     }
 
     @Test
@@ -66,6 +71,7 @@ abstract class AbstractPMDProcessorTest {
     protected PmdAnalysis createPmdAnalysis() {
         PMDConfiguration configuration = new PMDConfiguration();
         configuration.setThreads(getThreads());
+        configuration.setFileScheduling(getFileScheduling());
         configuration.setIgnoreIncrementalAnalysis(true);
         reporter = Mockito.spy(configuration.getReporter());
         configuration.setReporter(reporter);
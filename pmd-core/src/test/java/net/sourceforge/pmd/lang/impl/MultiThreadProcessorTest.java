@@ -8,14 +8,19 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleContext;
 import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.rule.AbstractRule;
 
@@ -93,6 +98,70 @@ class MultiThreadProcessorTest extends AbstractPMDProcessorTest {
         assertEquals(1, reportListener.violations.get(), "Missing violation");
     }
 
+    @Test
+    void testThreadSafeRulesAreShared() {
+        try (PmdAnalysis pmd = createPmdAnalysis()) {
+            pmd.addRuleSet(RuleSet.forSingleRule(new ThreadSafeRule()));
+            pmd.performAnalysis();
+        }
+
+        assertEquals(2, ThreadSafeRule.COUNT.get(), "Test rule has not been executed");
+        // a single instance was used by all threads
+        assertEquals(1, ThreadSafeRule.INSTANCES.size());
+    }
+
+    @Test
+    void testRulesThatCannotBeCopiedAreAppliedToEveryFile() {
+        try (PmdAnalysis pmd = createPmdAnalysis()) {
+            pmd.addRuleSet(RuleSet.forSingleRule(new UncopyableRule()));
+            pmd.performAnalysis();
+        }
+
+        assertEquals(2, UncopyableRule.COUNT.get(), "Test rule has not been executed");
+        assertEquals(1, UncopyableRule.INSTANCES.size());
+        Mockito.verify(reporter, Mockito.atMost(1)).warnEx(Mockito.contains("cannot be copied"), Mockito.any(Throwable.class));
+    }
+
+    public static class UncopyableRule extends AbstractRule {
+        static final AtomicInteger COUNT = new AtomicInteger(0);
+        static final Set<Rule> INSTANCES = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+        UncopyableRule() {
+            setLanguage(DummyLanguageModule.getInstance().getDefaultVersion().getLanguage());
+        }
+
+        @Override
+        public Rule deepCopy() {
+            throw new UnsupportedOperationException("cannot be copied");
+        }
+
+        @Override
+        public void apply(Node target, RuleContext ctx) {
+            COUNT.incrementAndGet();
+            INSTANCES.add(this);
+        }
+    }
+
+    public static class ThreadSafeRule extends AbstractRule {
+        static final AtomicInteger COUNT = new AtomicInteger(0);
+        static final Set<Rule> INSTANCES = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+        ThreadSafeRule() {
+            setLanguage(DummyLanguageModule.getInstance().getDefaultVersion().getLanguage());
+        }
+
+        @Override
+        public boolean isThreadSafe() {
+            return true;
+        }
+
+        @Override
+        public void apply(Node target, RuleContext ctx) {
+            COUNT.incrementAndGet();
+            INSTANCES.add(this);
+        }
+    }
+
     public static class NotThreadSafeRule extends AbstractRule {
         public static AtomicInteger count = new AtomicInteger(0);
         private boolean hasViolation; // this variable will be overridden
@@ -0,0 +1,83 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.FileScheduling;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.document.TextFileContent;
+
+class PipelinedProcessorTest extends AbstractPMDProcessorTest {
+
+    @Override
+    protected int getThreads() {
+        return 2;
+    }
+
+    @Override
+    protected FileScheduling getFileScheduling() {
+        return FileScheduling.PIPELINED;
+    }
+
+    @Override
+    protected Class<? extends AbstractPMDProcessor> getExpectedImplementation() {
+        return PipelinedProcessor.class;
+    }
+
+    @Test
+    void errorsShouldBeThrown() {
+        Error error = assertThrows(Error.class, () -> {
+            try (PmdAnalysis pmd = createPmdAnalysis()) {
+                pmd.addRuleSet(RuleSet.forSingleRule(new RuleThatThrowsError()));
+                pmd.performAnalysis();
+            }
+        });
+        assertEquals("test error", error.getMessage());
+
+        // all files are processed before the first error is reported
+        assertEquals(2, reportListener.files.get());
+        Mockito.verify(reporter).error(Mockito.eq("Unknown error occurred while executing a PmdRunnable: {0}"),
+                Mockito.eq("java.lang.Error: test error"),
+                Mockito.any(Error.class));
+    }
+
+    @Test
+    void interruptedReaderShouldEndTheAnalysis() throws Exception {
+        LanguageVersion lv = DummyLanguageModule.getInstance().getDefaultVersion();
+        TextFile interruptingFile = Mockito.mock(TextFile.class);
+        Mockito.when(interruptingFile.getFileId()).thenReturn(FileId.fromPathLikeString("file0-interrupt.dummy"));
+        Mockito.when(interruptingFile.getLanguageVersion()).thenReturn(lv);
+        Mockito.when(interruptingFile.readContents()).thenAnswer(invocation -> {
+            // read by the reader thread
+            Thread.currentThread().interrupt();
+            return TextFileContent.fromCharSeq("abc");
+        });
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            try (PmdAnalysis pmd = createPmdAnalysis()) {
+                pmd.files().addFile(interruptingFile);
+                pmd.addRuleSet(RuleSet.forSingleRule(new RuleThatThrowsException()));
+                pmd.performAnalysis();
+            }
+        });
+
+        // the reader stops at the first interruption
+        assertTrue(reportListener.files.get() < 3);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.FileScheduling;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.TextFile;
+
+class WorkStealingProcessorTest extends AbstractPMDProcessorTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Override
+    protected int getThreads() {
+        return 2;
+    }
+
+    @Override
+    protected FileScheduling getFileScheduling() {
+        return FileScheduling.WORK_STEALING;
+    }
+
+    @Override
+    protected Class<? extends AbstractPMDProcessor> getExpectedImplementation() {
+        return WorkStealingProcessor.class;
+    }
+
+    @Test
+    void errorsShouldBeThrown() {
+        Error error = assertThrows(Error.class, () -> {
+            try (PmdAnalysis pmd = createPmdAnalysis()) {
+                pmd.addRuleSet(RuleSet.forSingleRule(new RuleThatThrowsError()));
+                pmd.performAnalysis();
+            }
+        });
+        assertEquals("test error", error.getMessage());
+
+        // all files are processed before the first error is reported
+        assertEquals(2, reportListener.files.get());
+        Mockito.verify(reporter).error(Mockito.eq("Unknown error occurred while executing a PmdRunnable: {0}"),
+                Mockito.eq("java.lang.Error: test error"),
+                Mockito.any(Error.class));
+    }
+
+    @Test
+    void testFilesAreSortedLargestFirst() throws IOException {
+        TextFile small = newFile("small.dummy", 10);
+        TextFile large = newFile("large.dummy", 1000);
+        TextFile medium = newFile("medium.dummy", 100);
+        TextFile medium2 = newFile("medium2.dummy", 100);
+
+        List<TextFile> sorted = WorkStealingProcessor.sortLargestFirst(listOf(small, medium, large, medium2));
+
+        assertEquals(listOf(large, medium, medium2, small), sorted);
+    }
+
+    private TextFile newFile(String name, int size) throws IOException {
+        Path path = tempDir.resolve(name);
+        Files.write(path, new byte[size]);
+        LanguageVersion lv = DummyLanguageModule.getInstance().getDefaultVersion();
+        return TextFile.forPath(path, StandardCharsets.UTF_8, lv);
+    }
+}
@@ -6,9 +6,11 @@ package net.sourceforge.pmd.lang.rule;
 
 import static net.sourceforge.pmd.PmdCoreTestUtils.setDummyLanguage;
 import static net.sourceforge.pmd.ReportTestUtil.getReportForRuleApply;
+import static net.sourceforge.pmd.ReportTestUtil.getReportForRuleSetApply;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
@@ -16,6 +18,7 @@ import org.junit.jupiter.api.extension.RegisterExtension;
 
 import net.sourceforge.pmd.DummyParsingHelper;
 import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.lang.ast.DummyNode;
 import net.sourceforge.pmd.lang.ast.DummyNode.DummyRootNode;
 import net.sourceforge.pmd.lang.ast.DummyNodeWithDeprecatedAttribute;
@@ -138,6 +141,28 @@ class XPathRuleTest {
         assertThat(report.getViolations(), hasSize(1));
     }
 
+    @Test
+    void testUnionWithUnrootedBranchUsesRuleChainPartially() {
+        XPathRule rule = makeXPath("//dummyNode[@Image='a'] | //*[@Image='c']");
+        DummyRootNode root = helper.parse("(a(b))(c)");
+
+        Report report = getReportForRuleSetApply(RuleSet.forSingleRule(rule), root);
+
+        assertThat(report.getViolations(), hasSize(2));
+        assertTrue(rule.getTargetSelector().isRuleChain());
+    }
+
+    @Test
+    void testUnionWithOverlappingUnrootedBranchReportsOnce() {
+        XPathRule rule = makeXPath("//dummyNode[@Image='a'] | //*[@Image='a']");
+        DummyRootNode root = helper.parse("(a(b))(c)");
+
+        Report report = getReportForRuleSetApply(RuleSet.forSingleRule(rule), root);
+
+        assertThat(report.getViolations(), hasSize(1));
+        assertTrue(rule.getTargetSelector().isRuleChain());
+    }
+
     Report executeRule(net.sourceforge.pmd.Rule rule, DummyNode node) {
         return getReportForRuleApply(rule, node);
     }
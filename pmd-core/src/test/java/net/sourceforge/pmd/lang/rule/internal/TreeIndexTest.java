@@ -0,0 +1,80 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.internal;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static net.sourceforge.pmd.util.CollectionUtil.setOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.lang.ast.DummyNode;
+import net.sourceforge.pmd.lang.ast.DummyNode.DummyNodeTypeB;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.util.IteratorUtil;
+
+class TreeIndexTest {
+
+    private final DummyNode root = new DummyNode("root");
+    private final DummyNode a1 = new DummyNode("a");
+    private final DummyNodeTypeB b1 = new DummyNodeTypeB();
+    private final DummyNode a2 = new DummyNode("a");
+    private final DummyNodeTypeB b2 = new DummyNodeTypeB();
+
+    TreeIndexTest() {
+        // preorder: root, a1, b1, a2, b2
+        a1.publicSetChildren(b1);
+        root.publicSetChildren(a1, a2, b2);
+    }
+
+    private static void index(TreeIndex index, Node node) {
+        index.indexNode(node);
+        for (Node child : node.children()) {
+            index(index, child);
+        }
+    }
+
+    @Test
+    void testByClassIsInDocumentOrder() {
+        TreeIndex index = new TreeIndex(Collections.emptySet(), setOf(DummyNode.class, DummyNodeTypeB.class));
+        index(index, root);
+
+        assertEquals(listOf(b1, b2), IteratorUtil.toList(index.getByClass(listOf(DummyNodeTypeB.class))));
+        assertEquals(listOf(root, a1, b1, a2, b2), IteratorUtil.toList(index.getByClass(listOf(DummyNode.class))));
+    }
+
+    @Test
+    void testByClassesIsMergedWithoutDuplicates() {
+        TreeIndex index = new TreeIndex(Collections.emptySet(), setOf(DummyNode.class, DummyNodeTypeB.class));
+        index(index, root);
+
+        assertEquals(listOf(root, a1, b1, a2, b2),
+                     IteratorUtil.toList(index.getByClass(listOf(DummyNodeTypeB.class, DummyNode.class))));
+    }
+
+    @Test
+    void testByNamesIsInDocumentOrder() {
+        TreeIndex index = new TreeIndex(setOf("a", "dummyNodeB", "root"), Collections.emptySet());
+        index(index, root);
+
+        assertEquals(listOf(a1, a2), IteratorUtil.toList(index.getByName(listOf("a"))));
+        assertEquals(listOf(a1, b1, a2, b2), IteratorUtil.toList(index.getByName(listOf("dummyNodeB", "a"))));
+        assertFalse(index.getByName(listOf("notIndexed")).hasNext());
+    }
+
+    @Test
+    void testResetClearsBuckets() {
+        TreeIndex index = new TreeIndex(setOf("a"), setOf(DummyNodeTypeB.class));
+        index(index, root);
+        index.reset();
+        index(index, a1);
+
+        assertEquals(listOf(a1), IteratorUtil.toList(index.getByName(listOf("a"))));
+        assertEquals(listOf(b1), IteratorUtil.toList(index.getByClass(listOf(DummyNodeTypeB.class))));
+    }
+}
@@ -7,6 +7,9 @@ package net.sourceforge.pmd.lang.rule.xpath.impl;
 
 import static net.sourceforge.pmd.util.CollectionUtil.setOf;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -19,6 +22,8 @@ import org.junit.jupiter.api.Test;
 
 import net.sourceforge.pmd.lang.ast.DummyNode;
 import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.ast.impl.AbstractNode;
+import net.sourceforge.pmd.lang.document.TextRegion;
 import net.sourceforge.pmd.lang.rule.xpath.Attribute;
 import net.sourceforge.pmd.util.CollectionUtil;
 
@@ -63,6 +68,40 @@ class AttributeAxisIteratorTest {
         assertEquals(DEFAULT_ATTRS, toMap(it).keySet());
     }
 
+    @Test
+    void testFindAttribute() {
+        NodeWithoutOverride node = new NodeWithoutOverride();
+
+        Attribute name = AttributeAxisIterator.findAttribute(node, "Name");
+        assertEquals("foo", name.getValue());
+        assertNull(AttributeAxisIterator.findAttribute(node, "Missing"));
+
+        Map<String, Attribute> attributes = toMap(new AttributeAxisIterator(node));
+        for (String attrName : attributes.keySet()) {
+            assertEquals(attributes.get(attrName).getValue(), AttributeAxisIterator.findAttribute(node, attrName).getValue());
+        }
+    }
+
+    @Test
+    void testAttributesAreReused() {
+        NodeWithoutOverride node = new NodeWithoutOverride();
+
+        Map<String, Attribute> attributes = toMap(new AttributeAxisIterator(node));
+        assertSame(attributes.get("Name"), AttributeAxisIterator.findAttribute(node, "Name"));
+        assertEquals(attributes, toMap(new AttributeAxisIterator(node)));
+        assertSame(attributes.get("Name"), toMap(new AttributeAxisIterator(node)).get("Name"));
+        assertNotSame(attributes.get("Name"), AttributeAxisIterator.findAttribute(new NodeWithoutOverride(), "Name"));
+    }
+
+    @Test
+    void testFindAttributeWithOverriddenIterator() {
+        DummyNode dummyNode = new DummyNode();
+        dummyNode.setXPathAttribute("Custom", "x");
+
+        assertEquals("x", AttributeAxisIterator.findAttribute(dummyNode, "Custom").getValue());
+        assertNull(AttributeAxisIterator.findAttribute(dummyNode, "Missing"));
+    }
+
     private Map<String, Attribute> toMap(AttributeAxisIterator it) {
         Map<String, Attribute> atts = new HashMap<>();
         while (it.hasNext()) {
@@ -83,6 +122,23 @@ class AttributeAxisIteratorTest {
         }
     }
 
+    public static class NodeWithoutOverride extends AbstractNode<NodeWithoutOverride, NodeWithoutOverride> {
+
+        @Override
+        public TextRegion getTextRegion() {
+            return TextRegion.caretAt(0);
+        }
+
+        @Override
+        public String getXPathNodeName() {
+            return "nodeWithoutOverride";
+        }
+
+        public String getName() {
+            return "foo";
+        }
+    }
+
     public static class DummyNodeWithList extends DummyNode {
 
         public List<String> getList() {
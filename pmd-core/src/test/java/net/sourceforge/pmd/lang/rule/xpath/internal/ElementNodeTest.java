@@ -8,6 +8,7 @@ package net.sourceforge.pmd.lang.rule.xpath.internal;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
@@ -107,4 +108,13 @@ class ElementNodeTest {
         assertSame(elementComment, treeInfo.findWrapperFor(c1));
     }
 
+    @Test
+    void testFindWrapperForNodeOfAnotherTree() {
+        DummyRootNode root = helper.parse("(#foo)");
+        DummyRootNode otherRoot = helper.parse("(#foo)");
+
+        AstTreeInfo treeInfo = new AstTreeInfo(root, Configuration.newConfiguration());
+
+        assertThrows(IllegalArgumentException.class, () -> treeInfo.findWrapperFor(otherRoot.getChild(0)));
+    }
 }
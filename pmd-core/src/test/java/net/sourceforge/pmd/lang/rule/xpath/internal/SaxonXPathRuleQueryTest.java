@@ -4,19 +4,24 @@
 
 package net.sourceforge.pmd.lang.rule.xpath.internal;
 
+import static java.util.Collections.emptyList;
 import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.followPath;
 import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.node;
 import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.nodeB;
 import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.root;
 import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.tree;
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.hamcrest.CoreMatchers;
@@ -24,11 +29,17 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 
 import net.sourceforge.pmd.DummyParsingHelper;
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.benchmark.TimingReport;
 import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.ast.DummyNode;
 import net.sourceforge.pmd.lang.ast.DummyNode.DummyRootNode;
+import net.sourceforge.pmd.lang.ast.DummyNodeWithDeprecatedAttribute;
 import net.sourceforge.pmd.lang.ast.DummyNodeWithListAndEnum;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.RootNode;
+import net.sourceforge.pmd.lang.rule.xpath.Attribute;
 import net.sourceforge.pmd.lang.rule.xpath.PmdXPathException;
 import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
 import net.sourceforge.pmd.lang.rule.xpath.impl.AbstractXPathFunctionDef;
@@ -375,6 +386,31 @@ class SaxonXPathRuleQueryTest {
         assertExpression(expectedSubexpression, query.nodeNameToXPaths.get("DoStatement").get(0));
     }
 
+    @Test
+    void ruleChainVisitsRootedBranchesOfUnions() {
+        DummyRootNode tree = helper.parse("(a(b))(c)");
+        SaxonXPathRuleQuery query = createQuery("//dummyNode[@Image='a'] | //*[@Image='c']");
+
+        assertEquals(listOf("dummyNode"), query.getRuleChainVisits());
+        assertTrue(query.needsRootVisit());
+        // the unrooted branch is evaluated from the root
+        assertEquals(listOf(tree.getChild(1)), query.evaluate(tree));
+        assertEquals(listOf(tree.getChild(0)), query.evaluate(tree.getChild(0)));
+        assertEquals(emptyList(), query.evaluate(tree.getChild(1)));
+    }
+
+    @Test
+    void ruleChainVisitsOfOverlappingUnionBranchesReportOnce() {
+        DummyRootNode tree = helper.parse("(a(b))(a)");
+        SaxonXPathRuleQuery query = createQuery("//dummyNode[@Image='a'] | //*[@Image='a' or @Image='b']");
+
+        assertTrue(query.needsRootVisit());
+        // the nodes that the rooted branch selects on its rule chain visits are not selected again from the root
+        assertEquals(listOf(tree.getChild(0).getChild(0)), query.evaluate(tree));
+        assertEquals(listOf(tree.getChild(0)), query.evaluate(tree.getChild(0)));
+        assertEquals(listOf(tree.getChild(1)), query.evaluate(tree.getChild(1)));
+    }
+
     @Test
     void ruleChainVisitsWithUnionsAndLets() {
         PropertyDescriptor<Boolean> boolProperty = PropertyFactory.booleanProperty("checkAll").desc("test").defaultValue(true).build();
@@ -385,6 +421,167 @@ class SaxonXPathRuleQueryTest {
         assertTrue(ruleChainVisits.contains("ForStatement"));
     }
 
+    @Test
+    void compiledQueriesMatchSaxon() {
+        DummyRootNode tree = helper.parse("(a(b)(c(a)))(b(c))");
+        tree.descendants(DummyNode.class).crossFindBoundaries().forEach(n -> {
+            n.setXPathAttribute("Size", String.valueOf(n.getNumChildren()));
+            n.setXPathAttribute("Leaf", String.valueOf(n.getNumChildren() == 0));
+        });
+
+        String[] queries = {
+            "//dummyNode",
+            "//dummyNode[@Image='a']",
+            "//dummyNode[@Image!='a']/dummyNode",
+            "//dummyNode[not(@Image='b')]",
+            "//dummyNode[@Image=('a', 'c')]",
+            "//dummyNode[@Size != '0' and @Leaf = 'false']",
+            "//dummyNode[@Size = '1' or @Image = 'b']//dummyNode",
+            "//dummyNode[dummyNode[@Image='a']]",
+            "//dummyNode[ancestor::dummyNode[@Image='c']]",
+            "//dummyNode[exists(@Missing)]",
+            "//dummyNode[empty(dummyNode)]",
+            "//dummyNode[count(dummyNode) = 2]",
+            "//dummyNode[@Image='a'] | //dummyNode[@Image='b']",
+        };
+        for (String xpath : queries) {
+            SaxonXPathRuleQuery query = createQuery(xpath);
+            assertTrue(query.isCompiled(), xpath);
+            for (DummyNode node : tree.descendants(DummyNode.class).crossFindBoundaries()) {
+                assertEquals(query.evaluateWithSaxon(node), query.evaluate(node), xpath);
+            }
+        }
+    }
+
+    @Test
+    void compiledQueriesUseCompiledFunctions() {
+        DummyRootNode tree = helper.parse("(a(b))(b)");
+        SaxonXPathRuleQuery query = new SaxonXPathRuleQuery(
+            "//dummyNode[pmd-dummy:imageIs('b')]",
+            XPathVersion.DEFAULT,
+            new HashMap<>(),
+            XPathHandler.getHandlerForFunctionDefs(imageIsFunction(true)),
+            DeprecatedAttrLogger.noop()
+        );
+
+        assertTrue(query.isCompiled());
+        for (DummyNode node : tree.descendants(DummyNode.class).crossFindBoundaries()) {
+            assertEquals(query.evaluateWithSaxon(node), query.evaluate(node));
+        }
+    }
+
+    @Test
+    void compiledQueriesShareSubexpressions() {
+        DummyRootNode tree = helper.parse("(a(b))");
+        DummyNode a = (DummyNode) tree.getChild(0);
+        a.setXPathAttribute("SharedTest", "x");
+
+        SharedSubexpressions shared = new SharedSubexpressions();
+        SaxonXPathRuleQuery query1 = createSharingQuery("//dummyNode[@SharedTest = 'x']", shared, DeprecatedAttrLogger.noop());
+        SaxonXPathRuleQuery query2 = createSharingQuery("//dummyNode[@SharedTest = 'x']/dummyNode", shared, DeprecatedAttrLogger.noop());
+        SaxonXPathRuleQuery otherAnalysisQuery = createQuery("//dummyNode[@SharedTest = 'x']/dummyNode");
+        assertEquals(listOf(a), query1.evaluate(a));
+
+        // the second query reuses the value of the predicate on this node
+        a.clearXPathAttributes();
+        assertEquals(listOf(a.getChild(0)), query2.evaluate(a));
+        assertEquals(emptyList(), query2.evaluateWithSaxon(a));
+        // but not the query of another analysis
+        assertEquals(emptyList(), otherAnalysisQuery.evaluate(a));
+    }
+
+    @Test
+    void sharedSubexpressionsDistinguishEscapedStringLiterals() {
+        DummyRootNode tree = helper.parse("(a)");
+        DummyNode a = (DummyNode) tree.getChild(0);
+        a.setXPathAttribute("SharedTest", "y");
+
+        // both predicates are printed as ("x", "y", "z") = data(@SharedTest)
+        SharedSubexpressions shared = new SharedSubexpressions();
+        SaxonXPathRuleQuery query1 = createSharingQuery("//dummyNode[@SharedTest = ('x\", \"y', 'z')]", shared, DeprecatedAttrLogger.noop());
+        SaxonXPathRuleQuery query2 = createSharingQuery("//dummyNode[@SharedTest = ('x', 'y', 'z')]", shared, DeprecatedAttrLogger.noop());
+        assertTrue(query1.isCompiled());
+        assertTrue(query2.isCompiled());
+
+        assertEquals(emptyList(), query1.evaluate(a));
+        assertEquals(listOf(a), query2.evaluate(a));
+    }
+
+    @Test
+    void sharedSubexpressionsRecordDeprecatedAttributesOfEachQuery() {
+        DummyRootNode root = helper.parse("dummy code");
+        DummyNode node = new DummyNodeWithDeprecatedAttribute();
+        root.addChild(node, 0);
+
+        List<String> usages1 = new ArrayList<>();
+        List<String> usages2 = new ArrayList<>();
+        SharedSubexpressions shared = new SharedSubexpressions();
+        SaxonXPathRuleQuery query1 = createSharingQuery("//dummyNode[@Size = 2]", shared, recordingLogger(usages1));
+        SaxonXPathRuleQuery query2 = createSharingQuery("//dummyNode[@Size = 2]", shared, recordingLogger(usages2));
+        assertTrue(query1.isCompiled());
+
+        assertEquals(listOf(node), query1.evaluate(node));
+        // the value of the predicate is reused, but the attribute is recorded for both queries
+        assertEquals(listOf(node), query2.evaluate(node));
+        assertEquals(listOf("Size"), usages1);
+        assertEquals(listOf("Size"), usages2);
+    }
+
+    private static DeprecatedAttrLogger recordingLogger(List<String> usages) {
+        return new DeprecatedAttrLogger() {
+            @Override
+            public void recordUsageOf(Attribute attribute) {
+                usages.add(attribute.getName());
+            }
+        };
+    }
+
+    private static SaxonXPathRuleQuery createSharingQuery(String xpath, SharedSubexpressions shared, DeprecatedAttrLogger logger) {
+        return new SaxonXPathRuleQuery(
+            xpath,
+            XPathVersion.DEFAULT,
+            new HashMap<>(),
+            XPathHandler.getHandlerForFunctionDefs(imageIsFunction(false)),
+            logger,
+            null,
+            shared
+        );
+    }
+
+    @Test
+    void unsupportedQueriesAreNotCompiled() {
+        assertFalse(createQuery("//dummyNode[1]").isCompiled());
+        assertFalse(createQuery("//dummyNode[substring(@Image, 2) = 'a']").isCompiled());
+        assertFalse(createQuery("//dummyNode[pmd-dummy:imageIs(@Image)]").isCompiled());
+    }
+
+    @Test
+    void profiledQueriesAreTimed() {
+        DummyRootNode tree = helper.parse("(a(b))(b)");
+        String xpath = "//dummyNode[pmd-dummy:imageIs('b')] | //dummyNode[@Image = 'a']";
+        XPathHandler handler = XPathHandler.getHandlerForFunctionDefs(imageIsFunction(true));
+        SaxonXPathRuleQuery query = new SaxonXPathRuleQuery(xpath, XPathVersion.DEFAULT, new HashMap<>(), handler, DeprecatedAttrLogger.noop());
+        SaxonXPathRuleQuery profiled = new SaxonXPathRuleQuery(xpath, XPathVersion.DEFAULT, new HashMap<>(), handler, DeprecatedAttrLogger.noop(), "MyRule");
+        assertFalse(profiled.isCompiled());
+
+        TimingReport report;
+        TimeTracker.startGlobalTracking();
+        try {
+            for (DummyNode node : tree.descendants(DummyNode.class).crossFindBoundaries()) {
+                assertEquals(query.evaluate(node), profiled.evaluate(node));
+            }
+        } finally {
+            report = TimeTracker.stopGlobalTracking();
+        }
+
+        assertThat(report.getLabeledMeasurements(TimedOperationCategory.XPATH_FUNCTION).keySet(),
+                   CoreMatchers.hasItem("MyRule pmd-dummy:imageIs"));
+        assertFalse(report.getLabeledMeasurements(TimedOperationCategory.XPATH_EXPRESSION).isEmpty());
+        for (String label : report.getLabeledMeasurements(TimedOperationCategory.XPATH_EXPRESSION).keySet()) {
+            assertTrue(label.startsWith("MyRule "), label);
+        }
+    }
+
     private static void assertExpression(String expected, Expression actual) {
         assertEquals(normalizeExprDump(expected),
                      normalizeExprDump(actual.toString()));
@@ -416,13 +613,13 @@ class SaxonXPathRuleQueryTest {
             xpath,
             XPathVersion.DEFAULT,
             props,
-            XPathHandler.getHandlerForFunctionDefs(imageIsFunction()),
+            XPathHandler.getHandlerForFunctionDefs(imageIsFunction(false)),
             DeprecatedAttrLogger.noop()
         );
     }
 
     @NonNull
-    private static AbstractXPathFunctionDef imageIsFunction() {
+    private static AbstractXPathFunctionDef imageIsFunction(boolean dependsOnFocus) {
         return new AbstractXPathFunctionDef("imageIs", DummyLanguageModule.getInstance()) {
             @Override
             public SequenceType[] getArgumentTypes() {
@@ -434,6 +631,16 @@ class SaxonXPathRuleQueryTest {
                 return SequenceType.SINGLE_BOOLEAN;
             }
 
+            @Override
+            public boolean dependsOnFocus() {
+                return dependsOnFocus;
+            }
+
+            @Override
+            public Predicate<Node> compileContextNodeTest(List<String> arguments) {
+                return node -> arguments.get(0).equals(node.getImage());
+            }
+
             @Override
             public ExtensionFunctionCall makeCallExpression() {
                 return new ExtensionFunctionCall() {
@@ -6,20 +6,25 @@ package net.sourceforge.pmd.lang.java.internal;
 
 import static net.sourceforge.pmd.lang.java.symbols.table.internal.JavaSemanticErrors.CANNOT_RESOLVE_SYMBOL;
 
+import java.util.Set;
+
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.cache.internal.ClasspathDependencies;
 import net.sourceforge.pmd.lang.ast.NodeStream;
 import net.sourceforge.pmd.lang.ast.SemanticErrorReporter;
 import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
 import net.sourceforge.pmd.lang.java.ast.InternalApiBridge;
 import net.sourceforge.pmd.lang.java.ast.JavaNode;
+import net.sourceforge.pmd.lang.java.rule.SemanticPass;
 import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
 import net.sourceforge.pmd.lang.java.symbols.JTypeDeclSymbol;
 import net.sourceforge.pmd.lang.java.symbols.SymbolResolver;
 import net.sourceforge.pmd.lang.java.symbols.internal.UnresolvedClassStore;
 import net.sourceforge.pmd.lang.java.symbols.internal.ast.SymbolResolutionPass;
+import net.sourceforge.pmd.lang.java.symbols.table.internal.ClasspathNameCache;
 import net.sourceforge.pmd.lang.java.symbols.table.internal.ReferenceCtx;
 import net.sourceforge.pmd.lang.java.symbols.table.internal.SymbolTableResolver;
 import net.sourceforge.pmd.lang.java.types.TypeSystem;
@@ -42,6 +47,8 @@ public final class JavaAstProcessor {
     private final SemanticErrorReporter logger;
 
     private SymbolResolver symResolver;
+    /** Resolver for the classes declared in the file, once they are known. */
+    private SymbolResolver fileSymResolver = binaryName -> null;
 
     private final UnresolvedClassStore unresolvedTypes;
     private final ASTCompilationUnit acu;
@@ -107,6 +114,22 @@ public final class JavaAstProcessor {
         return symResolver;
     }
 
+    /**
+     * Returns a resolver for the classes declared in the analysed file.
+     * Those shadow the classes of the classpath with the same name.
+     */
+    public SymbolResolver getFileSymResolver() {
+        return fileSymResolver;
+    }
+
+    /**
+     * Returns the cache for classes of the classpath found by simple name,
+     * which is shared by all files.
+     */
+    public ClasspathNameCache getClasspathNameCache() {
+        return globalProc.getClasspathNameCache();
+    }
+
     public SemanticErrorReporter getLogger() {
         return logger;
     }
@@ -119,10 +142,16 @@ public final class JavaAstProcessor {
      * Performs semantic analysis on the given source file.
      */
     public void process() {
+        ClasspathDependencies dependencies = ClasspathDependencies.current();
+        if (dependencies != null) {
+            // the classes of the auxclasspath are only read through the AsmSymbolResolver, which records them
+            dependencies.setTracked();
+        }
 
         SymbolResolver knownSyms = TimeTracker.bench("Symbol resolution", () -> SymbolResolutionPass.traverse(this, acu));
 
         // Now symbols are on the relevant nodes
+        this.fileSymResolver = knownSyms;
         this.symResolver = SymbolResolver.layer(knownSyms, this.symResolver);
 
         // this needs to be initialized before the symbol table resolution
@@ -131,10 +160,19 @@ public final class JavaAstProcessor {
 
         TimeTracker.bench("Symbol table resolution", () -> SymbolTableResolver.traverse(this, acu));
         TimeTracker.bench("AST disambiguation", () -> InternalApiBridge.disambigWithCtx(NodeStream.of(acu), ReferenceCtx.root(this, acu)));
-        TimeTracker.bench("Force type resolution", () -> InternalApiBridge.forceTypeResolutionPhase(this, acu));
-        TimeTracker.bench("Comment assignment", () -> InternalApiBridge.assignComments(acu));
-        TimeTracker.bench("Usage resolution", () -> InternalApiBridge.usageResolution(this, acu));
-        TimeTracker.bench("Override resolution", () -> InternalApiBridge.overrideResolution(this, acu));
+
+        // The other passes are only run if a rule needs them
+        Set<SemanticPass> passes = globalProc.getRequiredPasses();
+        runPass(passes, SemanticPass.TYPE_RESOLUTION, () -> InternalApiBridge.forceTypeResolutionPhase(this, acu));
+        runPass(passes, SemanticPass.COMMENT_ASSIGNMENT, () -> InternalApiBridge.assignComments(acu));
+        runPass(passes, SemanticPass.USAGE_RESOLUTION, () -> InternalApiBridge.usageResolution(this, acu));
+        runPass(passes, SemanticPass.OVERRIDE_RESOLUTION, () -> InternalApiBridge.overrideResolution(this, acu));
+    }
+
+    private static void runPass(Set<SemanticPass> passes, SemanticPass pass, Runnable runnable) {
+        if (passes.contains(pass)) {
+            TimeTracker.bench(pass.getDisplayName(), runnable);
+        }
     }
 
     public TypeSystem getTypeSystem() {
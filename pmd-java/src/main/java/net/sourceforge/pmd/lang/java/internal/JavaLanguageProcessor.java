@@ -4,28 +4,44 @@
 
 package net.sourceforge.pmd.lang.java.internal;
 
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
+import org.apache.commons.lang3.StringUtils;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
+import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.ViolationSuppressor;
+import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageVersionHandler;
 import net.sourceforge.pmd.lang.ast.Parser;
 import net.sourceforge.pmd.lang.impl.BatchLanguageProcessor;
 import net.sourceforge.pmd.lang.java.ast.JavaParser;
 import net.sourceforge.pmd.lang.java.internal.JavaLanguageProperties.InferenceLoggingVerbosity;
+import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
+import net.sourceforge.pmd.lang.java.rule.SemanticPass;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.BaseContextNodeTestFun;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.GetCommentOnFunction;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.GetModifiersFun;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.MatchesSignatureFunction;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.MetricFunction;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.NodeIsFunction;
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.AsmSymbolResolver;
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.Classpath;
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.StubCache;
+import net.sourceforge.pmd.lang.java.symbols.table.internal.ClasspathNameCache;
 import net.sourceforge.pmd.lang.java.types.TypeSystem;
 import net.sourceforge.pmd.lang.java.types.internal.infer.TypeInferenceLogger;
 import net.sourceforge.pmd.lang.java.types.internal.infer.TypeInferenceLogger.SimpleLogger;
 import net.sourceforge.pmd.lang.java.types.internal.infer.TypeInferenceLogger.VerboseLogger;
 import net.sourceforge.pmd.lang.metrics.LanguageMetricsProvider;
+import net.sourceforge.pmd.lang.rule.AbstractDelegateRule;
+import net.sourceforge.pmd.lang.rule.XPathRule;
 import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
 import net.sourceforge.pmd.reporting.ViolationDecorator;
 import net.sourceforge.pmd.util.designerbindings.DesignerBindings;
@@ -40,10 +56,15 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
     private final JavaParser parser;
     private final JavaParser parserWithoutProcessing;
     private TypeSystem typeSystem;
+    private ClasspathNameCache classpathNames;
+    /** Passes needed by the rules of the current analysis, all of them outside of an analysis. */
+    private volatile Set<SemanticPass> requiredPasses = EnumSet.allOf(SemanticPass.class);
+    private @Nullable StubCache stubCache;
 
     public JavaLanguageProcessor(JavaLanguageProperties properties, TypeSystem typeSystem) {
         super(properties);
         this.typeSystem = typeSystem;
+        this.classpathNames = new ClasspathNameCache(typeSystem.bootstrapResolver());
 
         String suppressMarker = properties.getSuppressMarker();
         this.parser = new JavaParser(suppressMarker, this, true);
@@ -51,7 +72,25 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
     }
 
     public JavaLanguageProcessor(JavaLanguageProperties properties) {
-        this(properties, TypeSystem.usingClassLoaderClasspath(properties.getAnalysisClassLoader()));
+        this(properties, openStubCache(properties));
+    }
+
+    private JavaLanguageProcessor(JavaLanguageProperties properties, @Nullable StubCache stubCache) {
+        this(properties, createTypeSystem(properties.getAnalysisClassLoader(), stubCache));
+        this.stubCache = stubCache;
+    }
+
+    private static TypeSystem createTypeSystem(ClassLoader classLoader, @Nullable StubCache stubCache) {
+        if (stubCache == null) {
+            return TypeSystem.usingClassLoaderClasspath(classLoader);
+        }
+        Classpath classpath = Classpath.forClassLoader(classLoader);
+        return new TypeSystem(ts -> new AsmSymbolResolver(ts, classpath, stubCache));
+    }
+
+    private static @Nullable StubCache openStubCache(JavaLanguageProperties properties) {
+        String dir = properties.getProperty(JavaLanguageProperties.SYMBOL_CACHE_DIR);
+        return StringUtils.isBlank(dir) ? null : new StubCache(Paths.get(dir));
     }
 
     @Override
@@ -72,6 +111,76 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
         return typeSystem;
     }
 
+    ClasspathNameCache getClasspathNameCache() {
+        return classpathNames;
+    }
+
+    Set<SemanticPass> getRequiredPasses() {
+        return requiredPasses;
+    }
+
+    @Override
+    public @NonNull AutoCloseable launchAnalysis(@NonNull AnalysisTask task) {
+        requiredPasses = requiredPasses(task.getRulesets().getAllRules(), getLanguage());
+        AutoCloseable processing = super.launchAnalysis(task);
+        return () -> {
+            try {
+                // blocks until all files are processed
+                processing.close();
+            } finally {
+                // files parsed outside of an analysis get all the passes
+                requiredPasses = EnumSet.allOf(SemanticPass.class);
+            }
+        };
+    }
+
+    /**
+     * Returns the union of the passes required by the rules of the given
+     * language among the given rules.
+     */
+    static Set<SemanticPass> requiredPasses(Collection<? extends Rule> rules, Language language) {
+        Set<SemanticPass> passes = EnumSet.noneOf(SemanticPass.class);
+        for (Rule rule : rules) {
+            if (language.equals(rule.getLanguage())) {
+                passes.addAll(requiredPasses(rule));
+            }
+        }
+        return passes;
+    }
+
+    private static Set<SemanticPass> requiredPasses(Rule rule) {
+        Rule actual = rule;
+        while (actual instanceof AbstractDelegateRule) {
+            actual = ((AbstractDelegateRule) actual).getRule();
+        }
+        if (actual instanceof AbstractJavaRule) {
+            return ((AbstractJavaRule) actual).getRequiredPasses();
+        } else if (actual instanceof XPathRule) {
+            return requiredPasses(((XPathRule) actual).getXPathExpression());
+        }
+        return EnumSet.allOf(SemanticPass.class);
+    }
+
+    /**
+     * XPath queries can only observe the passes through some attributes.
+     * Those are found by name in the expression, which may find some that
+     * are not attributes, but never misses one. Types are resolved lazily
+     * by the attributes and functions that need them.
+     */
+    static Set<SemanticPass> requiredPasses(String xpath) {
+        Set<SemanticPass> passes = EnumSet.noneOf(SemanticPass.class);
+        if (xpath.contains("Overridden")) {
+            passes.add(SemanticPass.OVERRIDE_RESOLUTION);
+        }
+        if (xpath.contains("Usages")) {
+            passes.add(SemanticPass.USAGE_RESOLUTION);
+        }
+        if (xpath.contains("Javadoc")) {
+            passes.add(SemanticPass.COMMENT_ASSIGNMENT);
+        }
+        return passes;
+    }
+
     TypeInferenceLogger newTypeInfLogger() {
         InferenceLoggingVerbosity verbosity = getProperties().getProperty(JavaLanguageProperties.INTERNAL_INFERENCE_LOGGING_VERBOSITY);
         if (verbosity == InferenceLoggingVerbosity.VERBOSE) {
@@ -123,5 +232,17 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
 
     public void setTypeSystem(TypeSystem ts) {
         this.typeSystem = Objects.requireNonNull(ts);
+        this.classpathNames = new ClasspathNameCache(ts.bootstrapResolver());
+    }
+
+    @Override
+    public void close() throws Exception {
+        typeSystem.reportCacheStatistics();
+        classpathNames.report();
+        if (stubCache != null) {
+            // save the classes loaded during this run
+            stubCache.close();
+        }
+        super.close();
     }
 }
@@ -25,9 +25,17 @@ public class JavaLanguageProperties extends JvmLanguagePropertyBundle {
                        .defaultValue(InferenceLoggingVerbosity.DISABLED)
                        .build();
 
+    static final PropertyDescriptor<String> SYMBOL_CACHE_DIR =
+        PropertyFactory.stringProperty("symbolCacheDir")
+                       .desc("Directory in which the class files read from the auxclasspath are cached between runs, "
+                                 + "in a compact form. The cache is disabled when this is empty.")
+                       .defaultValue("")
+                       .build();
+
     public JavaLanguageProperties() {
         super(JavaLanguageModule.getInstance());
         definePropertyDescriptor(INTERNAL_INFERENCE_LOGGING_VERBOSITY);
+        definePropertyDescriptor(SYMBOL_CACHE_DIR);
         definePropertyDescriptor(CpdLanguageProperties.CPD_IGNORE_METADATA);
         definePropertyDescriptor(CpdLanguageProperties.CPD_ANONYMIZE_IDENTIFIERS);
         definePropertyDescriptor(CpdLanguageProperties.CPD_ANONYMIZE_LITERALS);
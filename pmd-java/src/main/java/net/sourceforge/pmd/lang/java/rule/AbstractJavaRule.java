@@ -4,7 +4,11 @@
 
 package net.sourceforge.pmd.lang.java.rule;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.annotation.Experimental;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.java.ast.JavaParserVisitor;
 import net.sourceforge.pmd.lang.rule.AbstractRule;
@@ -24,4 +28,16 @@ public abstract class AbstractJavaRule extends AbstractRule implements JavaParse
         target.acceptVisitor(this, ctx);
     }
 
+    /**
+     * Returns the optional passes of the semantic analysis that this rule
+     * needs. Passes that no rule of the analysis needs are skipped. By
+     * default, a rule needs all of them. A rule that overrides this must
+     * not use the results of the other passes, even indirectly, eg through
+     * the dataflow analysis, which needs usages.
+     */
+    @Experimental
+    public Set<SemanticPass> getRequiredPasses() {
+        return EnumSet.allOf(SemanticPass.class);
+    }
+
 }
@@ -0,0 +1,54 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.rule;
+
+import net.sourceforge.pmd.annotation.Experimental;
+import net.sourceforge.pmd.lang.java.ast.ASTMethodDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTVariableDeclaratorId;
+import net.sourceforge.pmd.lang.java.ast.JavadocCommentOwner;
+import net.sourceforge.pmd.lang.java.ast.TypeNode;
+
+/**
+ * The passes of the semantic analysis of Java files that can be skipped
+ * when no rule needs them. Rules declare the passes they need with
+ * {@link AbstractJavaRule#getRequiredPasses()}, and the language processor
+ * only runs the passes that at least one rule of the analysis needs.
+ *
+ * <p>Symbol resolution, symbol table resolution and disambiguation are
+ * always run, because they determine the shape of the tree.
+ *
+ * @since 7.0.0
+ */
+@Experimental
+public enum SemanticPass {
+
+    /**
+     * Resolves the type of every {@link TypeNode} up front. Types are
+     * otherwise resolved lazily the first time they are requested, so
+     * skipping this pass doesn't change the types rules see. Rules that
+     * query the type of most expressions don't gain anything from skipping it.
+     */
+    TYPE_RESOLUTION("Force type resolution"),
+
+    /** Assigns javadoc comments, see {@link JavadocCommentOwner#getJavadocComment()}. */
+    COMMENT_ASSIGNMENT("Comment assignment"),
+
+    /** Finds the usages of variables, see {@link ASTVariableDeclaratorId#getLocalUsages()}. */
+    USAGE_RESOLUTION("Usage resolution"),
+
+    /** Finds the methods that methods override, see {@link ASTMethodDeclaration#getOverriddenMethod()}. */
+    OVERRIDE_RESOLUTION("Override resolution");
+
+    private final String displayName;
+
+    SemanticPass(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /** Returns the label used for the pass in the benchmark output. */
+    public String getDisplayName() {
+        return displayName;
+    }
+}
@@ -20,6 +20,11 @@ public class AvoidReassigningCatchVariablesRule extends AbstractJavaRule {
         return RuleTargetSelector.forTypes(ASTCatchParameter.class);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public Object visit(ASTCatchParameter catchParam, Object data) {
         ASTVariableDeclaratorId caughtExceptionId = catchParam.getVarId();
@@ -24,6 +24,11 @@ public class UseCollectionIsEmptyRule extends AbstractJavaRulechainRule {
         super(ASTMethodCall.class);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public Object visit(ASTMethodCall call, Object data) {
         if ((TypeTestUtil.isA(Collection.class, call.getQualifier())
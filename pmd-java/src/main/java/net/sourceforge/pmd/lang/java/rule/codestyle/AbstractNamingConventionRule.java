@@ -4,10 +4,13 @@
 
 package net.sourceforge.pmd.lang.java.rule.codestyle;
 
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import net.sourceforge.pmd.lang.java.ast.JavaNode;
 import net.sourceforge.pmd.lang.java.rule.AbstractJavaRulechainRule;
+import net.sourceforge.pmd.lang.java.rule.SemanticPass;
 import net.sourceforge.pmd.properties.PropertyBuilder.RegexPropertyBuilder;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.properties.PropertyFactory;
@@ -34,6 +37,12 @@ abstract class AbstractNamingConventionRule<T extends JavaNode> extends Abstract
         super(first, visits);
     }
 
+    @Override
+    public Set<SemanticPass> getRequiredPasses() {
+        // types are resolved lazily, eg to find test classes
+        return EnumSet.noneOf(SemanticPass.class);
+    }
+
     /** The argument is interpreted as the display name, and is converted to camel case to get the property name. */
     RegexPropertyBuilder defaultProp(String displayName) {
         return defaultProp(CaseConvention.SPACE_SEPARATED.convertTo(CaseConvention.CAMEL_CASE, displayName), displayName);
@@ -4,12 +4,15 @@
 
 package net.sourceforge.pmd.lang.java.rule.codestyle;
 
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import net.sourceforge.pmd.lang.java.ast.ASTMethodDeclaration;
 import net.sourceforge.pmd.lang.java.ast.JModifier;
+import net.sourceforge.pmd.lang.java.rule.SemanticPass;
 import net.sourceforge.pmd.lang.java.rule.internal.TestFrameworksUtil;
 import net.sourceforge.pmd.properties.PropertyBuilder.RegexPropertyBuilder;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
@@ -37,6 +40,11 @@ public class MethodNamingConventionsRule extends AbstractNamingConventionRule<AS
         definePropertyDescriptor(junit5Regex);
     }
 
+    @Override
+    public Set<SemanticPass> getRequiredPasses() {
+        return EnumSet.of(SemanticPass.OVERRIDE_RESOLUTION);
+    }
+
     @Override
     public Object visit(ASTMethodDeclaration node, Object data) {
 
@@ -28,6 +28,11 @@ public class AvoidThrowingNullPointerExceptionRule extends AbstractJavaRulechain
         super(ASTThrowStatement.class);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public Object visit(ASTThrowStatement throwStmt, Object data) {
         ASTExpression thrown = throwStmt.getExpr();
@@ -24,6 +24,11 @@ public class AvoidUsingOctalValuesRule extends AbstractJavaRulechainRule {
         definePropertyDescriptor(STRICT_METHODS_DESCRIPTOR);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public Object visit(ASTNumericLiteral node, Object data) {
         if (node.getBase() == 8) {
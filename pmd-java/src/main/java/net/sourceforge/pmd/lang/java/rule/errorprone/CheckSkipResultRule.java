@@ -17,6 +17,11 @@ public class CheckSkipResultRule extends AbstractJavaRulechainRule {
         super(ASTMethodCall.class);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public Object visit(ASTMethodCall call, Object data) {
         if (SKIP_METHOD.matchesCall(call) && !isResultUsed(call)) {
@@ -15,6 +15,11 @@ public class IdempotentOperationsRule extends AbstractJavaRulechainRule {
         super(ASTAssignmentExpression.class);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public Object visit(ASTAssignmentExpression node, Object data) {
         if (node.getOperator() == AssignmentOp.ASSIGN
@@ -21,6 +21,11 @@ public class UnnecessaryCaseChangeRule extends AbstractJavaRulechainRule {
         super(ASTMethodCall.class);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public Object visit(ASTMethodCall node, Object data) {
         if (EQUALITY_METHODS.contains(node.getMethodName()) && node.getArguments().size() == 1) {
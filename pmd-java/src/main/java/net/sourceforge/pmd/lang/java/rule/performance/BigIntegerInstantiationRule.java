@@ -31,6 +31,11 @@ public class BigIntegerInstantiationRule extends AbstractJavaRulechainRule {
         super(ASTConstructorCall.class);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public Object visit(ASTConstructorCall node, Object data) {
         LanguageVersion languageVersion = node.getTextDocument().getLanguageVersion();
@@ -19,6 +19,11 @@ public class StringInstantiationRule extends AbstractJavaRule {
         return RuleTargetSelector.forTypes(ASTConstructorCall.class);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public Object visit(ASTConstructorCall node, Object data) {
         ASTArgumentList args = node.getArguments();
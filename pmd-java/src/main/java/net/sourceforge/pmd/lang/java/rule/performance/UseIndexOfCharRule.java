@@ -19,6 +19,11 @@ public class UseIndexOfCharRule extends AbstractJavaRulechainRule {
         super(ASTMethodCall.class);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public Object visit(ASTMethodCall node, Object data) {
         if ("indexOf".equals(node.getMethodName()) || "lastIndexOf".equals(node.getMethodName())) {
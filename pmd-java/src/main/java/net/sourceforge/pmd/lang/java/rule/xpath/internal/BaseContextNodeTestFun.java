@@ -4,7 +4,9 @@
 
 package net.sourceforge.pmd.lang.java.rule.xpath.internal;
 
+import java.util.List;
 import java.util.function.BiPredicate;
+import java.util.function.Predicate;
 
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.java.ast.Annotatable;
@@ -59,6 +61,13 @@ public class BaseContextNodeTestFun<T extends JavaNode> extends BaseJavaXPathFun
         return true;
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public Predicate<Node> compileContextNodeTest(List<String> arguments) {
+        String fullTypeName = arguments.get(0);
+        return node -> klass.isInstance(node) && checker.test(fullTypeName, (T) node);
+    }
+
     @Override
     public ExtensionFunctionCall makeCallExpression() {
         return new ExtensionFunctionCall() {
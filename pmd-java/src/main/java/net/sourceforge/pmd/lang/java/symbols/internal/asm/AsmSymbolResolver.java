@@ -6,13 +6,19 @@ package net.sourceforge.pmd.lang.java.symbols.internal.asm;
 
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.objectweb.asm.Opcodes;
 
+import net.sourceforge.pmd.cache.internal.ClasspathDependencies;
 import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
 import net.sourceforge.pmd.lang.java.symbols.SymbolResolver;
 import net.sourceforge.pmd.lang.java.symbols.internal.asm.Loader.FailedLoader;
@@ -30,9 +36,14 @@ public class AsmSymbolResolver implements SymbolResolver {
     private final TypeSystem ts;
     private final Classpath classLoader;
     private final SignatureParser typeLoader;
+    private final @Nullable StubCache stubCache;
 
     private final ConcurrentMap<String, ClassStub> knownStubs = new ConcurrentHashMap<>();
 
+    /** The class being parsed by the current thread, which depends on the classes it resolves. */
+    private final ThreadLocal<ClassStub> parsingStub = new ThreadLocal<>();
+    private final Function<String, Collection<String>> transitiveDependencies = this::getDependenciesOfClassFile;
+
     /**
      * Sentinel for when we fail finding a URL. This allows using a single map,
      * instead of caching failure cases separately.
@@ -40,8 +51,17 @@ public class AsmSymbolResolver implements SymbolResolver {
     private final ClassStub failed;
 
     public AsmSymbolResolver(TypeSystem ts, Classpath classLoader) {
+        this(ts, classLoader, null);
+    }
+
+    /**
+     * Create a resolver that reads the classes from the given cache when
+     * possible, and adds those it doesn't find to it.
+     */
+    public AsmSymbolResolver(TypeSystem ts, Classpath classLoader, @Nullable StubCache stubCache) {
         this.ts = ts;
         this.classLoader = classLoader;
+        this.stubCache = stubCache;
         this.typeLoader = new SignatureParser(this);
         this.failed = new ClassStub(this, "/*failed-lookup*/", FailedLoader.INSTANCE, 0);
     }
@@ -51,6 +71,7 @@ public class AsmSymbolResolver implements SymbolResolver {
         AssertionUtil.requireParamNotNull("binaryName", binaryName);
 
         String internalName = getInternalName(binaryName);
+        recordDependency(internalName);
 
         ClassStub found = knownStubs.computeIfAbsent(internalName, iname -> {
             @Nullable URL url = getUrlOfInternalName(iname);
@@ -58,7 +79,7 @@ public class AsmSymbolResolver implements SymbolResolver {
                 return failed;
             }
 
-            return new ClassStub(this, iname, new UrlLoader(url), ClassStub.UNKNOWN_ARITY);
+            return new ClassStub(this, iname, getLoader(url), ClassStub.UNKNOWN_ARITY);
         });
 
         if (!found.hasCanonicalName()) {
@@ -88,6 +109,10 @@ public class AsmSymbolResolver implements SymbolResolver {
         return classLoader.findResource(internalName + ".class");
     }
 
+    private Loader getLoader(@NonNull URL url) {
+        return stubCache == null ? new UrlLoader(url) : stubCache.getLoader(url);
+    }
+
     /*
        These methods return an unresolved symbol if the url is not found.
      */
@@ -101,13 +126,73 @@ public class AsmSymbolResolver implements SymbolResolver {
 
     @SuppressWarnings("PMD.CompareObjectsWithEquals") // ClassStub
     @NonNull ClassStub resolveFromInternalNameCannotFail(@NonNull String internalName, int observedArity) {
+        recordDependency(internalName);
         return knownStubs.compute(internalName, (iname, prev) -> {
             if (prev != failed && prev != null) {
                 return prev;
             }
             @Nullable URL url = getUrlOfInternalName(iname);
-            Loader loader = url == null ? FailedLoader.INSTANCE : new UrlLoader(url);
+            Loader loader = url == null ? FailedLoader.INSTANCE : getLoader(url);
             return new ClassStub(this, iname, loader, observedArity);
         });
     }
+
+    /**
+     * Sets the class whose class file or signatures are being parsed by
+     * the current thread. The classes resolved in the meantime are recorded
+     * as its dependencies.
+     *
+     * @return The class that was being parsed before, to restore with {@link #endParse(ClassStub)}
+     */
+    @Nullable ClassStub startParse(ClassStub stub) {
+        ClassStub previous = parsingStub.get();
+        parsingStub.set(stub);
+        return previous;
+    }
+
+    void endParse(@Nullable ClassStub previous) {
+        if (previous == null) {
+            parsingStub.remove();
+        } else {
+            parsingStub.set(previous);
+        }
+    }
+
+    /**
+     * Records that the given class is used by the class being parsed, and
+     * by the file being analysed. The classes it depends on are added to
+     * the dependencies of the file when they are read, after the analysis
+     * of the file: they may have been resolved while analysing another file,
+     * and the class may still be parsed by another thread at this point.
+     */
+    private void recordDependency(String internalName) {
+        ClassStub parsing = parsingStub.get();
+        if (parsing != null) {
+            parsing.addDependency(internalName);
+        }
+
+        ClasspathDependencies dependencies = ClasspathDependencies.current();
+        if (dependencies != null && dependencies.record(internalName + ".class")) {
+            dependencies.setTransitiveDependencies(transitiveDependencies);
+        }
+    }
+
+    /**
+     * Returns the class files resolved while parsing the class file
+     * with the given path.
+     */
+    private Collection<String> getDependenciesOfClassFile(String resourcePath) {
+        if (!resourcePath.endsWith(".class")) {
+            return Collections.emptyList();
+        }
+        ClassStub stub = knownStubs.get(resourcePath.substring(0, resourcePath.length() - ".class".length()));
+        if (stub == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        for (String dependency : stub.getDependencies()) {
+            result.add(dependency + ".class");
+        }
+        return result;
+    }
 }
@@ -67,6 +67,9 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
 
     private PSet<String> annotAttributes;
 
+    /** Internal names of the classes resolved while parsing this class and its signatures. */
+    private volatile PSet<String> dependencies = HashTreePSet.empty();
+
     private final ParseLock parseLock;
 
     /** Note that '.' is forbidden because in internal names they're replaced by slashes '/'. */
@@ -90,6 +93,7 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
 
             @Override
             protected boolean doParse() throws IOException {
+                ClassStub previous = resolver.startParse(ClassStub.this);
                 try (InputStream instream = loader.getInputStream()) {
                     if (instream != null) {
                         ClassReader classReader = new ClassReader(instream);
@@ -99,6 +103,8 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
                     } else {
                         return false;
                     }
+                } finally {
+                    resolver.endParse(previous);
                 }
             }
 
@@ -146,6 +152,14 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
         return resolver;
     }
 
+    synchronized void addDependency(String internalName) {
+        dependencies = dependencies.plus(internalName);
+    }
+
+    PSet<String> getDependencies() {
+        return dependencies;
+    }
+
     // <editor-fold  defaultstate="collapsed" desc="Setters used during loading">
 
     void setHeader(@Nullable String signature,
@@ -51,7 +51,13 @@ abstract class GenericSigBase<T extends JTypeParameterOwnerSymbol & AsmStub> {
         this.lock = new ParseLock() {
             @Override
             protected boolean doParse() {
-                GenericSigBase.this.doParse();
+                AsmSymbolResolver resolver = ctx.getResolver();
+                ClassStub previous = resolver.startParse(getDeclaringStub());
+                try {
+                    GenericSigBase.this.doParse();
+                } finally {
+                    resolver.endParse(previous);
+                }
                 return true;
             }
 
@@ -67,6 +73,10 @@ abstract class GenericSigBase<T extends JTypeParameterOwnerSymbol & AsmStub> {
         };
     }
 
+    private ClassStub getDeclaringStub() {
+        return ctx instanceof ClassStub ? (ClassStub) ctx : ((MemberStubBase) ctx).getEnclosingClass();
+    }
+
     LexicalScope getEnclosingTypeParams() {
         JTypeParameterOwnerSymbol enclosing = ctx.getEnclosingTypeParameterOwner();
         return enclosing == null ? LexicalScope.EMPTY : enclosing.getLexicalScope();
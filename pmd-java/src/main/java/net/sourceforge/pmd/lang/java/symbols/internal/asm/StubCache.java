@@ -0,0 +1,426 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.symbols.internal.asm;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.internal.util.IOUtil;
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.Loader.UrlLoader;
+
+/**
+ * A cache of class files that persists between runs, in a directory.
+ * The class files are stripped of everything that the {@link ClassStubBuilder}
+ * doesn't read: method bodies, debug information, and the constant pool
+ * entries that only those use. The classes of each jar, or each module
+ * of the JDK, are stored in a single file, which is memory-mapped. That
+ * saves opening and inflating the jar entries, and most of the parsing.
+ *
+ * <p>The file of a jar is named after the path, the size and the last
+ * modification time of the jar, so that a changed jar gets a new file.
+ * JDK modules are identified by the runtime version. Classes found in
+ * directories are never cached, they are usually the output of the build.
+ *
+ * <p>The classes loaded during the run that were not found in the cache
+ * are added to it by {@link #close()}. The files are replaced atomically,
+ * so concurrent runs sharing the directory each write a consistent file.
+ * The files used by the run are touched, and files that no run has used
+ * for {@value #MAX_UNUSED_DAYS} days are deleted, so that the files of
+ * jars that were updated or removed don't accumulate.
+ *
+ * <p>Failures to read or write the cache only cost performance, they are
+ * logged at debug level. A file that could not be replaced is logged as
+ * a warning, as it would be read again by every run.
+ */
+public final class StubCache implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StubCache.class);
+
+    private static final int MAGIC = 0x504d4453; // "PMDS"
+    private static final int FORMAT_VERSION = 1;
+    private static final String EXTENSION = ".stubs";
+    private static final String TMP_PREFIX = "stubs";
+    private static final String TMP_EXTENSION = ".tmp";
+    /** Cache files that were not used by any run for this many days are deleted. */
+    static final int MAX_UNUSED_DAYS = 30;
+
+    private final Path directory;
+    private final ConcurrentMap<String, ContainerCache> containers = new ConcurrentHashMap<>();
+
+    /**
+     * Create a cache that stores its files in the given directory. The
+     * directory is created if needed.
+     */
+    public StubCache(@NonNull Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns a loader for the class file at the given URL. The class
+     * is read from the cache if possible.
+     */
+    Loader getLoader(@NonNull URL url) {
+        String[] containerAndEntry = splitUrl(url);
+        if (containerAndEntry == null) {
+            return new UrlLoader(url);
+        }
+        ContainerCache container = containers.computeIfAbsent(containerAndEntry[0], this::openContainer);
+        if (container == null) {
+            return new UrlLoader(url);
+        }
+        return new CachedLoader(container, containerAndEntry[1], url);
+    }
+
+    /**
+     * Splits a URL into the identity of its container and the name of
+     * the entry in it. Returns null if the URL is not cacheable.
+     */
+    private static String @Nullable [] splitUrl(URL url) {
+        String path = url.getPath();
+        if ("jar".equals(url.getProtocol())) {
+            // jar:file:/some/lib.jar!/org/Foo.class
+            int separator = path.indexOf("!/");
+            if (separator < 0 || !path.startsWith("file:")) {
+                return null;
+            }
+            return new String[] {path.substring(0, separator), path.substring(separator + 2)};
+        } else if ("jrt".equals(url.getProtocol())) {
+            // jrt:/java.base/java/lang/String.class
+            int separator = path.indexOf('/', 1);
+            if (separator < 0) {
+                return null;
+            }
+            return new String[] {"jrt:" + path.substring(1, separator), path.substring(separator + 1)};
+        }
+        return null;
+    }
+
+    private @Nullable ContainerCache openContainer(String container) {
+        String version;
+        if (container.startsWith("jrt:")) {
+            version = System.getProperty("java.home") + "|" + System.getProperty("java.runtime.version");
+        } else {
+            try {
+                Path jar = Paths.get(new URL(container).toURI());
+                version = Files.size(jar) + "|" + Files.getLastModifiedTime(jar).toMillis();
+            } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+                LOG.debug("Not caching the classes of {}", container, e);
+                return null;
+            }
+        }
+        Path file = directory.resolve(hash(container + "|" + version) + EXTENSION);
+        return readCacheFile(file);
+    }
+
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is always available", e);
+        }
+    }
+
+    /**
+     * Reads the index of a cache file, and maps the file. The buffers of
+     * the entries share the mapping. The container is empty if the file
+     * doesn't exist or is invalid.
+     */
+    private static ContainerCache readCacheFile(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return new ContainerCache(file, Collections.emptyMap());
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer indexBuffer = mapped.duplicate();
+            DataInputStream index = new DataInputStream(new ByteBufferInputStream(indexBuffer));
+            if (index.readInt() != MAGIC || index.readInt() != FORMAT_VERSION) {
+                LOG.debug("Ignoring stub cache file with an unknown format: {}", file);
+                return new ContainerCache(file, Collections.emptyMap());
+            }
+            int count = index.readInt();
+            String[] names = new String[count];
+            int[] offsets = new int[count];
+            int[] lengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = index.readUTF();
+                offsets[i] = index.readInt();
+                lengths[i] = index.readInt();
+            }
+            // offsets are relative to the end of the index
+            int dataStart = indexBuffer.position();
+            Map<String, ByteBuffer> entries = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                ByteBuffer entry = mapped.duplicate();
+                entry.position(dataStart + offsets[i]).limit(dataStart + offsets[i] + lengths[i]);
+                entries.put(names[i], entry.slice());
+            }
+            return new ContainerCache(file, entries);
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Ignoring unreadable stub cache file {}", file, e);
+            return new ContainerCache(file, Collections.emptyMap());
+        }
+    }
+
+    /**
+     * Writes the classes that were loaded during this run but were not
+     * in the cache yet, and deletes the files that were not used for
+     * {@value #MAX_UNUSED_DAYS} days.
+     */
+    @Override
+    public void close() {
+        Set<Path> used = new HashSet<>();
+        for (ContainerCache container : containers.values()) {
+            used.add(container.file);
+            try {
+                if (container.added.isEmpty()) {
+                    container.release();
+                    if (Files.isRegularFile(container.file)) {
+                        Files.setLastModifiedTime(container.file, FileTime.fromMillis(System.currentTimeMillis()));
+                    }
+                } else {
+                    container.write(directory);
+                }
+            } catch (IOException e) {
+                LOG.debug("Could not write stub cache file {}", container.file, e);
+            }
+        }
+        containers.clear();
+        deleteUnusedFiles(used);
+    }
+
+    private void deleteUnusedFiles(Set<Path> used) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        long threshold = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_UNUSED_DAYS);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, StubCache::isCacheFile)) {
+            for (Path file : files) {
+                if (used.contains(file)) {
+                    continue;
+                }
+                try {
+                    if (Files.getLastModifiedTime(file).toMillis() < threshold) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (IOException e) {
+                    // may be in use by another run
+                    LOG.debug("Could not delete unused stub cache file {}", file, e);
+                }
+            }
+        } catch (IOException e) {
+            LOG.debug("Could not list the stub cache directory {}", directory, e);
+        }
+    }
+
+    private static boolean isCacheFile(Path file) {
+        String name = file.getFileName().toString();
+        // temporary files are left over by runs that were interrupted while writing
+        return name.endsWith(EXTENSION) || name.startsWith(TMP_PREFIX) && name.endsWith(TMP_EXTENSION);
+    }
+
+    /**
+     * Returns the class file without the parts that the {@link ClassStubBuilder}
+     * ignores. The constant pool is rebuilt, so it only contains the entries
+     * that remain in use.
+     */
+    static byte[] strip(byte[] classFile) {
+        ClassReader reader = new ClassReader(classFile);
+        ClassWriter writer = new ClassWriter(0);
+        reader.accept(writer, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return writer.toByteArray();
+    }
+
+    /** The cached classes of a jar or module. */
+    private static final class ContainerCache {
+
+        private final Path file;
+        private volatile Map<String, ByteBuffer> cached;
+        private final ConcurrentMap<String, byte[]> added = new ConcurrentHashMap<>();
+
+        ContainerCache(Path file, Map<String, ByteBuffer> cached) {
+            this.file = file;
+            this.cached = cached;
+        }
+
+        /**
+         * Forgets the cached entries. The file is not unmapped explicitly,
+         * as the loader may still read classes from the buffers. The mapping
+         * is released by the garbage collector once they are unreachable.
+         */
+        void release() {
+            cached = Collections.emptyMap();
+        }
+
+        @Nullable InputStream getCached(String entry) {
+            ByteBuffer buffer = cached.get(entry);
+            if (buffer != null) {
+                return new ByteBufferInputStream(buffer.duplicate());
+            }
+            byte[] bytes = added.get(entry);
+            return bytes == null ? null : new ByteArrayInputStream(bytes);
+        }
+
+        void write(Path directory) throws IOException {
+            Map<String, byte[]> entries = new HashMap<>(added);
+            for (Map.Entry<String, ByteBuffer> e : cached.entrySet()) {
+                ByteBuffer buffer = e.getValue().duplicate();
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                entries.putIfAbsent(e.getKey(), bytes);
+            }
+            // the entries were copied. Some platforms don't allow replacing
+            // the file while it is still mapped, then the move below fails
+            release();
+
+            Files.createDirectories(directory);
+            Path tmp = Files.createTempFile(directory, TMP_PREFIX, TMP_EXTENSION);
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    writeCacheFile(entries, out);
+                }
+                try {
+                    try {
+                        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } catch (IOException e) {
+                    LOG.warn("Could not replace stub cache file {}", file, e);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        private static void writeCacheFile(Map<String, byte[]> entries, DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            int offset = 0;
+            for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeInt(offset);
+                out.writeInt(e.getValue().length);
+                offset += e.getValue().length;
+            }
+            for (byte[] bytes : entries.values()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Reads a class from the cache, or from its URL the first time. In
+     * that case the class is stripped and added to the cache.
+     */
+    private static final class CachedLoader extends Loader {
+
+        private final ContainerCache container;
+        private final String entry;
+        private final URL url;
+
+        CachedLoader(ContainerCache container, String entry, URL url) {
+            this.container = container;
+            this.entry = entry;
+            this.url = url;
+        }
+
+        @Override
+        @Nullable InputStream getInputStream() throws IOException {
+            InputStream cached = container.getCached(entry);
+            if (cached != null) {
+                return cached;
+            }
+            byte[] classFile;
+            try (InputStream in = url.openStream()) {
+                classFile = IOUtil.toByteArray(in);
+            }
+            byte[] stripped;
+            try {
+                stripped = strip(classFile);
+            } catch (RuntimeException e) {
+                // let the parser report the invalid class file
+                return new ByteArrayInputStream(classFile);
+            }
+            container.added.put(entry, stripped);
+            return new ByteArrayInputStream(stripped);
+        }
+
+        @Override
+        public String toString() {
+            return "(cached loader)";
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.symbols.table.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.cache.internal.ClasspathDependencies;
+import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
+import net.sourceforge.pmd.lang.java.symbols.SymbolResolver;
+
+/**
+ * Caches the classes of the classpath that are looked up by simple name
+ * in a package or in a type. Those lookups are made by imports on demand,
+ * and by the scope of the package of a file. Many files import the same
+ * packages or are in the same package, and look up the same names there,
+ * so this cache is shared by all the files of an analysis. Failed lookups
+ * are cached too.
+ *
+ * <p>Only the classpath is looked up. The classes declared in the analysed
+ * file must be looked up before, as they are not shared.
+ */
+public final class ClasspathNameCache {
+
+    private final SymbolResolver classpath;
+
+    /** Container name -> simple name -> result. */
+    private final ConcurrentMap<String, ConcurrentMap<String, Entry>> binaryNames = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, Entry>> canonicalNames = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param classpath Resolver for the classes of the classpath, which
+     *                  must not know about the analysed files
+     */
+    public ClasspathNameCache(SymbolResolver classpath) {
+        this.classpath = classpath;
+    }
+
+    /**
+     * Resolves a top-level class of a package, as with {@link SymbolResolver#resolveClassFromBinaryName(String)}.
+     */
+    @Nullable JClassSymbol resolveInPackage(String packageName, String simpleName) {
+        return resolve(binaryNames, packageName, simpleName, false);
+    }
+
+    /**
+     * Resolves a class in a package or a member class of a type, as with
+     * {@link SymbolResolver#resolveClassFromCanonicalName(String)}.
+     */
+    @Nullable JClassSymbol resolveInPackageOrType(String containerName, String simpleName) {
+        return resolve(canonicalNames, containerName, simpleName, true);
+    }
+
+    private @Nullable JClassSymbol resolve(ConcurrentMap<String, ConcurrentMap<String, Entry>> cache,
+                                           String containerName,
+                                           String simpleName,
+                                           boolean canonical) {
+        ConcurrentMap<String, Entry> names = cache.computeIfAbsent(containerName, k -> new ConcurrentHashMap<>());
+        Entry entry = names.get(simpleName);
+        if (entry != null) {
+            hits.increment();
+            entry.recordDependencies(classpath);
+            return entry.symbol;
+        }
+        misses.increment();
+        // not computeIfAbsent, loading a class may take a while
+        entry = lookup(JavaResolvers.prependPackageName(containerName, simpleName), canonical);
+        Entry existing = names.putIfAbsent(simpleName, entry);
+        return existing != null ? existing.symbol : entry.symbol;
+    }
+
+    private Entry lookup(String name, boolean canonical) {
+        List<String> probed = new ArrayList<>(1);
+        SymbolResolver recording = binaryName -> {
+            probed.add(binaryName);
+            return classpath.resolveClassFromBinaryName(binaryName);
+        };
+        JClassSymbol sym = canonical ? recording.resolveClassFromCanonicalName(name)
+                                     : recording.resolveClassFromBinaryName(name);
+        return new Entry(sym, probed);
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Adds the hit and miss counts to the {@link TimeTracker}.
+     */
+    public void report() {
+        TimeTracker.count(TimedOperationCategory.CACHE_COUNTERS, "Classpath name cache hits", hits.sumThenReset());
+        TimeTracker.count(TimedOperationCategory.CACHE_COUNTERS, "Classpath name cache misses", misses.sumThenReset());
+    }
+
+    private static final class Entry {
+
+        private final @Nullable JClassSymbol symbol;
+        /** Binary names looked up to find the symbol, found or not. */
+        private final List<String> probed;
+
+        Entry(@Nullable JClassSymbol symbol, List<String> probed) {
+            this.symbol = symbol;
+            this.probed = probed;
+        }
+
+        /**
+         * If the classpath dependencies of the current file are recorded,
+         * looks up the same classes again so that they are recorded for
+         * this file too. The classpath resolver caches them already.
+         */
+        void recordDependencies(@NonNull SymbolResolver classpath) {
+            if (ClasspathDependencies.current() != null) {
+                for (String binaryName : probed) {
+                    classpath.resolveClassFromBinaryName(binaryName);
+                }
+            }
+        }
+    }
+}
@@ -18,6 +18,8 @@ import java.util.function.BiFunction;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -40,6 +42,7 @@ import net.sourceforge.pmd.lang.java.types.JMethodSig;
 import net.sourceforge.pmd.lang.java.types.JTypeMirror;
 import net.sourceforge.pmd.lang.java.types.JVariableSig;
 import net.sourceforge.pmd.lang.java.types.JVariableSig.FieldSig;
+import net.sourceforge.pmd.lang.java.types.MemberTable;
 import net.sourceforge.pmd.lang.java.types.TypeOps;
 import net.sourceforge.pmd.lang.java.types.internal.infer.OverloadSet;
 import net.sourceforge.pmd.util.AssertionUtil;
@@ -75,7 +78,8 @@ public final class JavaResolvers {
 
     @NonNull
     static NameResolver<JTypeMirror> importedOnDemand(Set<String> lazyImportedPackagesAndTypes,
-                                                      final SymbolResolver symResolver,
+                                                      final SymbolResolver fileSymbols,
+                                                      final ClasspathNameCache classpathNames,
                                                       final String thisPackage) {
         return new SingleNameResolver<JTypeMirror>() {
             @Nullable
@@ -83,8 +87,10 @@ public final class JavaResolvers {
             public JTypeMirror resolveFirst(String simpleName) {
                 for (String pack : lazyImportedPackagesAndTypes) {
                     // here 'pack' may be a package or a type name, so we must resolve by canonical name
-                    String name = prependPackageName(pack, simpleName);
-                    JClassSymbol sym = symResolver.resolveClassFromCanonicalName(name);
+                    JClassSymbol sym = fileSymbols.resolveClassFromCanonicalName(prependPackageName(pack, simpleName));
+                    if (sym == null) {
+                        sym = classpathNames.resolveInPackageOrType(pack, simpleName);
+                    }
                     if (sym != null && canBeImportedIn(thisPackage, sym)) {
                         return sym.getTypeSystem().typeOf(sym, false);
                     }
@@ -100,12 +106,15 @@ public final class JavaResolvers {
     }
 
     @NonNull
-    static NameResolver<JTypeMirror> packageResolver(SymbolResolver symResolver, String packageName) {
+    static NameResolver<JTypeMirror> packageResolver(SymbolResolver fileSymbols, ClasspathNameCache classpathNames, String packageName) {
         return new SingleNameResolver<JTypeMirror>() {
             @Nullable
             @Override
             public JTypeMirror resolveFirst(String simpleName) {
-                JClassSymbol sym = symResolver.resolveClassFromBinaryName(prependPackageName(packageName, simpleName));
+                JClassSymbol sym = fileSymbols.resolveClassFromBinaryName(prependPackageName(packageName, simpleName));
+                if (sym == null) {
+                    sym = classpathNames.resolveInPackage(packageName, simpleName);
+                }
                 if (sym != null) {
                     return sym.getTypeSystem().typeOf(sym, false);
                 }
@@ -122,14 +131,29 @@ public final class JavaResolvers {
     /** All methods in a type, taking care of hiding/overriding. */
     static NameResolver<JMethodSig> subtypeMethodResolver(JClassType t) {
         JClassSymbol nestRoot = t.getSymbol().getNestRoot();
+        MemberTable table = MemberTable.of(t);
         return new NameResolver<JMethodSig>() {
+
+            // without a table, the hierarchy is walked once for all names
+            private List<JClassType> supertypes;
+
             @Override
             public @NonNull List<JMethodSig> resolveHere(String simpleName) {
-                return t.streamMethods(
+                Predicate<JMethodSymbol> filter =
                     it -> it.nameEquals(simpleName)
                         && isAccessibleIn(nestRoot, it, true) // fetch protected methods
-                        && isNotStaticInterfaceMethod(it)
-                ).collect(OverloadSet.collectMostSpecific(t)); // remove overridden, hidden methods
+                        && isNotStaticInterfaceMethod(it);
+
+                Stream<JMethodSig> methods;
+                if (table != null) {
+                    methods = table.streamMethods(simpleName, filter);
+                } else {
+                    if (supertypes == null) {
+                        supertypes = SuperTypesEnumerator.ALL_SUPERTYPES_INCLUDING_SELF.stream(t).collect(Collectors.toList());
+                    }
+                    methods = supertypes.stream().flatMap(sup -> sup.streamDeclaredMethods(filter));
+                }
+                return methods.collect(OverloadSet.collectMostSpecific(t)); // remove overridden, hidden methods
             }
 
             // Static interface methods are not inherited and are in fact not in scope in the subtypes.
@@ -368,6 +392,14 @@ public final class JavaResolvers {
                                  final PSet<String> hiddenFields,
                                  final PSet<String> hiddenTypes) {
 
+        MemberTable table = MemberTable.of(t);
+        if (table != null) {
+            // hiding within the hierarchy of t is already applied
+            processTable(types, hiddenTypes, isTypeAccessible, table.getMemberTypeNames(), table::getMemberTypes);
+            processTable(fields, hiddenFields, isFieldAccessible, table.getFieldNames(), table::getFields);
+            return;
+        }
+
         // Note that it is possible that this process recurses several
         // times into the same interface (if it is reachable from several paths)
         // This is because the set of hidden declarations depends on the
@@ -405,6 +437,24 @@ public final class JavaResolvers {
         return hidden;
     }
 
+    private static <S> void processTable(
+        ShadowChainBuilder<? super S, ?>.ResolverBuilder builder,
+        PSet<String> hidden,
+        Predicate<? super S> isAccessible,
+        Set<String> names,
+        Function<String, ? extends List<? extends S>> members
+    ) {
+        for (String name : names) {
+            if (!hidden.contains(name)) {
+                for (S member : members.apply(name)) {
+                    if (isAccessible.test(member)) {
+                        builder.appendWithoutDuplicate(member);
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * A general-purpose accessibility check, which can be used if you
      * know in advance whether the context is a supertype of the class
@@ -461,17 +511,18 @@ public final class JavaResolvers {
      * @param name   Name of the class to find
      */
     public static NameResolver<JClassType> getMemberClassResolver(JClassType c, @NonNull String accessPackageName, @Nullable JClassSymbol access, String name) {
-        return getNamedMemberResolver(c, access, accessPackageName, JClassType::getDeclaredClass, name, JClassType::getSymbol, SymTableFactory.TYPES);
+        return getNamedMemberResolver(c, access, accessPackageName, JClassType::getDeclaredClass, MemberTable::getMemberTypes, name, JClassType::getSymbol, SymTableFactory.TYPES);
     }
 
     public static NameResolver<FieldSig> getMemberFieldResolver(JClassType c, @NonNull String accessPackageName, @Nullable JClassSymbol access, String name) {
-        return getNamedMemberResolver(c, access, accessPackageName, JClassType::getDeclaredField, name, FieldSig::getSymbol, SymTableFactory.VARS);
+        return getNamedMemberResolver(c, access, accessPackageName, JClassType::getDeclaredField, MemberTable::getFields, name, FieldSig::getSymbol, SymTableFactory.VARS);
     }
 
     private static <S> NameResolver<S> getNamedMemberResolver(JClassType c,
                                                               @Nullable JClassSymbol access,
                                                               @NonNull String accessPackageName,
                                                               BiFunction<? super JClassType, String, ? extends S> getter,
+                                                              BiFunction<? super MemberTable, String, ? extends List<? extends S>> tableGetter,
                                                               String name,
                                                               Function<? super S, ? extends JAccessibleElementSymbol> symbolGetter,
                                                               ShadowChainBuilder<? super S, ?> classes) {
@@ -491,7 +542,7 @@ public final class JavaResolvers {
         ShadowChainBuilder<S, ?>.ResolverBuilder builder = (ShadowChainBuilder<S, ?>.ResolverBuilder) classes.new ResolverBuilder();
 
         for (JClassType next : DIRECT_STRICT_SUPERTYPES.iterable(c)) {
-            walkForSingleName(next, isAccessible, name, getter, builder, HashTreePSet.empty());
+            walkForSingleName(next, isAccessible, name, getter, tableGetter, builder, HashTreePSet.empty());
         }
 
         return builder.build();
@@ -505,9 +556,17 @@ public final class JavaResolvers {
                                               Predicate<? super S> isAccessible,
                                               String name,
                                               BiFunction<? super JClassType, String, ? extends S> getter,
+                                              BiFunction<? super MemberTable, String, ? extends List<? extends S>> tableGetter,
                                               ShadowChainBuilder<? super S, ?>.ResolverBuilder builder,
                                               final PSet<String> hidden) {
 
+        MemberTable table = MemberTable.of(t);
+        if (table != null) {
+            // hiding within the hierarchy of t is already applied
+            processTable(builder, hidden, isAccessible, Collections.singleton(name), n -> tableGetter.apply(table, n));
+            return;
+        }
+
         PSet<String> hiddenInSup = processDeclarations(builder, hidden, isAccessible, listOfNotNull(getter.apply(t, name)));
 
         if (!hiddenInSup.isEmpty()) {
@@ -518,7 +577,7 @@ public final class JavaResolvers {
 
         // depth first
         for (JClassType next : DIRECT_STRICT_SUPERTYPES.iterable(t)) {
-            walkForSingleName(next, isAccessible, name, getter, builder, hiddenInSup);
+            walkForSingleName(next, isAccessible, name, getter, tableGetter, builder, hiddenInSup);
         }
     }
 
@@ -171,7 +171,7 @@ final class SymTableFactory {
                 typeNode(parent),
                 ScopeInfo.IMPORT_ON_DEMAND,
                 importedTypes.getMutableMap(),
-                JavaResolvers.importedOnDemand(lazyImportedPackagesAndTypes, processor.getSymResolver(), thisPackage)
+                JavaResolvers.importedOnDemand(lazyImportedPackagesAndTypes, processor.getFileSymResolver(), processor.getClasspathNameCache(), thisPackage)
             );
         }
 
@@ -317,7 +317,7 @@ final class SymTableFactory {
 
         return SymbolTableImpl.withTypes(
             parent,
-            TYPES.augmentWithCache(typeNode(parent), true, scopeTag, JavaResolvers.packageResolver(processor.getSymResolver(), packageName))
+            TYPES.augmentWithCache(typeNode(parent), true, scopeTag, JavaResolvers.packageResolver(processor.getFileSymResolver(), processor.getClasspathNameCache(), packageName))
         );
     }
 
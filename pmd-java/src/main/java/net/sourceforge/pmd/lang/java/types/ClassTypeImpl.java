@@ -355,6 +355,10 @@ class ClassTypeImpl implements JClassType {
 
     @Override
     public Stream<JMethodSig> streamMethods(Predicate<? super JMethodSymbol> prefilter) {
+        MemberTable table = MemberTable.of(this);
+        if (table != null) {
+            return table.streamMethods(prefilter);
+        }
         return SuperTypesEnumerator.ALL_SUPERTYPES_INCLUDING_SELF.stream(this)
                                                                  .flatMap(sup -> sup.streamDeclaredMethods(prefilter));
     }
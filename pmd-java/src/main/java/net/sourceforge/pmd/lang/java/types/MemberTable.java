@@ -0,0 +1,221 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.types;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JFieldSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JMethodSymbol;
+import net.sourceforge.pmd.lang.java.symbols.table.internal.SuperTypesEnumerator;
+import net.sourceforge.pmd.lang.java.types.JVariableSig.FieldSig;
+import net.sourceforge.pmd.util.CollectionUtil;
+
+/**
+ * The members of a class type, declared or inherited. The hierarchy of
+ * a class of the classpath is walked once per type system, when a table
+ * is first requested for one of its parameterizations. The members are
+ * then viewed as members of the supertypes of the requested type,
+ * obtained by substituting the supertypes of the generic declaration.
+ *
+ * <p>Member types and fields are indexed by name, and those that are
+ * hidden by a declaration with the same name in a subtype are already
+ * removed. Methods are also indexed by name, but overridden methods are
+ * kept: which methods override others depends on which are accessible,
+ * so this is left to {@link net.sourceforge.pmd.lang.java.types.internal.infer.OverloadSet}.
+ *
+ * <p>Tables are only available for classes of the classpath, which are
+ * shared by all files. Raw types are not supported either, as all their
+ * members are erased.
+ */
+@InternalApi
+public final class MemberTable {
+
+    private final JClassType type;
+    private final Members members;
+    private final Substitution subst;
+
+    private MemberTable(JClassType type, Members members) {
+        this.type = type;
+        this.members = members;
+        this.subst = type.getTypeParamSubst();
+    }
+
+    /**
+     * Returns the member table of the given type, or null if that type
+     * doesn't support one.
+     */
+    public static @Nullable MemberTable of(JClassType type) {
+        JClassSymbol sym = type.getSymbol();
+        if (sym.isUnresolved() || sym.tryGetNode() != null || type.hasErasedSuperTypes()) {
+            return null;
+        }
+        Members members = membersOf(sym, new HashSet<>());
+        return members == null ? null : new MemberTable(type, members);
+    }
+
+    private static @Nullable Members membersOf(JClassSymbol sym, Set<JClassSymbol> building) {
+        if (sym.isUnresolved() || sym.tryGetNode() != null) {
+            return null;
+        }
+        TypeSystem ts = sym.getTypeSystem();
+        Members members = ts.memberTables.get(sym);
+        if (members == null) {
+            if (!building.add(sym)) {
+                return null; // cyclic hierarchy
+            }
+            // not computeIfAbsent, building the table of a class builds those of its supertypes
+            members = new Members((JClassType) ts.declaration(sym), building);
+            Members existing = ts.memberTables.putIfAbsent(sym, members);
+            if (existing != null) {
+                members = existing;
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Returns the same methods as {@link JTypeMirror#streamMethods(Predicate)},
+     * in the same order.
+     */
+    public Stream<JMethodSig> streamMethods(Predicate<? super JMethodSymbol> prefilter) {
+        return IntStream.range(0, members.supertypes.size())
+                        .mapToObj(this::asSuper)
+                        .flatMap(sup -> sup.streamDeclaredMethods(prefilter));
+    }
+
+    /**
+     * Returns the methods with the given name that match the filter.
+     * This is the same as {@link #streamMethods(Predicate)} restricted
+     * to the name, but doesn't look at other methods.
+     */
+    public Stream<JMethodSig> streamMethods(String name, Predicate<? super JMethodSymbol> prefilter) {
+        return members.methods.getOrDefault(name, Collections.emptyList())
+                              .stream()
+                              .filter(m -> prefilter.test(m.symbol))
+                              .map(m -> asSuper(m.supertype).getDeclaredMethod(m.symbol));
+    }
+
+    /** Names of the fields declared or inherited by this type. */
+    public Set<String> getFieldNames() {
+        return members.fields.keySet();
+    }
+
+    /** Names of the member types declared or inherited by this type. */
+    public Set<String> getMemberTypeNames() {
+        return members.memberTypes.keySet();
+    }
+
+    /**
+     * Returns the fields with the given name that are declared or inherited
+     * by this type, and not hidden. There may be several if the name is
+     * ambiguous. Accessibility is not checked.
+     */
+    public List<FieldSig> getFields(String name) {
+        return CollectionUtil.map(members.fields.getOrDefault(name, Collections.emptyList()),
+                                  owner -> asSuper(members.supertypeIndex.get(owner)).getDeclaredField(name));
+    }
+
+    /**
+     * Returns the member types with the given name that are declared or
+     * inherited by this type, and not hidden. There may be several if the
+     * name is ambiguous. Accessibility is not checked.
+     */
+    public List<JClassType> getMemberTypes(String name) {
+        return CollectionUtil.map(members.memberTypes.getOrDefault(name, Collections.emptyList()),
+                                  owner -> asSuper(members.supertypeIndex.get(owner)).getDeclaredClass(name));
+    }
+
+    private JClassType asSuper(int index) {
+        if (index == 0) {
+            return type;
+        }
+        return members.supertypes.get(index).subst(subst);
+    }
+
+    /** The part of the table that is shared by all parameterizations. */
+    static final class Members {
+
+        /** Supertypes of the generic declaration, in the order of {@link SuperTypesEnumerator#ALL_SUPERTYPES_INCLUDING_SELF}. */
+        private final List<JClassType> supertypes;
+        private final Map<JClassSymbol, Integer> supertypeIndex;
+        private final Map<String, List<MemberMethod>> methods = new HashMap<>();
+        /** Classes that declare the visible fields of each name. */
+        private final Map<String, List<JClassSymbol>> fields = new LinkedHashMap<>();
+        /** Classes that declare the visible member types of each name. */
+        private final Map<String, List<JClassSymbol>> memberTypes = new LinkedHashMap<>();
+
+        Members(JClassType decl, Set<JClassSymbol> building) {
+            this.supertypes = SuperTypesEnumerator.ALL_SUPERTYPES_INCLUDING_SELF.stream(decl).collect(CollectionUtil.toUnmodifiableList());
+            this.supertypeIndex = new HashMap<>();
+            for (int i = 0; i < supertypes.size(); i++) {
+                supertypeIndex.putIfAbsent(supertypes.get(i).getSymbol(), i);
+                for (JMethodSymbol m : supertypes.get(i).getSymbol().getDeclaredMethods()) {
+                    methods.computeIfAbsent(m.getSimpleName(), k -> new ArrayList<>(1)).add(new MemberMethod(i, m));
+                }
+            }
+
+            // A declaration hides the declarations with the same name in
+            // all supertypes. The others are inherited from each direct
+            // supertype, in order, which is a depth-first walk.
+            JClassSymbol sym = decl.getSymbol();
+            for (JFieldSymbol f : sym.getDeclaredFields()) {
+                fields.put(f.getSimpleName(), Collections.singletonList(sym));
+            }
+            for (JClassSymbol c : sym.getDeclaredClasses()) {
+                memberTypes.put(c.getSimpleName(), Collections.singletonList(sym));
+            }
+            Set<String> ownFields = new HashSet<>(fields.keySet());
+            Set<String> ownMemberTypes = new HashSet<>(memberTypes.keySet());
+            for (JClassType sup : SuperTypesEnumerator.DIRECT_STRICT_SUPERTYPES.iterable(decl)) {
+                // this doesn't depend on the parameterization of the supertype
+                Members supMembers = membersOf(sup.getSymbol(), building);
+                if (supMembers != null) {
+                    inherit(fields, ownFields, supMembers.fields);
+                    inherit(memberTypes, ownMemberTypes, supMembers.memberTypes);
+                }
+            }
+        }
+
+        private static void inherit(Map<String, List<JClassSymbol>> mine, Set<String> hidden, Map<String, List<JClassSymbol>> inherited) {
+            inherited.forEach((name, owners) -> {
+                if (hidden.contains(name)) {
+                    return;
+                }
+                List<JClassSymbol> list = mine.computeIfAbsent(name, k -> new ArrayList<>(owners.size()));
+                for (JClassSymbol owner : owners) {
+                    if (!list.contains(owner)) {
+                        list.add(owner);
+                    }
+                }
+            });
+        }
+    }
+
+    /** A method, and the index of the supertype that declares it. */
+    private static final class MemberMethod {
+
+        private final int supertype;
+        private final JMethodSymbol symbol;
+
+        MemberMethod(int supertype, JMethodSymbol symbol) {
+            this.supertype = supertype;
+            this.symbol = symbol;
+        }
+    }
+}
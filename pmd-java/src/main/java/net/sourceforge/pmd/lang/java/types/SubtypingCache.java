@@ -0,0 +1,212 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.types;
+
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
+import net.sourceforge.pmd.lang.java.types.TypeOps.Convertibility;
+import net.sourceforge.pmd.lang.java.types.internal.infer.InferenceVar;
+
+/**
+ * Caches the results of {@link TypeOps#isConvertible(JTypeMirror, JTypeMirror, boolean)}
+ * for a whole type system, so that they are shared by all the files of
+ * an analysis, and by the threads that analyse them.
+ *
+ * <p>Only types that mean the same thing in every file are cached.
+ * Those are built from the classes of the classpath. Inference variables
+ * are excluded, because subtyping checks add bounds to them. Classes
+ * declared in the analysed files are excluded too: they are not shared
+ * between files, and their symbols are equal to the symbols of the classpath
+ * classes that have the same binary name. Type variables are excluded,
+ * because a type variable is equal to another with the same symbol even
+ * if its bound was substituted.
+ *
+ * <p>The cache is split into stripes, each of which is a small LRU cache
+ * with its own lock. The results are computed outside of the locks, as
+ * computing them checks other pairs of types recursively.
+ */
+final class SubtypingCache {
+
+    private static final int STRIPES = 16;
+    private static final int MAX_SIZE_PER_STRIPE = 256;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    SubtypingCache() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Returns whether t is convertible to s, using the cached result if
+     * there is one. The types must already have been checked for special
+     * cases by {@link TypeOps#isConvertible(JTypeMirror, JTypeMirror, boolean)}.
+     */
+    Convertibility isConvertible(JTypeMirror t, JTypeMirror s, boolean capture) {
+        if (!isShareable(t) || !isShareable(s)) {
+            return TypeOps.isConvertibleUncached(t, s, capture);
+        }
+        Key key = new Key(t, s, capture);
+        Stripe stripe = stripes[(key.hash ^ (key.hash >>> 16)) & (STRIPES - 1)];
+        Convertibility result;
+        synchronized (stripe) {
+            result = stripe.get(key);
+        }
+        if (result != null) {
+            hits.increment();
+            return result;
+        }
+        misses.increment();
+        result = TypeOps.isConvertibleUncached(t, s, capture);
+        synchronized (stripe) {
+            stripe.put(key, result);
+        }
+        return result;
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Adds the hit and miss counts to the {@link TimeTracker}.
+     */
+    void report() {
+        TimeTracker.count(TimedOperationCategory.CACHE_COUNTERS, "Subtyping cache hits", hits.sumThenReset());
+        TimeTracker.count(TimedOperationCategory.CACHE_COUNTERS, "Subtyping cache misses", misses.sumThenReset());
+    }
+
+    static boolean isShareable(JTypeMirror t) {
+        return t.acceptVisitor(ShareableVisitor.INSTANCE, null);
+    }
+
+    private static final class Key {
+
+        private final JTypeMirror t;
+        private final JTypeMirror s;
+        private final boolean capture;
+        private final int hash;
+
+        Key(JTypeMirror t, JTypeMirror s, boolean capture) {
+            this.t = t;
+            this.s = s;
+            this.capture = capture;
+            this.hash = (t.hashCode() * 31 + s.hashCode()) * 31 + (capture ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return capture == that.capture && t.equals(that.t) && s.equals(that.s);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Stripe extends LinkedHashMap<Key, Convertibility> {
+
+        Stripe() {
+            super(MAX_SIZE_PER_STRIPE, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Entry<Key, Convertibility> eldest) {
+            return size() > MAX_SIZE_PER_STRIPE;
+        }
+    }
+
+    private static final class ShareableVisitor implements JTypeVisitor<Boolean, Void> {
+
+        static final ShareableVisitor INSTANCE = new ShareableVisitor();
+
+        @Override
+        public Boolean visit(JTypeMirror t, Void v) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitPrimitive(JPrimitiveType t, Void v) {
+            return true;
+        }
+
+        @Override
+        public Boolean visitNullType(JTypeMirror t, Void v) {
+            return true;
+        }
+
+        @Override
+        public Boolean visitSentinel(JTypeMirror t, Void v) {
+            return true;
+        }
+
+        @Override
+        public Boolean visitClass(JClassType t, Void v) {
+            JClassSymbol sym = t.getSymbol();
+            if (sym.isUnresolved() || sym.tryGetNode() != null) {
+                return false;
+            }
+            JClassType enclosing = t.getEnclosingType();
+            if (enclosing != null && !enclosing.acceptVisitor(this, v)) {
+                return false;
+            }
+            return allShareable(t.getTypeArgs());
+        }
+
+        @Override
+        public Boolean visitWildcard(JWildcardType t, Void v) {
+            return t.getBound().acceptVisitor(this, v);
+        }
+
+        @Override
+        public Boolean visitArray(JArrayType t, Void v) {
+            return t.getComponentType().acceptVisitor(this, v);
+        }
+
+        @Override
+        public Boolean visitIntersection(JIntersectionType t, Void v) {
+            return allShareable(t.getComponents());
+        }
+
+        @Override
+        public Boolean visitTypeVar(JTypeVar t, Void v) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitInferenceVar(InferenceVar t, Void v) {
+            return false;
+        }
+
+        private boolean allShareable(Iterable<? extends JTypeMirror> types) {
+            for (JTypeMirror t : types) {
+                if (!t.acceptVisitor(this, null)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
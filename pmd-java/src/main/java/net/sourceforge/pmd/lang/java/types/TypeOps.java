@@ -24,6 +24,7 @@ import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -458,6 +459,26 @@ public final class TypeOps {
             return Convertibility.subtypesAll(t, asList(s));
         }
 
+        return t.getTypeSystem().subtypingCache.isConvertible(t, s, capture);
+    }
+
+    /**
+     * Returns true if the type means the same thing in all the files
+     * of an analysis, so that it may be used in caches shared by all
+     * files. This is not the case for types that mention classes declared
+     * in the analysed files, type variables, or inference variables.
+     */
+    @InternalApi
+    public static boolean isSharedByAllFiles(JTypeMirror t) {
+        return SubtypingCache.isShareable(t);
+    }
+
+    /**
+     * Checks subtyping without the shared {@link SubtypingCache}, once
+     * the special cases of {@link #isConvertible(JTypeMirror, JTypeMirror, boolean)}
+     * have been handled.
+     */
+    static Convertibility isConvertibleUncached(JTypeMirror t, JTypeMirror s, boolean capture) {
         if (capture) {
             t = capture(t);
         }
@@ -1531,15 +1552,58 @@ public final class TypeOps {
         }
 
         if (candidateSam.isParameterizedType()) {
-            return findFunctionTypeImpl(nonWildcardParameterization(candidateSam));
+            return findFunctionType(nonWildcardParameterization(candidateSam));
         } else if (candidateSam.isRaw()) {
             //  The function type of the raw type of a generic functional
             //  interface I<...> is the erasure of the function type of the generic functional interface I<...>.
-            JMethodSig fun = findFunctionTypeImpl(candidateSam.getGenericTypeDeclaration());
+            JMethodSig fun = findFunctionType(candidateSam.getGenericTypeDeclaration());
             return fun == null ? null : fun.getErasure();
         } else {
+            return findFunctionType(candidateSam);
+        }
+    }
+
+    /**
+     * Returns the function type of the given type. The function type of
+     * a parameterized type {@code I<A1..An>} is the function type of the
+     * generic declaration {@code I<P1..Pn>}, with {@code [P1:=A1, ..., Pn:=An]}
+     * applied (JLS 9.9). The function types of the generic declarations
+     * of the classpath are computed once per type system. Those of the
+     * types declared in the analysed files are not cached, they are only
+     * valid in their file.
+     */
+    private static @Nullable JMethodSig findFunctionType(@Nullable JClassType candidateSam) {
+        if (candidateSam == null) {
+            return null;
+        }
+        JClassSymbol sym = candidateSam.getSymbol();
+        if (sym.isUnresolved() || sym.tryGetNode() != null) {
             return findFunctionTypeImpl(candidateSam);
         }
+
+        TypeSystem ts = candidateSam.getTypeSystem();
+        JMethodSig generic = ts.functionTypes.get(sym);
+        if (generic == null) {
+            // not computeIfAbsent, this may be reentrant
+            generic = findFunctionTypeImpl((JClassType) ts.declaration(sym));
+            if (generic == null) {
+                generic = ts.UNRESOLVED_METHOD; // not a functional interface
+            }
+            JMethodSig existing = ts.functionTypes.putIfAbsent(sym, generic);
+            if (existing != null) {
+                generic = existing;
+            }
+        }
+
+        if (generic == ts.UNRESOLVED_METHOD) { // NOPMD CompareObjectsWithEquals
+            return null;
+        }
+        Substitution subst = candidateSam.getTypeParamSubst();
+        if (Substitution.isEmptySubst(subst)) {
+            return generic;
+        }
+        // the method as a member of the parameterized supertype
+        return new ClassMethodSigImpl(generic.getDeclaringType().subst(subst), generic.getSymbol());
     }
 
     /**
@@ -1873,13 +1937,24 @@ public final class TypeOps {
         } else if (staticOnly) {
             // static methods, doesn't start on interface
             // -> ignore non-static, ignore any that are interfaces
-            return type.streamMethods(staticMethodFilter(name, false, enclosing)).collect(OverloadSet.collectMostSpecific(type));
+            return streamMethods(type, name, staticMethodFilter(name, false, enclosing)).collect(OverloadSet.collectMostSpecific(type));
         } else {
-            return type.streamMethods(methodFilter(name, enclosing))
+            return streamMethods(type, name, methodFilter(name, enclosing))
                        .collect(OverloadSet.collectMostSpecific(type));
         }
     }
 
+    private static Stream<JMethodSig> streamMethods(JTypeMirror type, String name, Predicate<JMethodSymbol> filter) {
+        if (type instanceof JClassType) {
+            MemberTable table = MemberTable.of((JClassType) type);
+            if (table != null) {
+                // only looks at the methods with this name
+                return table.streamMethods(name, filter);
+            }
+        }
+        return type.streamMethods(filter);
+    }
+
     private static @NonNull Predicate<JMethodSymbol> methodFilter(String name, @NonNull JClassSymbol enclosing) {
         return it -> isAccessibleWithName(name, enclosing, it);
     }
@@ -16,6 +16,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -23,6 +25,7 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import org.pcollections.HashTreePSet;
 import org.pcollections.PSet;
 
+import net.sourceforge.pmd.annotation.InternalApi;
 import net.sourceforge.pmd.lang.java.ast.JavaNode;
 import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
 import net.sourceforge.pmd.lang.java.symbols.JExecutableSymbol;
@@ -39,6 +42,7 @@ import net.sourceforge.pmd.lang.java.symbols.internal.asm.Classpath;
 import net.sourceforge.pmd.lang.java.types.BasePrimitiveSymbol.RealPrimitiveSymbol;
 import net.sourceforge.pmd.lang.java.types.BasePrimitiveSymbol.VoidSymbol;
 import net.sourceforge.pmd.lang.java.types.JPrimitiveType.PrimitiveTypeKind;
+import net.sourceforge.pmd.lang.java.types.internal.infer.OverloadCache;
 import net.sourceforge.pmd.util.AssertionUtil;
 import net.sourceforge.pmd.util.CollectionUtil;
 
@@ -175,6 +179,22 @@ public final class TypeSystem {
     // test only
     final SymbolResolver resolver;
 
+    /** Results of subtyping checks, shared by all the analysed files. */
+    final SubtypingCache subtypingCache = new SubtypingCache();
+
+    /**
+     * Function types of the generic declarations of classpath interfaces,
+     * see {@link TypeOps#findFunctionalInterfaceMethod(JTypeMirror)}.
+     * Interfaces that are not functional are mapped to {@link #UNRESOLVED_METHOD}.
+     */
+    final ConcurrentMap<JClassSymbol, JMethodSig> functionTypes = new ConcurrentHashMap<>();
+
+    /** Compile-time declarations of method calls, shared by all the analysed files. */
+    private final OverloadCache overloadCache = new OverloadCache();
+
+    /** Member tables of the classes of the classpath, see {@link MemberTable}. */
+    final ConcurrentMap<JClassSymbol, MemberTable.Members> memberTables = new ConcurrentHashMap<>();
+
     /**
      * Builds a new type system. Its public fields will be initialized
      * with fresh types, unrelated to other types.
@@ -300,6 +320,25 @@ public final class TypeSystem {
         return resolver;
     }
 
+    /**
+     * Adds the hit and miss counts of the caches of this type system to
+     * the {@link net.sourceforge.pmd.benchmark.TimeTracker}, and resets
+     * them. This is called when the analysis ends.
+     */
+    @InternalApi
+    public void reportCacheStatistics() {
+        subtypingCache.report();
+        overloadCache.report();
+    }
+
+    /**
+     * Returns the cache of overload resolution results of this type system.
+     */
+    @InternalApi
+    public OverloadCache getOverloadCache() {
+        return overloadCache;
+    }
+
     // helpers for the constructor, cannot use typeOf, only for trusted types
 
     private JClassType addSpecial(Class<?> klass, Map<JClassSymbol, JTypeMirror> shared) {
@@ -40,6 +40,7 @@ import net.sourceforge.pmd.lang.java.types.internal.infer.ExprMirror.MethodRefMi
 import net.sourceforge.pmd.lang.java.types.internal.infer.ExprMirror.PolyExprMirror;
 import net.sourceforge.pmd.lang.java.types.internal.infer.InferenceVar.BoundKind;
 import net.sourceforge.pmd.util.CollectionUtil;
+import net.sourceforge.pmd.util.IteratorUtil;
 
 /**
  * Main entry point for type inference.
@@ -259,6 +260,67 @@ public final class Infer {
      * applicable (compile-time error).
      */
     private @NonNull MethodCtDecl computeCompileTimeDecl(MethodCallSite site) {
+        List<JMethodSig> candidates = IteratorUtil.toList(site.getExpr().getAccessibleCandidates().iterator());
+
+        OverloadCache.Key key = overloadCacheKey(site, candidates);
+        if (key == null) {
+            return computeCompileTimeDecl(site, candidates);
+        }
+
+        OverloadCache cache = ts.getOverloadCache();
+        MethodCtDecl ctdecl = cache.get(key);
+        if (ctdecl == null) {
+            ctdecl = computeCompileTimeDecl(site, candidates);
+            // Otherwise the invocation round depends on the target type.
+            // Failures are not shared, NO_CTDECL is compared by identity.
+            if (ctdecl.canSkipInvocation() && !ctdecl.isFailed()) {
+                cache.put(key, ctdecl);
+            }
+        }
+        return ctdecl;
+    }
+
+    /**
+     * Returns the key of the site in the {@link OverloadCache}, or null
+     * if its overload resolution may not be shared with other sites. If
+     * all arguments are standalone, the selected method only depends
+     * on the candidates and the types of the arguments. The candidates
+     * are already filtered by accessibility from the call site.
+     */
+    private @Nullable OverloadCache.Key overloadCacheKey(MethodCallSite site, List<JMethodSig> candidates) {
+        InvocationMirror expr = site.getExpr();
+        if (!LOG.isNoop() // the inference would not be logged
+            || site.isSpecificityCheck()
+            || candidates.isEmpty()
+            || expr instanceof CtorInvocationMirror // the new type may be adapted
+            || !expr.getExplicitTypeArguments().isEmpty()
+            || "getClass".equals(expr.getName())) { // adapted to the receiver
+            return null;
+        }
+        for (JMethodSig m : candidates) {
+            if (!TypeOps.isSharedByAllFiles(m.getDeclaringType())) {
+                return null;
+            }
+        }
+
+        List<ExprMirror> args = expr.getArgumentExpressions();
+        List<JTypeMirror> argTypes = new ArrayList<>(args.size());
+        for (ExprMirror arg : args) {
+            // poly expressions, and invocations even if they're standalone,
+            // have their own state set during the inference of the call
+            if (arg instanceof PolyExprMirror) {
+                return null;
+            }
+            JTypeMirror type = arg.getStandaloneType();
+            if (type == null || !TypeOps.isSharedByAllFiles(type)) {
+                return null;
+            }
+            argTypes.add(type);
+        }
+        return new OverloadCache.Key(isPreJava8, candidates, argTypes);
+    }
+
+    private @NonNull MethodCtDecl computeCompileTimeDecl(MethodCallSite site, List<JMethodSig> candidates) {
 
         /*
          *  The process starts with a set of candidates and refines it
@@ -268,7 +330,7 @@ public final class Infer {
          *  visible ⊇ accessible ⊇ potentially applicable ⊇ applicable ⊇ best applicable
          */
         List<JMethodSig> potentiallyApplicable = new ArrayList<>();
-        for (JMethodSig it : site.getExpr().getAccessibleCandidates()) {
+        for (JMethodSig it : candidates) {
             if (isPotentiallyApplicable(it, site.getExpr())) {
                 potentiallyApplicable.add(it);
             }
@@ -0,0 +1,150 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.types.internal.infer;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.lang.java.types.JMethodSig;
+import net.sourceforge.pmd.lang.java.types.JTypeMirror;
+import net.sourceforge.pmd.lang.java.types.TypeOps;
+import net.sourceforge.pmd.lang.java.types.internal.infer.ExprMirror.InvocationMirror.MethodCtDecl;
+
+/**
+ * Caches the compile-time declarations selected by overload resolution,
+ * for a whole type system. Call sites that have the same candidates and
+ * arguments of the same types select the same method, so eg repeated
+ * calls to {@code assertEquals(String, String)} are only resolved once.
+ *
+ * <p>Only method calls whose arguments are all standalone expressions
+ * are cached, and only if the selected method can be used without
+ * an invocation round, ie it doesn't depend on the target type. See
+ * {@link Infer} for the conditions.
+ *
+ * <p>Like the subtyping cache of the type system, this is split into stripes,
+ * each of which is a small LRU cache with its own lock.
+ */
+public final class OverloadCache {
+
+    private static final int STRIPES = 16;
+    private static final int MAX_SIZE_PER_STRIPE = 256;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public OverloadCache() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    @Nullable MethodCtDecl get(Key key) {
+        MethodCtDecl result;
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            result = stripe.get(key);
+        }
+        if (result != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return result;
+    }
+
+    void put(Key key, MethodCtDecl ctdecl) {
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.put(key, ctdecl);
+        }
+    }
+
+    private Stripe stripeOf(Key key) {
+        return stripes[(key.hash ^ (key.hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Adds the hit and miss counts to the {@link TimeTracker}.
+     */
+    public void report() {
+        TimeTracker.count(TimedOperationCategory.CACHE_COUNTERS, "Overload resolution cache hits", hits.sumThenReset());
+        TimeTracker.count(TimedOperationCategory.CACHE_COUNTERS, "Overload resolution cache misses", misses.sumThenReset());
+    }
+
+    /** The parts of a call site that overload resolution depends on. */
+    static final class Key {
+
+        private final boolean isPreJava8;
+        private final List<JMethodSig> candidates;
+        private final List<JTypeMirror> argTypes;
+        private final int hash;
+
+        Key(boolean isPreJava8, List<JMethodSig> candidates, List<JTypeMirror> argTypes) {
+            this.isPreJava8 = isPreJava8;
+            this.candidates = candidates;
+            this.argTypes = argTypes;
+            this.hash = (candidates.hashCode() * 31 + argTypes.hashCode()) * 31 + (isPreJava8 ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return isPreJava8 == that.isPreJava8
+                && candidates.equals(that.candidates)
+                && sameTypesWithSameAnnotations(argTypes, that.argTypes);
+        }
+
+        // annotations end up in the types of the selected method
+        private static boolean sameTypesWithSameAnnotations(List<JTypeMirror> ts, List<JTypeMirror> ss) {
+            if (ts.size() != ss.size()) {
+                return false;
+            }
+            for (int i = 0; i < ts.size(); i++) {
+                if (!TypeOps.isSameTypeWithSameAnnotations(ts.get(i), ss.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Stripe extends LinkedHashMap<Key, MethodCtDecl> {
+
+        Stripe() {
+            super(MAX_SIZE_PER_STRIPE, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Entry<Key, MethodCtDecl> eldest) {
+            return size() > MAX_SIZE_PER_STRIPE;
+        }
+    }
+}
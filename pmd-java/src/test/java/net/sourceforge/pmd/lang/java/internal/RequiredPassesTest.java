@@ -0,0 +1,78 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.cache.NoopAnalysisCache;
+import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
+import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.java.rule.SemanticPass;
+import net.sourceforge.pmd.lang.java.rule.codestyle.ClassNamingConventionsRule;
+import net.sourceforge.pmd.lang.java.rule.codestyle.MethodNamingConventionsRule;
+import net.sourceforge.pmd.lang.java.rule.internal.TypeResTestRule;
+import net.sourceforge.pmd.lang.rule.XPathRule;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+import net.sourceforge.pmd.util.log.MessageReporter;
+
+class RequiredPassesTest {
+
+    @Test
+    void testNamingRules() {
+        assertEquals(EnumSet.of(SemanticPass.OVERRIDE_RESOLUTION),
+                     JavaLanguageProcessor.requiredPasses(Arrays.asList(javaRule(new ClassNamingConventionsRule()),
+                                                                        javaRule(new MethodNamingConventionsRule())),
+                                                          JavaLanguageModule.getInstance()));
+    }
+
+    @Test
+    void testRulesNeedAllPassesByDefault() {
+        assertEquals(EnumSet.allOf(SemanticPass.class),
+                     JavaLanguageProcessor.requiredPasses(Collections.singletonList(javaRule(new TypeResTestRule())),
+                                                          JavaLanguageModule.getInstance()));
+    }
+
+    @Test
+    void testXPathRules() {
+        assertEquals(EnumSet.noneOf(SemanticPass.class),
+                     JavaLanguageProcessor.requiredPasses(Collections.singletonList(javaRule(new XPathRule(XPathVersion.DEFAULT, "//MethodDeclaration[pmd-java:typeIs('java.lang.Object')]"))),
+                                                          JavaLanguageModule.getInstance()));
+        assertEquals(EnumSet.of(SemanticPass.OVERRIDE_RESOLUTION),
+                     JavaLanguageProcessor.requiredPasses("//MethodDeclaration[@Overridden = false()]"));
+    }
+
+    @Test
+    void testPassesAreResetWhenTheAnalysisEnds() throws Exception {
+        try (JavaLanguageProcessor processor = new JavaLanguageProcessor(new JavaLanguageProperties())) {
+            AnalysisTask task = new AnalysisTask(new RuleSets(RuleSet.forSingleRule(javaRule(new ClassNamingConventionsRule()))),
+                                                 Collections.emptyList(),
+                                                 GlobalAnalysisListener.noop(),
+                                                 0,
+                                                 new NoopAnalysisCache(),
+                                                 MessageReporter.quiet(),
+                                                 LanguageProcessorRegistry.singleton(processor));
+            try (AutoCloseable ignored = processor.launchAnalysis(task)) {
+                assertEquals(EnumSet.of(SemanticPass.OVERRIDE_RESOLUTION), processor.getRequiredPasses());
+            }
+            assertEquals(EnumSet.allOf(SemanticPass.class), processor.getRequiredPasses());
+        }
+    }
+
+    private static Rule javaRule(Rule rule) {
+        rule.setLanguage(JavaLanguageModule.getInstance());
+        return rule;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.rule;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSetLoader;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.java.ast.ASTAssignmentExpression;
+import net.sourceforge.pmd.lang.java.rule.errorprone.IdempotentOperationsRule;
+
+class ThreadSafeRulesTest {
+
+    @Test
+    void testBuiltInRulesAreThreadSafe() {
+        RuleSetLoader loader = new RuleSetLoader();
+        String[][] rules = {
+            {"category/java/bestpractices.xml", "AvoidReassigningCatchVariables"},
+            {"category/java/bestpractices.xml", "UseCollectionIsEmpty"},
+            {"category/java/design.xml", "AvoidThrowingNullPointerException"},
+            {"category/java/errorprone.xml", "AvoidUsingOctalValues"},
+            {"category/java/errorprone.xml", "CheckSkipResult"},
+            {"category/java/errorprone.xml", "IdempotentOperations"},
+            {"category/java/errorprone.xml", "UnnecessaryCaseChange"},
+            {"category/java/performance.xml", "BigIntegerInstantiation"},
+            {"category/java/performance.xml", "StringInstantiation"},
+            {"category/java/performance.xml", "UseIndexOfChar"},
+        };
+        for (String[] rule : rules) {
+            Rule reference = loader.loadFromResource(rule[0]).getRuleByName(rule[1]);
+            assertTrue(reference.isThreadSafe(), rule[1] + " should be thread-safe");
+        }
+    }
+
+    @Test
+    void testThreadSafeRulesAreShared() {
+        PMDConfiguration config = new PMDConfiguration();
+        config.setThreads(2);
+        config.setIgnoreIncrementalAnalysis(true);
+
+        Report report;
+        try (PmdAnalysis pmd = PmdAnalysis.create(config)) {
+            for (int i = 0; i < 4; i++) {
+                pmd.files().addSourceFile(FileId.fromPathLikeString("Foo" + i + ".java"),
+                                          "class Foo" + i + " { void foo(int x) { x = x; } }");
+            }
+            RecordingRule rule = new RecordingRule();
+            rule.setLanguage(JavaLanguageModule.getInstance());
+            pmd.addRuleSet(RuleSet.forSingleRule(rule));
+            report = pmd.performAnalysisAndCollectReport();
+        }
+
+        assertEquals(4, report.getViolations().size());
+        // a single instance was used by all threads
+        assertEquals(1, RecordingRule.INSTANCES.size());
+    }
+
+    public static class RecordingRule extends IdempotentOperationsRule {
+        static final Set<Rule> INSTANCES = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+        @Override
+        public Object visit(ASTAssignmentExpression node, Object data) {
+            INSTANCES.add(this);
+            return super.visit(node, data);
+        }
+    }
+}
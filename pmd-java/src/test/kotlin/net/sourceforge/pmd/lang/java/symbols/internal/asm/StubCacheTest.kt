@@ -0,0 +1,95 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.symbols.internal.asm
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.ints.shouldBeLessThan
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import io.kotest.matchers.types.shouldBeInstanceOf
+import net.sourceforge.pmd.lang.java.types.testTypeSystem
+import java.io.ByteArrayInputStream
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.TimeUnit
+
+class StubCacheTest : FunSpec({
+
+    val cp = Classpath.contextClasspath()
+    // a class from a jar
+    val className = "org.objectweb.asm.ClassVisitor"
+    val resource = "org/objectweb/asm/ClassVisitor.class"
+
+    test("Stripped class files are smaller") {
+        val original = cp.findResource(resource)!!.readBytes()
+        StubCache.strip(original).size shouldBeLessThan original.size
+    }
+
+    test("Classes from jars are cached between runs") {
+        val dir = Files.createTempDirectory("pmd-stubs")
+        try {
+            val url = cp.findResource(resource)!!
+
+            val first = StubCache(dir)
+            // the first time the class is read from the jar
+            first.getLoader(url).inputStream.shouldBeInstanceOf<ByteArrayInputStream>()
+            val firstSym = AsmSymbolResolver(testTypeSystem, cp, first).resolveClassFromBinaryName(className)!!
+            val methods = firstSym.declaredMethods.map { it.simpleName }
+            first.close()
+
+            Files.list(dir).use { files -> files.count() } shouldNotBe 0L
+
+            val second = StubCache(dir)
+            // now it is read from the mapped cache file
+            second.getLoader(url).inputStream!!::class.java.simpleName shouldBe "ByteBufferInputStream"
+            val secondSym = AsmSymbolResolver(testTypeSystem, cp, second).resolveClassFromBinaryName(className)!!
+            secondSym.declaredMethods.map { it.simpleName } shouldBe methods
+            secondSym.superclass!!.binaryName shouldBe firstSym.superclass!!.binaryName
+            second.close()
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    test("Cache files unused for a long time are deleted") {
+        val dir = Files.createTempDirectory("pmd-stubs")
+        try {
+            val old = FileTime.fromMillis(
+                System.currentTimeMillis() - TimeUnit.DAYS.toMillis(StubCache.MAX_UNUSED_DAYS + 1L)
+            )
+            val unused = Files.write(dir.resolve("unused.stubs"), byteArrayOf(1))
+            Files.setLastModifiedTime(unused, old)
+            val recent = Files.write(dir.resolve("recent.stubs"), byteArrayOf(1))
+
+            val first = StubCache(dir)
+            first.getLoader(cp.findResource(resource)!!).inputStream
+            first.close()
+            val used = Files.list(dir).use { files -> files.filter { it != recent }.findFirst().get() }
+            Files.setLastModifiedTime(used, old)
+
+            val second = StubCache(dir)
+            second.getLoader(cp.findResource(resource)!!).inputStream
+            second.close()
+
+            Files.exists(unused) shouldBe false
+            Files.exists(recent) shouldBe true
+            // touched by the second run
+            Files.exists(used) shouldBe true
+            (Files.getLastModifiedTime(used) > old) shouldBe true
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    test("Classes from directories are not cached") {
+        val dir = Files.createTempDirectory("pmd-stubs")
+        try {
+            val url = cp.findResource("javasymbols/testdata/BrokenGeneric.class")!!
+            StubCache(dir).getLoader(url).toString() shouldBe "(URL loader)"
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+})
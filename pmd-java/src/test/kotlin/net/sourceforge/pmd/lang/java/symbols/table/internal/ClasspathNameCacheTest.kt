@@ -0,0 +1,61 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+package net.sourceforge.pmd.lang.java.symbols.table.internal
+
+import io.kotest.matchers.shouldBe
+import net.sourceforge.pmd.lang.java.ast.ASTFieldDeclaration
+import net.sourceforge.pmd.lang.java.ast.ProcessorTestSpec
+import net.sourceforge.pmd.lang.java.types.JClassType
+import net.sourceforge.pmd.lang.java.types.typeDsl
+
+class ClasspathNameCacheTest : ProcessorTestSpec({
+
+    val ts = testTypeSystem
+
+    test("Classes of a package") {
+        val cache = ClasspathNameCache(ts.bootstrapResolver())
+
+        val list = cache.resolveInPackage("java.util", "List")
+        list?.binaryName shouldBe "java.util.List"
+        cache.resolveInPackage("java.util", "List") shouldBe list
+        cache.hitCount shouldBe 1
+
+        // failed lookups are cached too
+        cache.resolveInPackage("java.util", "DoesNotExist") shouldBe null
+        cache.resolveInPackage("java.util", "DoesNotExist") shouldBe null
+        cache.hitCount shouldBe 2
+        cache.missCount shouldBe 2
+    }
+
+    test("Member classes of a type") {
+        val cache = ClasspathNameCache(ts.bootstrapResolver())
+
+        cache.resolveInPackageOrType("java.util.Map", "Entry")?.binaryName shouldBe "java.util.Map\$Entry"
+        cache.resolveInPackageOrType("java.util", "Map")?.binaryName shouldBe "java.util.Map"
+        // member classes are not found by binary name
+        cache.resolveInPackage("java.util.Map", "Entry") shouldBe null
+    }
+
+    parserTest("Classes of the file shadow the cache") {
+        val acu = parser.parse("""
+            package java.util;
+            import java.util.Map.*;
+
+            class List {}
+            class Foo {
+                Entry e;
+                List l;
+                ArrayList<String> a;
+            }
+        """)
+
+        val (e, l, a) = acu.descendants(ASTFieldDeclaration::class.java).toList { it.typeNode.typeMirror as JClassType }
+
+        with(acu.typeDsl) {
+            e.symbol.binaryName shouldBe "java.util.Map\$Entry"
+            l.symbol.tryGetNode() shouldBe acu.typeDeclarations.first()
+            a shouldBe gen.`t_ArrayList{String}`
+        }
+    }
+})
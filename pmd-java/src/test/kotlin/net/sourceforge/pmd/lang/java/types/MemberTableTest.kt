@@ -0,0 +1,86 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.types
+
+import io.kotest.matchers.collections.shouldContainExactly
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import net.sourceforge.pmd.lang.java.ast.ASTClassOrInterfaceDeclaration
+import net.sourceforge.pmd.lang.java.ast.ProcessorTestSpec
+import net.sourceforge.pmd.lang.java.symbols.table.internal.SuperTypesEnumerator
+import kotlin.streams.toList
+
+class MemberTableTest : ProcessorTestSpec({
+
+    val ts = testTypeSystem
+
+    test("Methods are the same as those of the walk") {
+        with(TypeDslOf(ts)) {
+            with(gen) {
+                val table = MemberTable.of(`t_ArrayList{String}`)!!
+
+                val walked = SuperTypesEnumerator.ALL_SUPERTYPES_INCLUDING_SELF.stream(`t_ArrayList{String}`)
+                    .flatMap { it.streamDeclaredMethods { true } }
+                    .toList()
+
+                table.streamMethods { true }.toList() shouldBe walked
+                table.streamMethods("add") { true }.toList() shouldBe walked.filter { it.name == "add" }
+            }
+        }
+    }
+
+    test("Members are substituted") {
+        with(TypeDslOf(ts)) {
+            with(gen) {
+                val table = MemberTable.of(`t_ArrayList{String}`)!!
+
+                val get = table.streamMethods("get") { !it.isStatic }.toList()
+                get.map { it.returnType }.toSet() shouldBe setOf(t_String)
+            }
+        }
+    }
+
+    test("Hidden member types are excluded") {
+        with(TypeDslOf(ts)) {
+            val hashMap = MemberTable.of(java.util.HashMap::class[ts.STRING, ts.STRING])!!
+            // inherited through several paths
+            hashMap.getMemberTypes("Entry").map { it.symbol } shouldContainExactly listOf(java.util.Map.Entry::class.decl.symbol)
+
+            val linkedHashMap = MemberTable.of(java.util.LinkedHashMap::class[ts.STRING, ts.STRING])!!
+            // LinkedHashMap.Entry hides Map.Entry
+            linkedHashMap.getMemberTypes("Entry").map { it.symbol.enclosingClass } shouldContainExactly listOf(java.util.LinkedHashMap::class.decl.symbol)
+        }
+    }
+
+    test("Tables are shared by parameterizations") {
+        with(TypeDslOf(ts)) {
+            with(gen) {
+                MemberTable.of(`t_ArrayList{String}`)
+                val members = ts.memberTables[`t_ArrayList{String}`.symbol]
+                members shouldNotBe null
+                MemberTable.of(`t_ArrayList{Integer}`)
+                ts.memberTables[`t_ArrayList{Integer}`.symbol] shouldBe members
+            }
+        }
+    }
+
+    test("Raw types have no table") {
+        with(TypeDslOf(ts)) {
+            with(gen) {
+                MemberTable.of(t_ArrayList) shouldBe null
+            }
+        }
+    }
+
+    parserTest("Types of the analysed files have no table") {
+        val acu = parser.parse("""
+            class Foo<T> extends java.util.ArrayList<T> {}
+        """)
+        val foo = acu.descendants(ASTClassOrInterfaceDeclaration::class.java).firstOrThrow().typeMirror
+
+        MemberTable.of(foo) shouldBe null
+        MemberTable.of(foo.superClass!!) shouldNotBe null
+    }
+})
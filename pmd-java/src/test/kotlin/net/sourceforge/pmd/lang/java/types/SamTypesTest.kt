@@ -39,6 +39,34 @@ interface Sub extends Top<Integer> {
         TypeOps.overrides(subAcceptOverride, topAccept, t_Sub) shouldBe true
     }
 
-})
+    test("Test function types of classpath interfaces are substituted") {
+        with(TypeDslOf(testTypeSystem)) {
+            with(gen) {
+                val fun1 = TypeOps.findFunctionalInterfaceMethod(java.util.function.Function::class[t_String, t_Integer])!!
+                val fun2 = TypeOps.findFunctionalInterfaceMethod(java.util.function.Function::class[t_Integer, `t_List{String}`])!!
+
+                fun1.symbol shouldBe fun2.symbol
+                fun1.formalParameters shouldBe listOf(t_String)
+                fun1.returnType shouldBe t_Integer
+                fun1.declaringType shouldBe java.util.function.Function::class[t_String, t_Integer]
+                fun2.formalParameters shouldBe listOf(t_Integer)
+                fun2.returnType shouldBe `t_List{String}`
+
+                // the function type of the generic declaration is shared
+                ts.functionTypes[fun1.symbol.enclosingClass] shouldBe
+                        TypeOps.findFunctionalInterfaceMethod(java.util.function.Function::class.decl)
 
+                // wildcards are removed before substitution
+                TypeOps.findFunctionalInterfaceMethod(java.util.function.Supplier::class[`?` extends t_String])!!
+                    .returnType shouldBe t_String
 
+                // raw types get the erased function type
+                TypeOps.findFunctionalInterfaceMethod(java.util.function.Supplier::class.raw)!!
+                    .returnType shouldBe ts.OBJECT
+
+                TypeOps.findFunctionalInterfaceMethod(`t_List{String}`) shouldBe null
+                TypeOps.findFunctionalInterfaceMethod(`t_List{String}`) shouldBe null
+            }
+        }
+    }
+})
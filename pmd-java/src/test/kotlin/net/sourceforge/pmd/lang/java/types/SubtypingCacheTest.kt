@@ -0,0 +1,60 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.types
+
+import io.kotest.matchers.shouldBe
+import net.sourceforge.pmd.lang.java.ast.ASTClassOrInterfaceDeclaration
+import net.sourceforge.pmd.lang.java.ast.ProcessorTestSpec
+import net.sourceforge.pmd.lang.java.types.TypeOps.Convertibility.*
+
+class SubtypingCacheTest : ProcessorTestSpec({
+
+    val ts = testTypeSystem
+    val cache = ts.subtypingCache
+
+    test("Classpath types are shared") {
+        with(TypeDslOf(ts)) {
+            with(gen) {
+                TypeOps.isConvertible(`t_ArrayList{String}`, `t_List{? extends String}`) shouldBe SUBTYPING
+                val hits = cache.hitCount
+
+                TypeOps.isConvertible(`t_ArrayList{String}`, `t_List{? extends String}`) shouldBe SUBTYPING
+                // new instances of equal types
+                TypeOps.isConvertible(`t_ArrayList{String}`, `t_List{? extends String}`) shouldBe SUBTYPING
+
+                cache.hitCount shouldBe hits + 2
+                // unchecked conversion is cached with its warning
+                TypeOps.isConvertible(t_ArrayList, `t_List{String}`) shouldBe UNCHECKED_WARNING
+                TypeOps.isConvertible(t_ArrayList, `t_List{String}`) shouldBe UNCHECKED_WARNING
+            }
+        }
+    }
+
+    test("Shareable types") {
+        with(TypeDslOf(ts)) {
+            with(gen) {
+                SubtypingCache.isShareable(`t_List{? extends Number}`) shouldBe true
+                SubtypingCache.isShareable(ts.arrayType(t_String)) shouldBe true
+                SubtypingCache.isShareable(int) shouldBe true
+                SubtypingCache.isShareable(ts.UNKNOWN) shouldBe true
+            }
+        }
+    }
+
+    parserTest("Types of the analysed files are not shared") {
+        val acu = parser.parse("""
+            class Foo<T> extends java.util.ArrayList<T> {}
+        """)
+        val foo = acu.descendants(ASTClassOrInterfaceDeclaration::class.java).firstOrThrow().typeMirror
+
+        SubtypingCache.isShareable(foo) shouldBe false
+        SubtypingCache.isShareable(foo.typeArgs[0]) shouldBe false
+        SubtypingCache.isShareable(foo.superClass!!) shouldBe false
+
+        with(TypeDslOf(ts)) {
+            SubtypingCache.isShareable(java.util.List::class[foo]) shouldBe false
+        }
+    }
+})
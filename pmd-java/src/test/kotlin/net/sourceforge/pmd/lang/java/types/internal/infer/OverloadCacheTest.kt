@@ -0,0 +1,76 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.types.internal.infer
+
+import io.kotest.matchers.shouldBe
+import net.sourceforge.pmd.lang.java.ast.ProcessorTestSpec
+import net.sourceforge.pmd.lang.java.types.*
+import java.util.Objects
+
+class OverloadCacheTest : ProcessorTestSpec({
+
+    parserTest("Calls with standalone arguments share their overload resolution") {
+
+        val cache = testTypeSystem.overloadCache
+        val hits = cache.hitCount
+
+        val acu = parser.parse(
+            """
+            import java.util.Objects;
+
+            class Foo {
+                void foo(String s) {
+                    Objects.equals(s, "a");
+                    Objects.equals(s, "b");
+                    Math.max(1, 2);
+                    Math.max(1L, 2);
+                }
+            }
+            """.trimIndent()
+        )
+
+        val (eq1, eq2, maxInt, maxLong) = acu.methodCalls().toList()
+
+        with(acu.typeDsl) {
+            eq1.methodType.shouldMatchMethod(
+                named = "equals",
+                declaredIn = Objects::class.raw,
+                withFormals = listOf(ts.OBJECT, ts.OBJECT),
+                returning = boolean
+            )
+            eq2.methodType shouldBe eq1.methodType
+            maxInt.methodType.formalParameters shouldBe listOf(int, int)
+            maxLong.methodType.formalParameters shouldBe listOf(long, long)
+        }
+
+        (cache.hitCount - hits >= 1) shouldBe true
+    }
+
+    parserTest("Calls with poly arguments or to methods of the file are not cached") {
+
+        val cache = testTypeSystem.overloadCache
+        val hits = cache.hitCount
+        val misses = cache.missCount
+
+        parser.parse(
+            """
+            import java.util.concurrent.Executors;
+
+            class Foo {
+                void bar(Foo f) {}
+                {
+                    bar(this);
+                    bar(this);
+                    Executors.callable(() -> {});
+                    Executors.callable(() -> {});
+                }
+            }
+            """.trimIndent()
+        )
+
+        cache.hitCount shouldBe hits
+        cache.missCount shouldBe misses
+    }
+})